@@ -5,11 +5,20 @@ import jade.core.AID;
 import jade.core.behaviours.*;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
-import jade.lang.acl.UnreadableException;
 import model.Cargo;
 import model.CargoPool;
+import model.CargoPoolEvent;
+import model.CargoPoolSubscription;
 import model.LoadingConfiguration;
+import model.LoadingReport;
 import model.Truck;
+import model.TruckStatusReport;
+import solver.LocalSearchSolver;
+import solver.LoadingPlan;
+import solver.LoadingProblem;
+import solver.LoadingSolver;
+import solver.Solvers;
+import util.IntHashSet;
 import util.LogHelper;
 
 import java.io.*;
@@ -20,52 +29,16 @@ public class LoadingManagerAgent extends Agent {
     private List<Cargo> availableCargos;
     private Map<AID, Boolean> truckReadyStatus;
     private int readyTrucks = 0;
-    private Map<Integer, Boolean> impossibleCargos = new HashMap<>();
-    private Map<String, TruckReport> finalTruckReports = new HashMap<>();
+    private final IntHashSet impossibleCargos = new IntHashSet();
+    private Map<String, TruckStatusReport> finalTruckReports = new HashMap<>();
     private boolean reportGenerated = false; // Флаг для отслеживания генерации отчета
     private boolean feasibilityCheckLogged = false; // Флаг для предотвращения повторных логов
     private boolean distributionStarted = false;
+    private long distributionStartNanos; // для сравнения времени режимов в отчете
+    private String postPassName; // решатель, улучшивший результат переговоров
+    private String solverDescription; // решатель и победитель в централизованном режиме
     private List<AID> consoleSubscribers = new ArrayList<>();
-    // Inner class to store truck report data
-    private static class TruckReport {
-        int id;
-        float capacity;
-        float currentLoad;
-        float loadPercentage;
-        Set<String> cargoTypes = new HashSet<>();
-        List<CargoEntry> cargos = new ArrayList<>();
-        Set<Integer> processedCargoIds = new HashSet<>();
-        Set<Integer> impossibleCargoIds = new HashSet<>();
-        static class CargoEntry {
-            int id;
-            String type;
-            float weight;
-
-            CargoEntry(int id, String type, float weight) {
-                this.id = id;
-                this.type = type;
-                this.weight = weight;
-            }
-        }
-
-        @Override
-        public String toString() {
-            StringBuilder sb = new StringBuilder();
-            sb.append("Truck ID: ").append(id).append("\n");
-            sb.append("Capacity: ").append(capacity).append("\n");
-            sb.append("Current Load: ").append(currentLoad).append(" (").append(loadPercentage).append("%)\n");
-            sb.append("Loaded Cargo Types: ").append(cargoTypes).append("\n");
-            sb.append("Cargos: \n");
-
-            for (CargoEntry cargo : cargos) {
-                sb.append("  - Cargo ").append(cargo.id).append(" (Type: ").append(cargo.type)
-                        .append(", Weight: ").append(cargo.weight).append(")\n");
-            }
-
-            return sb.toString();
-        }
-    }
-
+    private CargoPoolSubscription poolSubscription;
     @Override
     protected void setup() {
         System.out.println("Loading Manager Agent " + getAID().getName() + " is ready.");
@@ -73,22 +46,7 @@ public class LoadingManagerAgent extends Agent {
         Object[] args = getArguments();
         if (args != null && args.length > 0) {
             config = (LoadingConfiguration) args[0];
-            if (config.isUseDynamicIdealLoad()) {
-                float totalTruckCapacity = 0f;
-                float totalCargoWeight = 0f;
-                for (Truck truck : config.getTrucks()) {
-                    totalTruckCapacity += truck.getCapacity();
-                }
-
-                // Sum up all cargo weights
-                for (Cargo cargo : config.getCargos()) {
-                    totalCargoWeight += cargo.getWeight();
-                }
-                float dynamicIdealPercentage = Math.min((totalCargoWeight / totalTruckCapacity) * 100, 100);
-                config.setIdealLoadPercentage(dynamicIdealPercentage);
-                System.out.println("Dynamic ideal load percentage calculated: " + dynamicIdealPercentage + "%");
-                System.out.println("Total truck capacity: " + totalTruckCapacity + ", Total cargo weight: " + totalCargoWeight);
-            }
+            config.applyDynamicIdealLoad();
             availableCargos = new ArrayList<>(config.getCargos());
             impossibleCargos.clear(); // Очищаем предыдущие данные
             checkCargoFeasibility();
@@ -121,8 +79,13 @@ public class LoadingManagerAgent extends Agent {
                             System.out.println("Получен запрос на начало распределения от " +
                                     msg.getSender().getLocalName());
 
-                            // Запускаем процесс создания агентов-грузовиков
-                            startDistribution();
+                            distributionStartNanos = System.nanoTime();
+                            if (Solvers.isAgentMode(config.getMode())) {
+                                // Запускаем процесс создания агентов-грузовиков
+                                startDistribution();
+                            } else {
+                                runSolver();
+                            }
                         } else {
                             System.out.println("Игнорирую повторный запрос на распределение от " +
                                     msg.getSender().getLocalName());
@@ -154,7 +117,7 @@ public class LoadingManagerAgent extends Agent {
             }
         });
 
-        // Add behavior to handle cargo requests
+        // Грузовики забирают грузы прямо из CargoPool, менеджеру они сообщают только о готовности
         addBehaviour(new CyclicBehaviour(this) {
             public void action() {
                 MessageTemplate mt = MessageTemplate.MatchPerformative(ACLMessage.REQUEST);
@@ -162,70 +125,7 @@ public class LoadingManagerAgent extends Agent {
 
                 if (msg != null) {
                     String content = msg.getContent();
-                    if (content.equals("REQUEST_CARGO")) {
-                        // Send available cargo to the truck
-                        ACLMessage reply = msg.createReply();
-                        List<Cargo> filteredCargos = new ArrayList<>();
-                        synchronized (availableCargos) {
-                            for (Cargo c : availableCargos) {
-                                if (!impossibleCargos.containsKey(c.getId())) {
-                                    filteredCargos.add(c);
-                                }
-                            }
-                        }
-
-                        if (!filteredCargos.isEmpty()) {
-                            try {
-                                reply.setPerformative(ACLMessage.INFORM);
-                                reply.setContentObject((Serializable) filteredCargos);
-                                myAgent.send(reply);
-                                System.out.println("Sent " + filteredCargos.size() + " cargos to " + msg.getSender().getLocalName());
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                                reply.setPerformative(ACLMessage.FAILURE);
-                                reply.setContent("ERROR_PROCESSING_CARGO");
-                                myAgent.send(reply);
-                            }
-                        } else {
-                            reply.setPerformative(ACLMessage.REFUSE);
-                            reply.setContent("NO_CARGO_AVAILABLE");
-                            myAgent.send(reply);
-                            System.out.println("No cargo available for " + msg.getSender().getLocalName());
-                        }
-                    } else if (content.startsWith("CLAIM_CARGO:")) {
-                        // Process cargo claim from truck
-                        int cargoId = Integer.parseInt(content.substring("CLAIM_CARGO:".length()));
-                        Cargo claimedCargo = null;
-                        synchronized (availableCargos) {
-                            for (Cargo cargo : availableCargos) {
-                                if (cargo.getId() == cargoId) {
-                                    claimedCargo = cargo;
-                                    break;
-                                }
-                            }
-                            if (claimedCargo != null) {
-                                availableCargos.remove(claimedCargo); // Удаляем груз
-                                System.out.println("Cargo " + cargoId + " claimed by " + msg.getSender().getLocalName());
-                            }
-                        }
-
-                        ACLMessage reply = msg.createReply();
-                        if (claimedCargo != null) {
-                            reply.setPerformative(ACLMessage.CONFIRM);
-                            try {
-                                reply.setContentObject(claimedCargo); // Отправляем сам груз
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                                reply.setPerformative(ACLMessage.FAILURE);
-                                reply.setContent("ERROR_PROCESSING_CARGO");
-                            }
-                        } else {
-                            reply.setPerformative(ACLMessage.DISCONFIRM);
-                            reply.setContent("CARGO_NOT_AVAILABLE");
-                            System.out.println("Cargo " + cargoId + " not available for " + msg.getSender().getLocalName());
-                        }
-                        myAgent.send(reply);
-                    } else if (content.equals("TRUCK_READY")) {
+                    if (content.equals("TRUCK_READY")) {
                         // Mark truck as ready
                         AID sender = msg.getSender();
                         // Избегаем повторных сообщений при повторной отправке TRUCK_READY
@@ -248,8 +148,26 @@ public class LoadingManagerAgent extends Agent {
             }
         });
 
-        addBehaviour(new TickerBehaviour(this, 10000) { // Проверка каждые 10 секунд
-            protected void onTick() {
+        // Проверяем выполнимость только при изменении пула, а не по таймеру
+        setEnabledO2ACommunication(true, 0);
+        poolSubscription = CargoPool.getInstance().subscribe(CargoPoolEvent.ALL, subscription -> {
+            try {
+                putO2AObject(subscription, false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        addBehaviour(new CyclicBehaviour(this) {
+            public void action() {
+                Object signal = myAgent.getO2AObject();
+                if (signal == null) {
+                    block();
+                    return;
+                }
+                if (!(signal instanceof CargoPoolSubscription)
+                        || ((CargoPoolSubscription) signal).drain().isEmpty()) {
+                    return;
+                }
                 int previousImpossibleCount = impossibleCargos.size();
                 checkCargoFeasibility();
 
@@ -263,13 +181,20 @@ public class LoadingManagerAgent extends Agent {
         });
     }
 
+    @Override
+    protected void takeDown() {
+        if (poolSubscription != null) {
+            CargoPool.getInstance().unsubscribe(poolSubscription);
+        }
+    }
+
     private void checkCargoFeasibility() {
         int removedCount = 0;
         synchronized (availableCargos) {
             Iterator<Cargo> it = availableCargos.iterator();
             while (it.hasNext()) {
                 Cargo cargo = it.next();
-                if (impossibleCargos.containsKey(cargo.getId())) continue;
+                if (impossibleCargos.contains(cargo.getId())) continue;
 
                 boolean canBeLoaded = false;
                 for (Truck truck : config.getTrucks()) {
@@ -280,7 +205,7 @@ public class LoadingManagerAgent extends Agent {
                 }
 
                 if (!canBeLoaded) {
-                    impossibleCargos.put(cargo.getId(), true);
+                    impossibleCargos.add(cargo.getId());
                     it.remove();
                     removedCount++;
                 }
@@ -335,16 +260,19 @@ public class LoadingManagerAgent extends Agent {
                 ACLMessage reply = myAgent.receive(mt);
 
                 if (reply != null) {
-                    // Try to parse the string report
-                    String content = reply.getContent();
-                    if (content != null && content.startsWith("TRUCK_DATA_START")) {
-                        // This is a text format truck report
+                    byte[] payload = reply.getByteSequenceContent();
+                    boolean binary = TruckStatusReport.isReport(payload);
+                    String content = binary ? null : reply.getContent();
+                    if (binary || (content != null && content.startsWith("TRUCK_DATA_START"))) {
+                        // Двоичный отчет или текстовый (отладочный режим)
                         try {
-                            TruckReport report = parseTruckReport(content);
+                            TruckStatusReport report = binary
+                                    ? TruckStatusReport.wrap(payload) : parseTruckReport(content);
                             finalTruckReports.put(reply.getSender().getLocalName(), report);
                             pendingTrucks.remove(reply.getSender());
                             reportsReceived++;
-                            System.out.println("Received string report from " + reply.getSender().getLocalName() +
+                            System.out.println("Received " + (binary ? "binary" : "string") + " report from " +
+                                    reply.getSender().getLocalName() +
                                     ". Total reports: " + reportsReceived + "/" + truckReadyStatus.size());
                         } catch (Exception e) {
                             System.err.println("Error parsing truck report from " + reply.getSender().getLocalName() + ": " + e.getMessage());
@@ -372,9 +300,15 @@ public class LoadingManagerAgent extends Agent {
         });
     }
 
-    // Parse the truck report from string format
-    private TruckReport parseTruckReport(String reportText) {
-        TruckReport report = new TruckReport();
+    // Parse the truck report from string format (отладочный текстовый формат)
+    private TruckStatusReport parseTruckReport(String reportText) throws IOException {
+        int id = 0;
+        float capacity = 0;
+        float currentLoad = 0;
+        float loadPercentage = 0;
+        List<TruckCargoLine> cargos = new ArrayList<>();
+        IntHashSet processedCargoIds = new IntHashSet();
+        IntHashSet impossibleCargoIds = new IntHashSet();
         boolean inCargosSection = false;
 
         for (String line : reportText.split("\n")) {
@@ -392,57 +326,58 @@ public class LoadingManagerAgent extends Agent {
                 // Parse cargo line: id:type:weight
                 String[] cargoParts = line.split(":");
                 if (cargoParts.length >= 3) {
-                    int id = Integer.parseInt(cargoParts[0]);
-                    String type = cargoParts[1];
-                    float weight = Float.parseFloat(cargoParts[2]);
-                    report.cargos.add(new TruckReport.CargoEntry(id, type, weight));
-                    report.cargoTypes.add(type);
+                    cargos.add(new TruckCargoLine(Integer.parseInt(cargoParts[0]), cargoParts[1],
+                            Float.parseFloat(cargoParts[2])));
                 }
             } else if (line.startsWith("ID:")) {
-                report.id = Integer.parseInt(line.substring(3));
+                id = Integer.parseInt(line.substring(3));
             } else if (line.startsWith("CAPACITY:")) {
-                report.capacity = Float.parseFloat(line.substring(9));
+                capacity = Float.parseFloat(line.substring(9));
             } else if (line.startsWith("CURRENT_LOAD:")) {
-                report.currentLoad = Float.parseFloat(line.substring(13));
+                currentLoad = Float.parseFloat(line.substring(13));
             } else if (line.startsWith("LOAD_PERCENTAGE:")) {
-                report.loadPercentage = Float.parseFloat(line.substring(16));
+                loadPercentage = Float.parseFloat(line.substring(16));
             } else if (line.startsWith("PROCESSED_CARGO_IDS:")) {
-                String idsStr = line.substring(19);
-                if (!idsStr.isEmpty()) {
-                    for (String idStr : idsStr.split(",")) {
-                        if (!idStr.isEmpty() && idStr.matches("\\d+")) {
-                            try {
-                                report.processedCargoIds.add(Integer.parseInt(idStr.trim()));
-                            } catch (NumberFormatException e) {
-                                System.err.println("Ошибка при парсинге ID груза: " + idStr);
-                            }
-                        }
-                    }
-                }
-            } else if (line.startsWith("CARGO_TYPES:")) {
-                String[] types = line.substring(12).split(",");
-                for (String type : types) {
-                    if (!type.isEmpty()) {
-                        report.cargoTypes.add(type);
-                    }
-                }
+                parseIds(line.substring("PROCESSED_CARGO_IDS:".length()), processedCargoIds);
             } else if (line.startsWith("IMPOSSIBLE_CARGO_IDS:")) {
-                String idsStr = line.substring(21);
-                if (!idsStr.isEmpty()) {
-                    for (String idStr : idsStr.split(",")) {
-                        if (!idStr.isEmpty()) {
-                            try {
-                                report.impossibleCargoIds.add(Integer.parseInt(idStr.trim()));
-                            } catch (NumberFormatException e) {
-                                System.err.println("Ошибка при парсинге ID невозможного груза: " + idStr);
-                            }
-                        }
-                    }
+                parseIds(line.substring("IMPOSSIBLE_CARGO_IDS:".length()), impossibleCargoIds);
+            }
+        }
+
+        int[] cargoIds = new int[cargos.size()];
+        String[] cargoTypes = new String[cargos.size()];
+        float[] cargoWeights = new float[cargos.size()];
+        for (int i = 0; i < cargoIds.length; i++) {
+            cargoIds[i] = cargos.get(i).id;
+            cargoTypes[i] = cargos.get(i).type;
+            cargoWeights[i] = cargos.get(i).weight;
+        }
+        return TruckStatusReport.wrap(TruckStatusReport.encode(id, capacity, currentLoad, loadPercentage,
+                cargoIds, cargoTypes, cargoWeights, processedCargoIds.toArray(), impossibleCargoIds.toArray()));
+    }
+
+    private static void parseIds(String idsStr, IntHashSet target) {
+        for (String idStr : idsStr.split(",")) {
+            if (!idStr.trim().isEmpty()) {
+                try {
+                    target.add(Integer.parseInt(idStr.trim()));
+                } catch (NumberFormatException e) {
+                    System.err.println("Ошибка при парсинге ID груза: " + idStr);
                 }
             }
         }
+    }
+
+    private static class TruckCargoLine {
+        final int id;
+        final String type;
+        final float weight;
 
-        return report;
+        TruckCargoLine(int id, String type, float weight) {
+            this.id = id;
+            this.type = type;
+            this.weight = weight;
+        }
     }
 
     private void generateFinalReport() {
@@ -453,69 +388,20 @@ public class LoadingManagerAgent extends Agent {
             // (код для пустого отчета)
             return;
         }
+        if (config.isPostOptimize() && Solvers.isAgentMode(config.getMode())) {
+            postOptimize();
+        }
 
         try (PrintWriter writer = new PrintWriter(new FileWriter("loading_report.txt"))) {
-            writer.println("TRUCK LOADING REPORT");
-            writer.println("===================");
-            writer.println();
-            writer.println("Report generated at: " + new Date());
-            writer.println();
-
-            // Calculate statistics
-            float totalCapacity = 0;
-            float totalLoad = 0;
-
-            List<String> truckNames = new ArrayList<>(finalTruckReports.keySet());
-            Collections.sort(truckNames);
-
-            // Считаем фактически загруженные грузы
-            Set<Integer> allLoadedCargoIds = new HashSet<>();
-
-            for (String truckName : truckNames) {
-                TruckReport report = finalTruckReports.get(truckName);
-                writer.println(report.toString());
-                writer.println("------------------");
-
-                totalCapacity += report.capacity;
-                totalLoad += report.currentLoad;
-
-                // Добавляем все грузы из отчета в общий список загруженных грузов
-                for (TruckReport.CargoEntry cargo : report.cargos) {
-                    allLoadedCargoIds.add(cargo.id);
-                }
-            }
-
-            // Собираем все идентификаторы грузов из конфигурации
-            Set<Integer> allCargoIds = new HashSet<>();
-            for (Cargo cargo : config.getCargos()) {
-                allCargoIds.add(cargo.getId());
-            }
-
-            // Невозможные грузы - это те, которые не были загружены ни в один грузовик
-            Set<Integer> trueImpossibleCargos = new HashSet<>(allCargoIds);
-            trueImpossibleCargos.removeAll(allLoadedCargoIds);
-
-            writer.println("SUMMARY");
-            writer.println("=======");
-            writer.println("Total trucks: " + finalTruckReports.size());
-            writer.println("Total capacity: " + totalCapacity);
-            writer.println("Total load: " + totalLoad);
-            if (totalCapacity > 0) {
-                writer.println("Overall loading percentage: " + String.format("%.2f", totalLoad / totalCapacity * 100) + "%");
-            } else {
-                writer.println("Overall loading percentage: 0% (no capacity)");
-            }
-            writer.println("Ideal loading percentage: " + config.getIdealLoadPercentage() + "%");
-            writer.println();
-
-            // Обработанные грузы - это все загруженные грузы
-            writer.println("Total processed cargos: " + allLoadedCargoIds.size());
-            writer.println("Impossible cargos count: " + trueImpossibleCargos.size());
-            writer.println("Remaining cargos: " + (allCargoIds.size() - allLoadedCargoIds.size()));
+            LoadingReport.write(writer, config, finalTruckReports, reportMode(),
+                    (System.nanoTime() - distributionStartNanos) / 1_000_000);
 
             writer.flush(); // Принудительная запись данных в файл
             System.out.println("Report successfully generated: loading_report.txt");
 
+            // Распределение завершено штатно - журнал пула для восстановления больше не нужен
+            CargoPool.getInstance().detachJournal(true);
+
         } catch (IOException e) {
             System.err.println("Error writing report: " + e.getMessage());
             e.printStackTrace();
@@ -529,6 +415,58 @@ public class LoadingManagerAgent extends Agent {
             });
         }
     }
+    /**
+     * Централизованный режим: план строит решатель из секции [SETTINGS], агенты-грузовики
+     * не создаются, отчеты грузовиков собираются прямо из плана
+     */
+    private void runSolver() {
+        LoadingSolver solver;
+        try {
+            solver = Solvers.create(config);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + ". Распределение выполнят агенты-грузовики.");
+            config.setMode(Solvers.AGENTS);
+            startDistribution();
+            return;
+        }
+
+        System.out.println("Распределение решателем " + solver.getName() + "...");
+        reportGenerated = true; // отчеты у грузовиков не запрашиваются
+        LoadingPlan plan = solver.solve(LoadingProblem.of(config));
+        System.out.println("План построен: " + plan);
+        finalTruckReports.putAll(plan.toReports());
+        solverDescription = Solvers.describe(solver, plan);
+        generateFinalReport();
+    }
+
+    /**
+     * Улучшить результат переговоров локальным поиском: отчеты грузовиков заменяются
+     * отчетами по улучшенному плану, если он лучше
+     */
+    private void postOptimize() {
+        LoadingProblem problem = LoadingProblem.of(config);
+        LoadingPlan negotiated = LoadingPlan.fromReports(problem, finalTruckReports.values(), Solvers.AGENTS);
+        LocalSearchSolver solver = new LocalSearchSolver(config.getSolverTimeLimitMs());
+        System.out.println("Улучшение результата переговоров (" + solver.getName() + ", " +
+                config.getSolverTimeLimitMs() + " мс): " + negotiated);
+        LoadingPlan improved = solver.improve(negotiated);
+        if (improved.isBetterThan(negotiated)) {
+            System.out.println("План улучшен: " + improved);
+            finalTruckReports.clear();
+            finalTruckReports.putAll(improved.toReports());
+            postPassName = solver.getName();
+        } else {
+            System.out.println("Локальный поиск не улучшил результат переговоров");
+        }
+    }
+
+    private String reportMode() {
+        if (solverDescription != null) {
+            return solverDescription;
+        }
+        return postPassName == null ? config.getMode() : config.getMode() + " + " + postPassName;
+    }
+
     // Добавьте этот метод в класс LoadingManagerAgent
     private void startDistribution() {
         System.out.println("Начинаю процесс распределения грузов...");
@@ -553,7 +491,8 @@ public class LoadingManagerAgent extends Agent {
                         new Object[]{
                                 truck,
                                 config.getIdealLoadPercentage(),
-                                new ArrayList<>(allTruckAIDs)
+                                new ArrayList<>(allTruckAIDs),
+                                config.isTextReports()
                         });
                 agent.start();
                 System.out.println("Создан и запущен агент-грузовик: " + agentName);
@@ -5,16 +5,24 @@ import jade.core.AID;
 import jade.core.behaviours.*;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
-import jade.lang.acl.UnreadableException;
 import model.Cargo;
 import model.Truck;
+import util.IntHashSet;
 import util.LogHelper;
 import model.CargoPool;
+import model.CargoPoolEvent;
+import model.CargoPoolSubscription;
+import model.CargoTypeRegistry;
+import model.CargoSwap;
+import model.CompatibilityCache;
+import model.PayloadCodec;
+import model.SwapPlanner;
+import model.TransferSelector;
+import model.TruckStatusReport;
 
 
 import java.io.*;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class TruckAgent extends Agent {
     private Truck truck;
@@ -24,18 +32,55 @@ public class TruckAgent extends Agent {
     private boolean readyStatusSent = false;
     private int retryCount = 0;
     private static final int MAX_RETRIES = 3;
-    private Set<Integer> processedCargoIds = new HashSet<>();
+    // Резервирование между reserveCargo и takeCargo не должно пережить зависший агент
+    private static final long RESERVATION_LEASE_MS = 5000;
+    private final IntHashSet processedCargoIds = new IntHashSet();
     private int exchangeAttempts = 0;
     private static final int MAX_EXCHANGE_ATTEMPTS = 2;
     private float desiredExchangeWeight;
     private String direction;
     private List<AID> otherTruckAIDs;
     private Map<AID, Boolean> truckReadyStatus = new HashMap<>();
-    private Map<AID, Cargo> pendingTransfers = new HashMap<>();
-    private static Set<Integer> recentlyTransferredCargoIds = Collections.synchronizedSet(new HashSet<>());    private long exchangeStartTime = -1;
+    // Грузы, переданные получателю и ожидающие подтверждения CARGO_RECEIVED
+    private Map<AID, List<Cargo>> pendingTransfers = new HashMap<>();
+    private static final long TRANSFER_SELECTION_BUDGET_NANOS = 20_000_000L;
+    // Общие для всех грузовиков множества; доступ под монитором самого множества
+    private static final IntHashSet recentlyTransferredCargoIds = new IntHashSet();
+    private long exchangeStartTime = -1;
     private static final long MAX_EXCHANGE_TIME = 60000;
-    private static Set<Integer> globalTransferredCargoIds = new HashSet<>();
-    private Set<Integer> impossibleCargoIds = new HashSet<>();
+    private static final IntHashSet globalTransferredCargoIds = new IntHashSet();
+    private final IntHashSet impossibleCargoIds = new IntHashSet();
+    private CargoPoolSubscription cargoSubscription;
+    private boolean waitingForCargo = false;
+    // Отладочный режим: итоговый отчет в прежнем текстовом формате TRUCK_DATA_START
+    private boolean textReports = false;
+    // Обмен наборами грузов в обе стороны: второй грузовик применяет обмен у себя и отвечает AGREE,
+    // инициатор проверяет свою сторону и подтверждает (CONFIRM) или отменяет (DISCONFIRM) обмен.
+    // На подтверждение второй грузовик отвечает INFORM (обмен зафиксирован) или FAILURE (обмен
+    // уже откачен по таймауту); инициатор применяет свою сторону только после INFORM
+    private static final String SWAP_CONVERSATION = "cargo-swap";
+    private static final long SWAP_AGREE_TIMEOUT_MS = 10000;
+    // Второй грузовик ждет решения дольше, чем инициатор ждет согласия: откат по таймауту
+    // происходит, только если инициатор не ответил вовсе
+    private static final long SWAP_DECISION_TIMEOUT_MS = 30000;
+    private int swapCounter = 0;
+    private CargoSwap initiatedSwap;
+    private AID initiatedSwapPeer;
+    // Подтверждение обмена отправлено, ждем ответа второго грузовика
+    private boolean initiatedSwapCommitting;
+    // Обмены, примененные у нас как у второго грузовика и ожидающие решения инициатора
+    private final Map<String, CargoSwap> preparedSwaps = new HashMap<>();
+    // Версия состояния и типы грузов отправителя передаются в параметрах сообщений обмена;
+    // запомненные типы других грузовиков используются без запроса, пока они свежие,
+    // а дальше запрос GET_CARGO_TYPES с известной версией получает короткий ответ, если она не изменилась
+    private static final String STATE_VERSION_PARAM = "state-version";
+    private static final String LOADED_TYPES_PARAM = "loaded-types";
+    private static final String KNOWN_VERSION_PARAM = "known-version";
+    private static final long PEER_STATE_FRESH_MS = 1000;
+    private final Map<AID, PeerState> peerStates = new HashMap<>();
+    private long summaryVersion = -1;
+    private String typesSummary;
+    private String incompatibilitiesSummary;
 
 
     @Override
@@ -45,6 +90,9 @@ public class TruckAgent extends Agent {
             truck = (Truck) args[0];
             idealLoadPercentage = (float) args[1];
             otherTruckAIDs = new ArrayList<>((List<AID>) args[2]);
+            if (args.length > 3) {
+                textReports = (boolean) args[3];
+            }
             // Удаляем себя из списка по имени
             otherTruckAIDs.removeIf(aid ->
                     aid.getLocalName().equals(getAID().getLocalName())
@@ -53,6 +101,28 @@ public class TruckAgent extends Agent {
 
         LogHelper.info(truck.getId(), "Агент запущен. Вместимость: " + truck.getCapacity());
 
+        // Сигналы пула приходят из чужих потоков, поэтому передаются агенту через очередь O2A
+        setEnabledO2ACommunication(true, 0);
+        cargoSubscription = CargoPool.getInstance().subscribe(
+                CargoPoolEvent.ADDED | CargoPoolEvent.RELEASED,
+                subscription -> {
+                    try {
+                        putO2AObject(subscription, false);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+        cargoSubscription.pause();
+        addBehaviour(new CyclicBehaviour(this) {
+            public void action() {
+                Object signal = myAgent.getO2AObject();
+                if (signal instanceof CargoPoolSubscription) {
+                    onCargoPoolChanged(((CargoPoolSubscription) signal).drain());
+                } else if (signal == null) {
+                    block();
+                }
+            }
+        });
 
         addBehaviour(new OneShotBehaviour(this) {
             public void action() {
@@ -62,7 +132,8 @@ public class TruckAgent extends Agent {
         // Add a specific handler for TRUCK_READY_STATUS messages
         addBehaviour(new CyclicBehaviour(this) {
             public void action() {
-                MessageTemplate mt = MessageTemplate.MatchPerformative(ACLMessage.INFORM);
+                MessageTemplate mt = MessageTemplate.and(
+                        MessageTemplate.MatchPerformative(ACLMessage.INFORM), notSwapConversation());
                 ACLMessage msg = myAgent.receive(mt);
 
                 if (msg != null) {
@@ -83,11 +154,8 @@ public class TruckAgent extends Agent {
                     } else {
                         // Пробуем обрабатывать как объект
                         try {
-                            Object contentObj = msg.getContentObject();
-                            if (contentObj instanceof List) {
-                                List<Cargo> availableCargos = (List<Cargo>) contentObj;
-                                processCargos(availableCargos);
-                            } else if (contentObj instanceof Cargo) {
+                            Object contentObj = readPayload(msg);
+                            if (contentObj instanceof Cargo) {
                                 Cargo receivedCargo = (Cargo) contentObj;
                                 processCargo(receivedCargo, msg.getSender());
                             } else if (contentObj instanceof Truck) {
@@ -95,7 +163,7 @@ public class TruckAgent extends Agent {
                             } else {
                                 LogHelper.debug(truck.getId(), "Получен объект с классом: " + contentObj.getClass().getName());
                             }
-                        } catch (UnreadableException e) {
+                        } catch (IOException e) {
                             LogHelper.debug(truck.getId(), "Получено неизвестное текстовое сообщение INFORM: " + content);
                         }
                     }
@@ -104,68 +172,26 @@ public class TruckAgent extends Agent {
                 }
             }
         });
-        // Behavior to handle cargo response REFUSE
+        // Behavior to handle transfer confirmations (CONFIRM)
         addBehaviour(new CyclicBehaviour(this) {
             public void action() {
-                MessageTemplate mt = MessageTemplate.MatchPerformative(ACLMessage.REFUSE);
-
-                ACLMessage msg = myAgent.receive(mt);
-
-                if (msg != null) {
-                    if (msg.getPerformative() == ACLMessage.REFUSE) {
-                        loadingComplete = true;
-                        checkLoadingProgress();
-                    }
-                } else {
-                    block();
-                }
-            }
-        });
-
-        // Behavior to handle cargo claim confirmations (CONFIRM, DISCONFIRM)
-        addBehaviour(new CyclicBehaviour(this) {
-            public void action() {
-                MessageTemplate mt = MessageTemplate.or(
-                        MessageTemplate.MatchPerformative(ACLMessage.CONFIRM),
-                        MessageTemplate.MatchPerformative(ACLMessage.DISCONFIRM)
-                );
+                MessageTemplate mt = MessageTemplate.and(
+                        MessageTemplate.MatchPerformative(ACLMessage.CONFIRM), notSwapConversation());
                 ACLMessage msg = myAgent.receive(mt);
 
                 if (msg != null) {
-                    if (msg.getPerformative() == ACLMessage.CONFIRM) {
-                        // Проверяем, это сообщение с подтверждением получения груза или объект Cargo
-                        String content = msg.getContent();
-                        if (content != null && content.startsWith("CARGO_RECEIVED:")) {
-                            // Обработка подтверждения получения груза
-                            String[] parts = content.split(":");
-                            if (parts.length > 1) {
-                                int cargoId = Integer.parseInt(parts[1]);
-                                LogHelper.exchange(truck.getId(),"Груз " + cargoId +
-                                        " успешно получен");
-
-                                // Удаляем груз из списка ожидающих подтверждения
-                                pendingTransfers.remove(msg.getSender());
-                            }
-                        } else {
-                            // Это подтверждение от LoadingManagerAgent с объектом Cargo
-                            try {
-                                Cargo receivedCargo = (Cargo) msg.getContentObject();
-                                truck.addCargo(receivedCargo);
-                                LogHelper.info(truck.getId(), " загрузил груз " + receivedCargo.getId());
+                    // Подтверждение получения переданного груза
+                    String content = msg.getContent();
+                    if (content != null && content.startsWith("CARGO_RECEIVED:")) {
+                        String[] parts = content.split(":");
+                        if (parts.length > 1) {
+                            int cargoId = Integer.parseInt(parts[1]);
+                            LogHelper.exchange(truck.getId(),"Груз " + cargoId +
+                                    " успешно получен");
 
-                                float loadPercentage = truck.getLoadPercentage();
-                                if (Math.abs(loadPercentage - idealLoadPercentage) <= 10) {
-                                    notifyManager();
-                                } else {
-                                    requestCargo();
-                                }
-                            } catch (UnreadableException e) {
-                                e.printStackTrace();
-                                requestCargo();
-                            }
+                            // Удаляем груз из списка ожидающих подтверждения
+                            takePendingTransfer(msg.getSender(), cargoId);
                         }
-                    } else if (msg.getPerformative() == ACLMessage.DISCONFIRM) {
-                        requestCargo();
                     }
                 } else {
                     block();
@@ -234,6 +260,7 @@ public class TruckAgent extends Agent {
                                     ACLMessage reply = new ACLMessage(ACLMessage.PROPOSE);
                                     reply.addReceiver(msg.getSender());
                                     reply.setContent("EXCHANGE_POSSIBLE:" + truck.getLoadPercentage());
+                                    stampState(reply);
                                     LogHelper.exchange(truck.getId(), " может помочь с обменом, отправка предложения: " + truck.getLoadPercentage());
                                     myAgent.send(reply);
                                 } else {
@@ -257,7 +284,8 @@ public class TruckAgent extends Agent {
         // Обработчик для отказов в обмене
         addBehaviour(new CyclicBehaviour(this) {
             public void action() {
-                MessageTemplate mt = MessageTemplate.MatchPerformative(ACLMessage.REFUSE);
+                MessageTemplate mt = MessageTemplate.and(
+                        MessageTemplate.MatchPerformative(ACLMessage.REFUSE), notSwapConversation());
                 ACLMessage msg = myAgent.receive(mt);
 
                 if (msg != null) {
@@ -311,13 +339,20 @@ public class TruckAgent extends Agent {
                             if (acceptProposal) {
                                 // Принимаем предложение
                                 exchangeInProgress = true;
+                                final AID sender = msg.getSender();
+
+                                // Типы грузов пришли вместе с предложением - отдельный запрос не нужен
+                                PeerState peerState = rememberPeerState(msg);
+                                if (peerState != null) {
+                                    onProposerTypesKnown(sender, peerState.types);
+                                    return;
+                                }
 
                                 ACLMessage typeRequest = new ACLMessage(ACLMessage.REQUEST);
                                 typeRequest.addReceiver(msg.getSender());
                                 typeRequest.setContent("REQUEST_CARGO_TYPES");
                                 send(typeRequest);
 
-                                final AID sender = msg.getSender();
                                 addBehaviour(new WakerBehaviour(myAgent, 5000) { // 5 секунд на ответ
                                     protected void onWake() {
                                         // Создаем обработчик для получения типов грузов
@@ -334,38 +369,8 @@ public class TruckAgent extends Agent {
                                                     // Извлекаем типы грузов
                                                     String content = typesReply.getContent();
                                                     String typesStr = content.substring("CARGO_TYPES:".length());
-                                                    String[] cargoTypes = typesStr.split(",");
-
-                                                    // Проверяем совместимость
-                                                    boolean compatible = true;
-                                                    if (cargoTypes.length > 0 && !cargoTypes[0].isEmpty()) {
-                                                        for (String cargoType : cargoTypes) {
-                                                            for (Cargo existingCargo : truck.getLoadedCargos()) {
-                                                                if (existingCargo.getIncompatibleTypes().contains(cargoType)) {
-                                                                    compatible = false;
-                                                                    LogHelper.failure(truck.getId(),"Тип " + cargoType +
-                                                                            " несовместим с грузом " + existingCargo.getId() +
-                                                                            " (тип: " + existingCargo.getType() + ")");
-                                                                    break;
-                                                                }
-                                                            }
-                                                            if (!compatible) break;
-                                                        }
-                                                    }
-
-                                                    if (compatible) {
-                                                        // Продолжаем обмен
-                                                        continueExchange(sender);
-                                                    } else {
-                                                        // Отклоняем из-за несовместимости
-                                                        ACLMessage reject = new ACLMessage(ACLMessage.REJECT_PROPOSAL);
-                                                        reject.addReceiver(sender);
-                                                        reject.setContent("REJECT_REASON:Несовместимые типы грузов");
-                                                        send(reject);
-                                                        LogHelper.failure(truck.getId()," Предложение отклонено из-за несовместимости типов грузов");
-                                                        exchangeInProgress = false;
-                                                        checkLoadingProgress();
-                                                    }
+                                                    onProposerTypesKnown(sender, CargoTypeRegistry.getInstance()
+                                                            .maskOf(Arrays.asList(typesStr.split(","))));
                                                 } else {
                                                     // Если не получили информацию о типах, продолжаем обмен (рискованно)
                                                     continueExchange(sender);
@@ -424,44 +429,13 @@ public class TruckAgent extends Agent {
                     reply.setPerformative(ACLMessage.INFORM);
 
                     if (msg.getContent().equals("GET_CARGO_TYPES")) {
-                        // Формируем список типов грузов
-                        StringBuilder typesList = new StringBuilder("CARGO_TYPES:");
-                        boolean first = true;
-                        for (Cargo cargo : truck.getLoadedCargos()) {
-                            if (!first) {
-                                typesList.append(",");
-                            }
-                            typesList.append(cargo.getType());
-                            first = false;
-                        }
-                        reply.setContent(typesList.toString());
-                        LogHelper.info(truck.getId()," Отправляем типы грузов: " + typesList);
+                        reply.setContent(cargoTypesAnswer(msg));
+                        LogHelper.info(truck.getId()," Отправляем типы грузов: " + reply.getContent());
                     }
                     else if (msg.getContent().equals("GET_INCOMPATIBILITIES")) {
-                        // Формируем информацию о несовместимостях
-                        StringBuilder incompInfo = new StringBuilder("INCOMPATIBILITIES:");
-                        boolean hasIncompatibilities = false;
-
-                        for (Cargo cargo : truck.getLoadedCargos()) {
-                            if (!cargo.getIncompatibleTypes().isEmpty()) {
-                                incompInfo.append(cargo.getType()).append(":");
-
-                                boolean first = true;
-                                for (String incompType : cargo.getIncompatibleTypes()) {
-                                    if (!first) {
-                                        incompInfo.append(",");
-                                    }
-                                    incompInfo.append(incompType);
-                                    first = false;
-                                }
-                                incompInfo.append(";");
-                                hasIncompatibilities = true;
-                            }
-                        }
-
-                        String content = incompInfo.toString();
-                        reply.setContent(content);
-                        LogHelper.info(truck.getId()," Отправляем информацию о несовместимостях: " + content);
+                        refreshStateSummary();
+                        reply.setContent(incompatibilitiesSummary);
+                        LogHelper.info(truck.getId()," Отправляем информацию о несовместимостях: " + incompatibilitiesSummary);
                     }
                     else if (msg.getContent().equals("GET_FREE_CAPACITY")) {
                         float freeCapacity = truck.getCapacity() - truck.getCurrentLoad();
@@ -469,6 +443,7 @@ public class TruckAgent extends Agent {
                         LogHelper.info(truck.getId()," Отправляем информацию о свободной вместимости: " + freeCapacity);
                     }
 
+                    stampState(reply);
                     send(reply);
                 } else {
                     block();
@@ -484,23 +459,13 @@ public class TruckAgent extends Agent {
                 ACLMessage msg = myAgent.receive(mt);
 
                 if (msg != null) {
-                    // Формируем список типов грузов
-                    StringBuilder typesList = new StringBuilder("CARGO_TYPES:");
-                    boolean first = true;
-                    for (Cargo cargo : truck.getLoadedCargos()) {
-                        if (!first) {
-                            typesList.append(",");
-                        }
-                        typesList.append(cargo.getType());
-                        first = false;
-                    }
-
                     // Отправляем ответ с типами грузов
                     ACLMessage reply = msg.createReply();
                     reply.setPerformative(ACLMessage.INFORM);
-                    reply.setContent(typesList.toString());
+                    reply.setContent(cargoTypesAnswer(msg));
+                    stampState(reply);
                     send(reply);
-                    LogHelper.debug(truck.getId()," Отправлены типы грузов: " + typesList.toString());
+                    LogHelper.debug(truck.getId()," Отправлены типы грузов: " + reply.getContent());
                 } else {
                     block();
                 }
@@ -523,40 +488,23 @@ public class TruckAgent extends Agent {
                                         " несовместим с грузами в грузовике ");
 
                                 // Получаем груз для восстановления
-                                Cargo cargoToRestore = pendingTransfers.remove(msg.getSender());
+                                Cargo cargoToRestore = takePendingTransfer(msg.getSender(), Integer.parseInt(parts[1]));
                                 if (cargoToRestore != null) {
-                                    // Проверяем совместимость перед восстановлением
-                                    if (truck.canAddCargo(cargoToRestore)) {
-                                        truck.addCargo(cargoToRestore);
-                                        LogHelper.warning(truck.getId()," Груз " + cargoToRestore.getId() +
-                                                " возвращен обратно из-за несовместимости");
-                                    } else {
-                                        LogHelper.failure(truck.getId()," Невозможно восстановить груз " + cargoToRestore.getId() +
-                                                " (тип: " + cargoToRestore.getType() + ") - стал несовместим с текущими грузами " +
-                                                truck.getLoadedCargos());
-
-                                        // Отправляем груз менеджеру для обработки
-                                        returnCargoToPool(cargoToRestore);
-                                    }
+                                    restoreTransferredCargo(cargoToRestore, "из-за несовместимости");
+                                }
+                                // Остальные грузы набора еще могут быть приняты получателем
+                                if (pendingTransfers.containsKey(msg.getSender())) {
+                                    return;
                                 }
                             }
                         } else if (content.startsWith("TRANSFER_FAILED:")) {
                             LogHelper.failure(truck.getId()," Передача груза не удалась: " + content);
 
                             // Аналогичная проверка совместимости перед восстановлением
-                            Cargo cargoToRestore = pendingTransfers.remove(msg.getSender());
-                            if (cargoToRestore != null) {
-                                if (truck.canAddCargo(cargoToRestore)) {
-                                    truck.addCargo(cargoToRestore);
-                                    LogHelper.warning(truck.getId()," Груз " + cargoToRestore.getId() +
-                                            " возвращен обратно из-за ошибки передачи");
-                                } else {
-                                    LogHelper.failure(truck.getId()," Невозможно восстановить груз " + cargoToRestore.getId() +
-                                            " (тип: " + cargoToRestore.getType() + ") - стал несовместим с текущими грузами " +
-                                            truck.getLoadedCargos());
-
-                                    // Отправляем груз менеджеру для обработки
-                                    returnCargoToPool(cargoToRestore);
+                            List<Cargo> cargosToRestore = pendingTransfers.remove(msg.getSender());
+                            if (cargosToRestore != null) {
+                                for (Cargo cargoToRestore : cargosToRestore) {
+                                    restoreTransferredCargo(cargoToRestore, "из-за ошибки передачи");
                                 }
                             }
                         }
@@ -568,6 +516,57 @@ public class TruckAgent extends Agent {
                 }
             }
         });
+        // Обработчик сообщений обмена наборами грузов
+        addBehaviour(new CyclicBehaviour(this) {
+            public void action() {
+                ACLMessage msg = myAgent.receive(MessageTemplate.MatchConversationId(SWAP_CONVERSATION));
+                if (msg == null) {
+                    block();
+                    return;
+                }
+                switch (msg.getPerformative()) {
+                    case ACLMessage.REQUEST:
+                        if ("GET_SWAP_STATE".equals(msg.getContent())) {
+                            ACLMessage reply = msg.createReply();
+                            reply.setPerformative(ACLMessage.INFORM);
+                            reply.setConversationId(SWAP_CONVERSATION);
+                            reply.setLanguage(PayloadCodec.LANGUAGE);
+                            reply.setByteSequenceContent(PayloadCodec.encode(truck));
+                            stampState(reply);
+                            send(reply);
+                        } else {
+                            prepareSwap(msg);
+                        }
+                        break;
+                    case ACLMessage.AGREE:
+                        onSwapAgreed(msg);
+                        break;
+                    case ACLMessage.REFUSE:
+                        onSwapRefused(msg);
+                        break;
+                    case ACLMessage.CONFIRM:
+                        commitPreparedSwap(msg);
+                        break;
+                    case ACLMessage.DISCONFIRM:
+                        finishPreparedSwap(msg.getContent().substring("SWAP_ABORT:".length()), false);
+                        break;
+                    case ACLMessage.INFORM:
+                        // INFORM этого разговора - еще и ответ на GET_SWAP_STATE, пришедший после таймаута
+                        if (msg.getContent() != null && msg.getContent().startsWith("SWAP_COMMITTED:")) {
+                            onSwapCommitted(msg);
+                        } else {
+                            LogHelper.warning(truck.getId(), "Запоздалое состояние от " +
+                                    msg.getSender().getLocalName() + " пропущено");
+                        }
+                        break;
+                    case ACLMessage.FAILURE:
+                        onSwapCommitFailed(msg);
+                        break;
+                    default:
+                        LogHelper.warning(truck.getId(), "Неожиданное сообщение обмена: " + msg.getContent());
+                }
+            }
+        });
         addBehaviour(new WakerBehaviour(this, 180000) { // 30 second timeout
             protected void onWake() {
                 if (!readyStatusSent) {
@@ -604,12 +603,16 @@ public class TruckAgent extends Agent {
                     reply.setPerformative(ACLMessage.INFORM);
 
                     try {
-                        // Send string representation
-                        String truckData = serializeTruckToString();
-                        reply.setContent(truckData);
+                        if (textReports) {
+                            reply.setContent(serializeTruckToString());
+                        } else {
+                            reply.setByteSequenceContent(TruckStatusReport.encode(truck,
+                                    processedCargoIds.toArray(), impossibleCargoIds.toArray()));
+                        }
                         myAgent.send(reply);
 
-                        LogHelper.success(truck.getId(), "Отправлен финальный отчет менеджеру (текстовый формат)");
+                        LogHelper.success(truck.getId(), "Отправлен финальный отчет менеджеру (" +
+                                (textReports ? "текстовый" : "двоичный") + " формат)");
                     } catch (Exception e) {
                         LogHelper.failure(truck.getId(), "Ошибка при отправке данных грузовика: " + e.getMessage());
                         e.printStackTrace();
@@ -620,6 +623,13 @@ public class TruckAgent extends Agent {
             }
         });
     }
+    @Override
+    protected void takeDown() {
+        if (cargoSubscription != null) {
+            CargoPool.getInstance().unsubscribe(cargoSubscription);
+        }
+    }
+
     private void processCargo(Cargo receivedCargo, AID sender) {
         if (truck.canAddCargo(receivedCargo)) {
             truck.addCargo(receivedCargo);
@@ -648,67 +658,58 @@ public class TruckAgent extends Agent {
             send(errorMsg);
         }
     }
-    private Cargo findCargoToTransfer(float targetWeight) {
-        LogHelper.debug(truck.getId(), "Поиск груза для передачи. Целевой вес: " + targetWeight);
+    /**
+     * Набор грузов для передачи, суммарный вес которого ближе всего к целевому.
+     * Кандидаты - грузы, которые можно безопасно снять, недавно не передавались
+     * и совместимы с грузами получателя; выбор делает {@link TransferSelector}.
+     */
+    private List<Cargo> findCargosToTransfer(float targetWeight, BitSet receiverTypes) {
+        LogHelper.debug(truck.getId(), "Поиск грузов для передачи. Целевой вес: " + targetWeight);
         List<Cargo> loadedCargos = truck.getLoadedCargos();
         LogHelper.debug(truck.getId(), "Доступные грузы: " + loadedCargos.size() + " шт.");
         if (loadedCargos.isEmpty()) {
             LogHelper.warning(truck.getId(), "Нет доступных грузов для передачи!");
-            return null;
+            return Collections.emptyList();
         }
 
-        // Сначала ищем груз с точным весом
+        CargoTypeRegistry registry = CargoTypeRegistry.getInstance();
+        List<Cargo> candidates = new ArrayList<>();
         for (Cargo cargo : loadedCargos) {
-            if (Math.abs(cargo.getWeight() - targetWeight) < 1.0 &&
+            if (registry.isCompatible(cargo.getTypeId(), receiverTypes) &&
                     canRemoveCargoSafely(cargo) &&
-                    !recentlyTransferredCargoIds.contains(cargo.getId())) {
-                LogHelper.debug(truck.getId(), "Найден идеальный груз: " + cargo.getId() + " весом " + cargo.getWeight());
-                recentlyTransferredCargoIds.add(cargo.getId());
-                return cargo;
+                    !wasRecentlyTransferred(cargo.getId())) {
+                candidates.add(cargo);
             }
         }
 
-        // Если точного соответствия нет, ищем груз поменьше целевого веса
-        Cargo bestSmallerMatch = null;
-        float maxWeight = 0;
-        for (Cargo cargo : loadedCargos) {
-            if (cargo.getWeight() < targetWeight &&
-                    cargo.getWeight() > maxWeight &&
-                    canRemoveCargoSafely(cargo) &&
-                    !recentlyTransferredCargoIds.contains(cargo.getId())) {
-                maxWeight = cargo.getWeight();
-                bestSmallerMatch = cargo;
-            }
-        }
-
-        // Если нашли подходящий меньший груз, возвращаем его
-        if (bestSmallerMatch != null) {
-            LogHelper.debug(truck.getId(), "Найден подходящий меньший груз: " + bestSmallerMatch.getId() +
-                    " весом " + bestSmallerMatch.getWeight());
-            recentlyTransferredCargoIds.add(bestSmallerMatch.getId());
-            return bestSmallerMatch;
+        List<Cargo> selected = TransferSelector.select(truck, candidates, targetWeight,
+                TRANSFER_SELECTION_BUDGET_NANOS);
+        if (selected.isEmpty()) {
+            LogHelper.warning(truck.getId(), "Не найдено ни одного подходящего груза!");
+            return selected;
         }
 
-        // Иначе ищем груз с минимальной разницей
-        Cargo bestMatch = null;
-        float minDiff = Float.MAX_VALUE;
-        for (Cargo cargo : loadedCargos) {
-            float diff = Math.abs(cargo.getWeight() - targetWeight);
-            if (diff < minDiff &&
-                    canRemoveCargoSafely(cargo) &&
-                    !recentlyTransferredCargoIds.contains(cargo.getId())) {
-                minDiff = diff;
-                bestMatch = cargo;
+        for (Cargo cargo : selected) {
+            markRecentlyTransferred(cargo.getId());
+            synchronized (globalTransferredCargoIds) {
+                globalTransferredCargoIds.add(cargo.getId());
             }
         }
+        LogHelper.debug(truck.getId(), "Выбрано грузов: " + selected.size() + " общим весом " +
+                TransferSelector.totalWeight(selected) + " из " + candidates.size() + " кандидатов");
+        return selected;
+    }
 
-        if (bestMatch != null) {
-            recentlyTransferredCargoIds.add(bestMatch.getId());
-            globalTransferredCargoIds.add(bestMatch.getId());
-        } else {
-            LogHelper.warning(truck.getId(), "Не найдено ни одного подходящего груза!");        }
+    private static boolean wasRecentlyTransferred(int cargoId) {
+        synchronized (recentlyTransferredCargoIds) {
+            return recentlyTransferredCargoIds.contains(cargoId);
+        }
+    }
 
-        return bestMatch;
+    private static void markRecentlyTransferred(int cargoId) {
+        synchronized (recentlyTransferredCargoIds) {
+            recentlyTransferredCargoIds.add(cargoId);
+        }
     }
 
     private void returnCargoToPool(Cargo cargo) {
@@ -718,113 +719,126 @@ public class TruckAgent extends Agent {
                 " возвращен в пул, так как не может быть восстановлен");
     }
     private boolean canRemoveCargoSafely(Cargo cargo) {
-        // Проверяем, не является ли этот груз единственным препятствием для несовместимости других грузов
-        List<Cargo> otherCargos = new ArrayList<>(truck.getLoadedCargos());
-        otherCargos.remove(cargo);
-
-        // 1. Создаем набор всех типов грузов, кроме удаляемого
-        Set<String> remainingTypes = new HashSet<>();
-        for (Cargo remainingCargo : otherCargos) {
-            remainingTypes.add(remainingCargo.getType());
-        }
-
-        // 2. Проверяем, нет ли несовместимости между оставшимися грузами
-        for (Cargo remainingCargo : otherCargos) {
-            for (String incompatibleType : remainingCargo.getIncompatibleTypes()) {
-                if (remainingTypes.contains(incompatibleType)) {
-                    LogHelper.debug(truck.getId(), "Удаление груза " + cargo.getId() +
-                            " создаст несовместимость между типами " +
-                            remainingCargo.getType() + " и " + incompatibleType);
-                    return false;
-                }
-            }
+        // Грузовик ведет журнал конфликтующих пар, проверка не перебирает оставшиеся грузы
+        if (!truck.canRemoveCargoSafely(cargo)) {
+            LogHelper.debug(truck.getId(), "Удаление груза " + cargo.getId() +
+                    " оставит несовместимые грузы: конфликтующих пар " + truck.getConflictingPairCount());
+            return false;
         }
-
-        LogHelper.debug(truck.getId(), "Груз " + cargo.getId() + " можно безопасно удалить");
         return true;
     }
 
     private void requestCargo() {
-        // Получаем доступные грузы напрямую из пула
         CargoPool cargoPool = CargoPool.getInstance();
-        List<Cargo> availableCargos = cargoPool.getAvailableCargos();
-
-        if (availableCargos.isEmpty()) {
+        if (cargoPool.getAvailableCargoCount() == 0) {
             LogHelper.info(truck.getId(), "Нет доступных грузов в пуле, завершаем загрузку");
             loadingComplete = true;
+            waitForCargo();
             checkLoadingProgress();
             return;
         }
 
-        // Ищем подходящий груз
-        processCargos(availableCargos);
-    }
-
-
-    private void processCargos(List<Cargo> availableCargos) {
-
-        boolean cargoFound = false;
-        processedCargoIds.clear();
-        CargoPool cargoPool = CargoPool.getInstance();
-
-        for (Cargo cargo : availableCargos) {
-            if (processedCargoIds.contains(cargo.getId())) continue;
+        if (truck.getLoadPercentage() > idealLoadPercentage + 10) {
+            checkLoadingProgress();
+            return;
+        }
 
-            if (truck.canAddCargo(cargo)) {
-                cargoFound = true;
-                int cargoId = cargo.getId();
-
-                // Пытаемся зарезервировать груз
-                if (cargoPool.reserveCargo(cargoId)) {
-                    // Если успешно зарезервировали, берем его из пула
-                    Cargo reservedCargo = cargoPool.takeCargo(cargoId);
-
-                    if (reservedCargo != null) {
-                        // Добавляем груз в грузовик
-                        truck.addCargo(reservedCargo);
-                        LogHelper.success(truck.getId(), "Загрузил груз " + reservedCargo.getId() +
-                                " (тип: " + reservedCargo.getType() + ")");
-
-                        float loadPercentage = truck.getLoadPercentage();
-                        if (Math.abs(loadPercentage - idealLoadPercentage) <= 10) {
-                            notifyManager();
-                        } else {
-                            // Просим следующий груз
-                            addBehaviour(new WakerBehaviour(this, 500) {
-                                protected void onWake() {
-                                    requestCargo();
-                                }
-                            });
-                        }
-                        return;
-                    } else {
-                        // Если не смогли взять груз (кто-то опередил), отменяем резервирование
-                        cargoPool.cancelReservation(cargoId);
-                    }
+        // Забираем из пула сразу весь набор, доводящий загрузку до окна идеальной
+        float currentLoad = truck.getCurrentLoad();
+        float idealLoad = truck.getCapacity() * (idealLoadPercentage / 100);
+        float upperLoad = Math.min(truck.getCapacity() * ((idealLoadPercentage + 10) / 100), truck.getCapacity());
+        List<Cargo> claimedCargos = cargoPool.claimCargos(truck, getLocalName(),
+                idealLoad - currentLoad, upperLoad - currentLoad);
+
+        if (claimedCargos.isEmpty() && truck.getLoadPercentage() < idealLoadPercentage - 10) {
+            // В окно ничего не помещается - как и раньше, берем один груз в пределах вместимости,
+            // выбирая ближайший по весу к недостающему до идеальной загрузки
+            Cargo closest = cargoPool.findClosestAvailable(idealLoad - currentLoad,
+                    truck.getCapacity() - currentLoad, truck);
+            if (closest != null && cargoPool.reserveCargo(closest.getId(), getLocalName(), RESERVATION_LEASE_MS)) {
+                Cargo taken = cargoPool.takeCargo(closest.getId(), getLocalName());
+                if (taken != null) {
+                    claimedCargos = Collections.singletonList(taken);
+                } else {
+                    cargoPool.cancelReservation(closest.getId(), getLocalName());
                 }
-            } else {
-                LogHelper.warning(truck.getId(), "Не могу загрузить груз " + cargo.getId() +
-                        " (тип: " + cargo.getType() + ") - несовместим с текущими грузами или превышена вместимость");
-                impossibleCargoIds.add(cargo.getId());
             }
-            processedCargoIds.add(cargo.getId());
         }
 
-        if (!cargoFound) {
-            if (retryCount < MAX_RETRIES) {
+        if (claimedCargos.isEmpty()) {
+            if (!cargoPool.hasCompatibleCargo(truck, truck.getCapacity() - truck.getCurrentLoad())) {
+                // Совместимых грузов в пуле не осталось - повторные попытки ничего не дадут,
+                // пул сам сообщит, если подходящий груз вернется
+                LogHelper.info(truck.getId(), "В пуле нет совместимых грузов, завершаем загрузку");
+                loadingComplete = true;
+                waitForCargo();
+                checkLoadingProgress();
+            } else if (retryCount < MAX_RETRIES) {
+                // Совместимые грузы есть, но их перехватили другие грузовики - сразу пробуем снова
                 retryCount++;
-                addBehaviour(new WakerBehaviour(this, 2000) {
-                    protected void onWake() {
+                addBehaviour(new OneShotBehaviour(this) {
+                    public void action() {
                         requestCargo();
                     }
                 });
             } else {
                 notifyManager();
             }
+            return;
+        }
+
+        for (Cargo cargo : claimedCargos) {
+            if (truck.canAddCargo(cargo)) {
+                truck.addCargo(cargo);
+                processedCargoIds.add(cargo.getId());
+                LogHelper.success(truck.getId(), "Загрузил груз " + cargo.getId() +
+                        " (тип: " + cargo.getType() + ")");
+            } else {
+                cargoPool.returnCargo(cargo);
+            }
+        }
+
+        float loadPercentage = truck.getLoadPercentage();
+        if (Math.abs(loadPercentage - idealLoadPercentage) <= 10) {
+            notifyManager();
+        } else if (loadPercentage > idealLoadPercentage) {
+            checkLoadingProgress();
+        } else {
+            // Загрузка еще ниже окна - сразу пробуем добрать
+            addBehaviour(new OneShotBehaviour(this) {
+                public void action() {
+                    requestCargo();
+                }
+            });
         }
     }
 
 
+    /**
+     * Подписка пула будит агента, когда появляется груз, помещающийся в свободную вместимость
+     * и совместимый с уже загруженными типами
+     */
+    private void waitForCargo() {
+        if (readyStatusSent) {
+            return;
+        }
+        waitingForCargo = true;
+        cargoSubscription.watchFor(truck.getCapacity() - truck.getCurrentLoad(), truck.getLoadedCargoTypes());
+        LogHelper.debug(truck.getId(), "Ожидаем появления подходящих грузов в пуле");
+    }
+
+    private void onCargoPoolChanged(CargoPoolEvent event) {
+        if (event.isEmpty() || !waitingForCargo || readyStatusSent || exchangeInProgress) {
+            return;
+        }
+        LogHelper.debug(truck.getId(), "Изменение пула: " + event + ", повторяем запрос грузов");
+        waitingForCargo = false;
+        cargoSubscription.pause();
+        loadingComplete = false;
+        retryCount = 0;
+        requestCargo();
+    }
+
     private void checkLoadingProgress() {
         float loadPercentage = truck.getLoadPercentage();
         float idealLoad = truck.getCapacity() * (idealLoadPercentage / 100);
@@ -1072,6 +1086,8 @@ public class TruckAgent extends Agent {
     private void notifyManager() {
         if (!readyStatusSent) {
             readyStatusSent = true;
+            waitingForCargo = false;
+            cargoSubscription.pause();
             LogHelper.info(truck.getId(), "Отправка TRUCK_READY в менеджер.");
             try {
                 Thread.sleep(truck.getId() * 2000); // По 0.5 сек на каждый ID
@@ -1112,8 +1128,8 @@ public class TruckAgent extends Agent {
 
         // Определяем действие в зависимости от направления обмена
         if (direction.equals("NEED_LESS")) {
-            // Если мы хотим уменьшить груз, то отправляем наш груз
-            sendCargoToReceiver(receiver);
+            // Если мы хотим уменьшить груз, то предлагаем обмен наборами грузов
+            startSwap(receiver);
         } else if (direction.equals("NEED_MORE")) {
             // Если мы хотим увеличить груз, то ждем пока другой грузовик отправит нам груз
             // Увеличиваем таймаут, так как теперь мы ждем, пока другой грузовик найдет и отправит груз
@@ -1136,110 +1152,416 @@ public class TruckAgent extends Agent {
         }
     }
     private void sendCargoToReceiver(AID receiver) {
-        // Находим груз для передачи
-        Cargo cargoToTransfer = findCargoToTransfer(desiredExchangeWeight);
-        if (cargoToTransfer != null) {
-            boolean compatible = checkCompatibility(cargoToTransfer, receiver);
-
-            if (!compatible) {
-                LogHelper.warning(truck.getId(), "Обмен отклонен: груз " + cargoToTransfer.getId() +
-                        " (" + cargoToTransfer.getType() + ")" +
-                        " несовместим с грузами в грузовике " + receiver.getLocalName());
-                exchangeInProgress = false;
-                checkLoadingProgress();
-                return;
-            }
+        BitSet receiverTypes = requestReceiverTypes(receiver);
+        if (receiverTypes == null) {
+            exchangeInProgress = false;
+            checkLoadingProgress();
+            return;
+        }
 
-            // Проверяем, улучшит ли обмен нашу ситуацию
-            float currentDifference = Math.abs(truck.getLoadPercentage() - idealLoadPercentage);
-            float newLoad = truck.getCurrentLoad() - cargoToTransfer.getWeight();
-            float newPercentage = (newLoad / truck.getCapacity()) * 100;
-            float newDifference = Math.abs(newPercentage - idealLoadPercentage);
+        // Находим набор грузов для передачи
+        List<Cargo> cargosToTransfer = findCargosToTransfer(desiredExchangeWeight, receiverTypes);
+        if (cargosToTransfer.isEmpty()) {
+            LogHelper.error(truck.getId(), "Не удалось найти подходящий груз для передачи");
+            exchangeInProgress = false;
+            checkLoadingProgress();
+            return;
+        }
 
-            if (newDifference >= currentDifference) {
-                LogHelper.warning(truck.getId(), "Обмен отклонен: не улучшает загрузку (" +
-                        newPercentage + "% vs текущие " + truck.getLoadPercentage() + "%)");
-                exchangeInProgress = false;
-                checkLoadingProgress();
-                return;
-            }
+        // Проверяем, улучшит ли обмен нашу ситуацию
+        float currentDifference = Math.abs(truck.getLoadPercentage() - idealLoadPercentage);
+        float newLoad = truck.getCurrentLoad() - TransferSelector.totalWeight(cargosToTransfer);
+        float newPercentage = (newLoad / truck.getCapacity()) * 100;
+        float newDifference = Math.abs(newPercentage - idealLoadPercentage);
 
-            // Проверяем, можно ли безопасно удалить груз
-            if (canRemoveCargoSafely(cargoToTransfer)) {
-                ACLMessage transferMsg = new ACLMessage(ACLMessage.INFORM);
-                transferMsg.addReceiver(receiver);
-                try {
-                    // Сохраняем копию груза перед удалением
-                    pendingTransfers.put(receiver, cargoToTransfer);
-
-                    truck.removeCargo(cargoToTransfer);  // Удаляем груз
-                    transferMsg.setContentObject(cargoToTransfer);
-                    send(transferMsg);
-                    LogHelper.success(truck.getId(), "Передан груз " + cargoToTransfer.getId() +
-                            " -> " + receiver.getLocalName());
-
-                    // Установим таймер для автоматического восстановления груза
-                    addBehaviour(new WakerBehaviour(this, 10000) { // 10 секунд на подтверждение
-                        protected void onWake() {
-                            if (pendingTransfers.containsKey(receiver)) {
-                                Cargo cargoToRestore = pendingTransfers.remove(receiver);
-                                // Проверка совместимости перед восстановлением
-                                if (cargoToRestore != null) {
-                                    if (truck.canAddCargo(cargoToRestore)) {
-                                        truck.addCargo(cargoToRestore);
-                                        LogHelper.warning(truck.getId(), "Груз " + cargoToRestore.getId() +
-                                                " автоматически возвращен - не получено подтверждение");
-                                    } else {
-                                        LogHelper.error(truck.getId(), "Невозможно восстановить груз " + cargoToRestore.getId() +
-                                                " (тип: " + cargoToRestore.getType() + ") - стал несовместим с текущими грузами");
-                                        returnCargoToPool(cargoToRestore);
-                                    }
-                                }
-                                exchangeInProgress = false;
-                                checkLoadingProgress();
-                            }
-                        }
-                    });
-
-                } catch (IOException e) {
-                    // В случае ошибки возвращаем груз обратно
-                    truck.addCargo(cargoToTransfer);
-                    pendingTransfers.remove(receiver); // Убираем из ожидающих
-                    LogHelper.error(truck.getId(), "Не удалось сериализовать груз: " + e.getMessage());
-                    e.printStackTrace();
+        if (newDifference >= currentDifference) {
+            LogHelper.warning(truck.getId(), "Обмен отклонен: не улучшает загрузку (" +
+                    newPercentage + "% vs текущие " + truck.getLoadPercentage() + "%)");
+            exchangeInProgress = false;
+            checkLoadingProgress();
+            return;
+        }
+
+        // Сохраняем грузы до подтверждения получателем
+        pendingTransfers.put(receiver, new ArrayList<>(cargosToTransfer));
+        peerStates.remove(receiver);
+        for (Cargo cargoToTransfer : cargosToTransfer) {
+            truck.removeCargo(cargoToTransfer);  // Удаляем груз
+            ACLMessage transferMsg = new ACLMessage(ACLMessage.INFORM);
+            transferMsg.addReceiver(receiver);
+            transferMsg.setLanguage(PayloadCodec.LANGUAGE);
+            transferMsg.setByteSequenceContent(PayloadCodec.encode(cargoToTransfer));
+            send(transferMsg);
+            LogHelper.success(truck.getId(), "Передан груз " + cargoToTransfer.getId() +
+                    " -> " + receiver.getLocalName());
+        }
+
+        // Установим таймер для автоматического восстановления неподтвержденных грузов
+        addBehaviour(new WakerBehaviour(this, 10000) { // 10 секунд на подтверждение
+            protected void onWake() {
+                List<Cargo> cargosToRestore = pendingTransfers.remove(receiver);
+                if (cargosToRestore != null) {
+                    for (Cargo cargoToRestore : cargosToRestore) {
+                        restoreTransferredCargo(cargoToRestore, "автоматически - не получено подтверждение");
+                    }
                     exchangeInProgress = false;
                     checkLoadingProgress();
                 }
+            }
+        });
+    }
 
-            } else {
-                LogHelper.error(truck.getId(), "Груз " + cargoToTransfer.getId() +
-                        " нельзя безопасно удалить - нарушится совместимость");
-                // Отменяем обмен
-                exchangeInProgress = false;
-                checkLoadingProgress();
+    /**
+     * Подобрать и предложить обмен: получаем состояние второго грузовика, подбираем наборы грузов
+     * и отправляем их на подготовку. Если второй грузовик не прислал состояние, передаем грузы
+     * в одну сторону, как раньше
+     */
+    private void startSwap(AID peer) {
+        if (initiatedSwap != null) {
+            // Новый обмен затер бы текущий, и отмена по таймауту для текущего уже не сработала бы
+            LogHelper.warning(truck.getId(), "Обмен " + initiatedSwap.getSwapId() + " с " +
+                    initiatedSwapPeer.getLocalName() + " еще не завершен, новый с " + peer.getLocalName() +
+                    " не начинаем");
+            return;
+        }
+        Truck peerState = requestSwapState(peer);
+        if (peerState == null) {
+            LogHelper.warning(truck.getId(), "Не получено состояние " + peer.getLocalName() +
+                    ", передаем грузы без встречного обмена");
+            sendCargoToReceiver(peer);
+            return;
+        }
+
+        List<Cargo> candidates = new ArrayList<>();
+        for (Cargo cargo : truck.getLoadedCargos()) {
+            if (canRemoveCargoSafely(cargo) && !wasRecentlyTransferred(cargo.getId())) {
+                candidates.add(cargo);
             }
-        } else {
-            LogHelper.error(truck.getId(), "Не удалось найти подходящий груз для передачи");
+        }
+        CargoSwap swap = SwapPlanner.plan(getLocalName() + "-" + (++swapCounter), truck, candidates,
+                peerState, idealLoadPercentage, TRANSFER_SELECTION_BUDGET_NANOS);
+        if (swap == null) {
+            LogHelper.warning(truck.getId(), "Обмен с " + peer.getLocalName() + " не улучшает загрузку");
             exchangeInProgress = false;
             checkLoadingProgress();
+            return;
+        }
+
+        initiatedSwap = swap;
+        initiatedSwapPeer = peer;
+        ACLMessage prepare = new ACLMessage(ACLMessage.REQUEST);
+        prepare.addReceiver(peer);
+        prepare.setConversationId(SWAP_CONVERSATION);
+        prepare.setLanguage(PayloadCodec.LANGUAGE);
+        prepare.setByteSequenceContent(PayloadCodec.encode(swap));
+        send(prepare);
+        LogHelper.exchange(truck.getId(), "Предложен обмен " + swap.getSwapId() + " с " + peer.getLocalName() +
+                ": отдаем " + swap.getOutgoing().size() + " грузов, получаем " + swap.getIncoming().size() +
+                ", чистый вес " + swap.getNetWeight());
+
+        addBehaviour(new WakerBehaviour(this, SWAP_AGREE_TIMEOUT_MS) {
+            protected void onWake() {
+                // После отправки подтверждения отменять нельзя: второй грузовик мог его уже зафиксировать
+                if (initiatedSwap == swap && !initiatedSwapCommitting) {
+                    LogHelper.warning(truck.getId(), "Нет ответа на обмен " + swap.getSwapId() + ", отменяем");
+                    sendSwapDecision(peer, swap.getSwapId(), false);
+                    endInitiatedSwap();
+                }
+            }
+        });
+    }
+
+    // Состояние второго грузовика для подбора обмена; null, если он не ответил
+    private Truck requestSwapState(AID peer) {
+        ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
+        request.addReceiver(peer);
+        request.setConversationId(SWAP_CONVERSATION);
+        request.setContent("GET_SWAP_STATE");
+        send(request);
+
+        ACLMessage reply = blockingReceive(MessageTemplate.and(
+                MessageTemplate.and(
+                        MessageTemplate.MatchPerformative(ACLMessage.INFORM),
+                        MessageTemplate.MatchSender(peer)),
+                MessageTemplate.MatchConversationId(SWAP_CONVERSATION)), 10000);
+        if (reply == null) {
+            return null;
+        }
+        rememberPeerState(reply);
+        try {
+            return (Truck) readPayload(reply);
+        } catch (IOException | ClassCastException e) {
+            LogHelper.error(truck.getId(), "Не удалось разобрать состояние " + peer.getLocalName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Подготовка обмена вторым грузовиком: обмен сразу применяется и запоминается для отката.
+     * Для нас входящие грузы - исходящие инициатора, и наоборот
+     */
+    private void prepareSwap(ACLMessage msg) {
+        ACLMessage reply = msg.createReply();
+        reply.setConversationId(SWAP_CONVERSATION);
+        CargoSwap swap;
+        try {
+            swap = (CargoSwap) readPayload(msg);
+        } catch (IOException | ClassCastException e) {
+            reply.setPerformative(ACLMessage.REFUSE);
+            reply.setContent("SWAP_REFUSED:неверное содержимое");
+            send(reply);
+            return;
+        }
+
+        String reason = null;
+        if (readyStatusSent) {
+            reason = "уже отправил READY статус";
+        } else if (exchangeInProgress) {
+            reason = "уже участвует в обмене";
+        } else if (!SwapPlanner.canApply(truck, swap.getIncoming(), swap.getOutgoing())) {
+            reason = "грузы изменились, несовместимы или превышена вместимость";
+        }
+        if (reason != null) {
+            reply.setPerformative(ACLMessage.REFUSE);
+            reply.setContent("SWAP_REFUSED:" + swap.getSwapId() + ":" + reason);
+            send(reply);
+            LogHelper.failure(truck.getId(), "Обмен " + swap.getSwapId() + " отклонен: " + reason);
+            return;
         }
+
+        for (Cargo cargo : swap.getIncoming()) {
+            truck.removeCargo(cargo);
+        }
+        for (Cargo cargo : swap.getOutgoing()) {
+            truck.addCargo(cargo);
+        }
+        exchangeInProgress = true;
+        preparedSwaps.put(swap.getSwapId(), swap);
+        reply.setPerformative(ACLMessage.AGREE);
+        reply.setContent("SWAP_AGREE:" + swap.getSwapId());
+        send(reply);
+        LogHelper.exchange(truck.getId(), "Обмен " + swap.getSwapId() + " подготовлен, ждем решения " +
+                msg.getSender().getLocalName());
+
+        addBehaviour(new WakerBehaviour(this, SWAP_DECISION_TIMEOUT_MS) {
+            protected void onWake() {
+                if (preparedSwaps.containsKey(swap.getSwapId())) {
+                    LogHelper.warning(truck.getId(), "Нет решения по обмену " + swap.getSwapId() + ", откатываем");
+                    finishPreparedSwap(swap.getSwapId(), false);
+                }
+            }
+        });
     }
-    // Улучшенная проверка совместимости
-    private boolean checkCompatibility(Cargo cargo, AID receiverAID) {
 
-        LogHelper.debug(truck.getId(), "Проверка совместимости груза " + cargo.getId() +
-                " (тип: " + cargo.getType() + ") с грузовиком " + receiverAID.getLocalName());
-        // Проверяем наличие несовместимых типов для передаваемого груза
-        if (cargo.getIncompatibleTypes().isEmpty()) {
-            LogHelper.debug(truck.getId(), "Груз " + cargo.getId() + " (" + cargo.getType() +
-                    ") не имеет несовместимых типов, должен быть совместим со всеми грузами");
-            return true;
+    /**
+     * Второй грузовик применил обмен: проверяем свою сторону и подтверждаем или отменяем обмен.
+     * Свою сторону применяем только после ответа на подтверждение ({@link #onSwapCommitted}):
+     * второй грузовик мог уже откатить обмен по таймауту
+     */
+    private void onSwapAgreed(ACLMessage msg) {
+        String swapId = msg.getContent().substring("SWAP_AGREE:".length());
+        CargoSwap swap = initiatedSwap;
+        if (swap != null && swap.getSwapId().equals(swapId) && initiatedSwapCommitting) {
+            LogHelper.warning(truck.getId(), "Повторное согласие на обмен " + swapId +
+                    ", ждем ответа на подтверждение");
+            return;
+        }
+        if (swap == null || !swap.getSwapId().equals(swapId)) {
+            // Не текущий обмен (например, отмененный по таймауту): второй грузовик его уже применил,
+            // поэтому явно отменяем, чтобы он откатился сразу, а не по своему таймауту
+            LogHelper.warning(truck.getId(), "Запоздалое согласие на обмен " + swapId + ", отменяем");
+            sendSwapDecision(msg.getSender(), swapId, false);
+            return;
+        }
+
+        if (!SwapPlanner.canApply(truck, swap.getOutgoing(), swap.getIncoming())) {
+            LogHelper.failure(truck.getId(), "Обмен " + swapId + " больше не применим, отменяем");
+            sendSwapDecision(msg.getSender(), swapId, false);
+            endInitiatedSwap();
+            return;
+        }
+        initiatedSwapCommitting = true;
+        sendSwapDecision(msg.getSender(), swapId, true);
+    }
+
+    /**
+     * Второй грузовик зафиксировал обмен: применяем свою сторону
+     */
+    private void onSwapCommitted(ACLMessage msg) {
+        String swapId = msg.getContent().substring("SWAP_COMMITTED:".length());
+        CargoSwap swap = initiatedSwap;
+        if (swap == null || !swap.getSwapId().equals(swapId) || !initiatedSwapCommitting) {
+            LogHelper.error(truck.getId(), "Подтверждение неизвестного обмена " + swapId + " от " +
+                    msg.getSender().getLocalName());
+            return;
+        }
+
+        for (Cargo cargo : swap.getOutgoing()) {
+            truck.removeCargo(cargo);
+            markRecentlyTransferred(cargo.getId());
+            synchronized (globalTransferredCargoIds) {
+                globalTransferredCargoIds.add(cargo.getId());
+            }
+        }
+        // Грузы второго грузовика уже сняты у него: если свой набор изменился, не помещающийся
+        // входящий груз уходит в пул, а не теряется
+        for (Cargo cargo : swap.getIncoming()) {
+            if (truck.canAddCargo(cargo)) {
+                truck.addCargo(cargo);
+            } else {
+                restoreTransferredCargo(cargo, "после обмена " + swapId);
+            }
+        }
+        LogHelper.success(truck.getId(), "Обмен " + swapId + " с " + msg.getSender().getLocalName() +
+                " выполнен. Новая загрузка: " + truck.getLoadPercentage() + "%");
+        peerStates.remove(msg.getSender());
+        endInitiatedSwap();
+    }
+
+    /**
+     * Второй грузовик не нашел обмен (уже откатил его): своя сторона не применялась
+     */
+    private void onSwapCommitFailed(ACLMessage msg) {
+        String swapId = msg.getContent().substring("SWAP_UNKNOWN:".length());
+        CargoSwap swap = initiatedSwap;
+        if (swap == null || !swap.getSwapId().equals(swapId)) {
+            LogHelper.error(truck.getId(), "Отказ по неизвестному обмену " + swapId + " от " +
+                    msg.getSender().getLocalName());
+            return;
+        }
+        LogHelper.failure(truck.getId(), "Обмен " + swapId + " уже откачен " + msg.getSender().getLocalName() +
+                ", грузы остаются на месте");
+        peerStates.remove(msg.getSender());
+        endInitiatedSwap();
+    }
+
+    private void onSwapRefused(ACLMessage msg) {
+        LogHelper.failure(truck.getId(), "Обмен отклонен " + msg.getSender().getLocalName() + ": " + msg.getContent());
+        if (initiatedSwap != null && msg.getSender().equals(initiatedSwapPeer)) {
+            endInitiatedSwap();
+        }
+    }
+
+    private void sendSwapDecision(AID peer, String swapId, boolean commit) {
+        ACLMessage decision = new ACLMessage(commit ? ACLMessage.CONFIRM : ACLMessage.DISCONFIRM);
+        decision.addReceiver(peer);
+        decision.setConversationId(SWAP_CONVERSATION);
+        decision.setContent((commit ? "SWAP_COMMIT:" : "SWAP_ABORT:") + swapId);
+        send(decision);
+    }
+
+    private void endInitiatedSwap() {
+        initiatedSwap = null;
+        initiatedSwapPeer = null;
+        initiatedSwapCommitting = false;
+        exchangeInProgress = false;
+        checkLoadingProgress();
+    }
+
+    /**
+     * Подтверждение инициатора: фиксируем подготовленный обмен и сообщаем об этом (INFORM).
+     * Если обмен уже откачен по таймауту или неизвестен, отвечаем FAILURE, чтобы инициатор
+     * не применял свою сторону
+     */
+    private void commitPreparedSwap(ACLMessage msg) {
+        String swapId = msg.getContent().substring("SWAP_COMMIT:".length());
+        ACLMessage reply = msg.createReply();
+        reply.setConversationId(SWAP_CONVERSATION);
+        if (finishPreparedSwap(swapId, true)) {
+            reply.setPerformative(ACLMessage.INFORM);
+            reply.setContent("SWAP_COMMITTED:" + swapId);
+        } else {
+            LogHelper.error(truck.getId(), "Подтверждение обмена " + swapId + " от " +
+                    msg.getSender().getLocalName() + " пришло, когда обмен уже не подготовлен");
+            reply.setPerformative(ACLMessage.FAILURE);
+            reply.setContent("SWAP_UNKNOWN:" + swapId);
+        }
+        send(reply);
+    }
+
+    /**
+     * Решение инициатора по подготовленному у нас обмену: при отмене принятые грузы снимаются,
+     * а отданные возвращаются (или уходят в пул, если стали несовместимы)
+     * @return был ли обмен подготовлен
+     */
+    private boolean finishPreparedSwap(String swapId, boolean commit) {
+        CargoSwap swap = preparedSwaps.remove(swapId);
+        if (swap == null) {
+            return false;
+        }
+        if (commit) {
+            LogHelper.success(truck.getId(), "Обмен " + swapId + " подтвержден. Новая загрузка: " +
+                    truck.getLoadPercentage() + "%");
+        } else {
+            for (Cargo cargo : swap.getOutgoing()) {
+                truck.removeCargo(cargo);
+            }
+            for (Cargo cargo : swap.getIncoming()) {
+                restoreTransferredCargo(cargo, "после отмены обмена " + swapId);
+            }
+        }
+        exchangeInProgress = false;
+        checkLoadingProgress();
+        return true;
+    }
+
+    private static MessageTemplate notSwapConversation() {
+        return MessageTemplate.not(MessageTemplate.MatchConversationId(SWAP_CONVERSATION));
+    }
+
+    /**
+     * Снять груз из ожидающих подтверждения у получателя
+     * @return груз или null, если он не ожидал подтверждения
+     */
+    private Cargo takePendingTransfer(AID receiver, int cargoId) {
+        List<Cargo> pending = pendingTransfers.get(receiver);
+        if (pending == null) {
+            return null;
+        }
+        Cargo taken = null;
+        for (Iterator<Cargo> it = pending.iterator(); it.hasNext(); ) {
+            Cargo cargo = it.next();
+            if (cargo.getId() == cargoId) {
+                it.remove();
+                taken = cargo;
+                break;
+            }
+        }
+        if (pending.isEmpty()) {
+            pendingTransfers.remove(receiver);
+        }
+        return taken;
+    }
+
+    // Вернуть непринятый груз в грузовик, а если он стал несовместим - в пул
+    private void restoreTransferredCargo(Cargo cargo, String reason) {
+        if (truck.canAddCargo(cargo)) {
+            truck.addCargo(cargo);
+            LogHelper.warning(truck.getId(), "Груз " + cargo.getId() + " возвращен обратно " + reason);
+        } else {
+            LogHelper.failure(truck.getId(), "Невозможно восстановить груз " + cargo.getId() +
+                    " (тип: " + cargo.getType() + ") - стал несовместим с текущими грузами " +
+                    truck.getLoadedCargos());
+            returnCargoToPool(cargo);
+        }
+    }
+
+    // Маска типов грузов получателя; null, если получатель не ответил
+    private BitSet requestReceiverTypes(AID receiverAID) {
+        PeerState known = peerStates.get(receiverAID);
+        if (known != null && System.currentTimeMillis() - known.receivedAt <= PEER_STATE_FRESH_MS) {
+            LogHelper.debug(truck.getId(), "Типы грузов " + receiverAID.getLocalName() +
+                    " известны (версия " + known.version + "), запрос не нужен");
+            return known.types;
         }
 
         // Запрос информации о текущих грузах в грузовике-получателе
         ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
         request.addReceiver(receiverAID);
         request.setContent("GET_CARGO_TYPES");
+        if (known != null) {
+            request.addUserDefinedParameter(KNOWN_VERSION_PARAM, String.valueOf(known.version));
+        }
         send(request);
 
         MessageTemplate mt = MessageTemplate.and(
@@ -1247,97 +1569,151 @@ public class TruckAgent extends Agent {
                 MessageTemplate.MatchSender(receiverAID)
         );
 
-        ACLMessage reply = blockingReceive(mt, 10000); // ждем ответа не более 5 секунд
+        ACLMessage reply = blockingReceive(mt, 10000); // ждем ответа не более 10 секунд
 
+        if (reply != null && known != null && "CARGO_TYPES_UNCHANGED".equals(reply.getContent())) {
+            LogHelper.debug(truck.getId(), "Типы грузов " + receiverAID.getLocalName() + " не изменились");
+            peerStates.put(receiverAID, new PeerState(known.version, known.types));
+            return known.types;
+        }
         if (reply != null && reply.getContent() != null &&
                 reply.getContent().startsWith("CARGO_TYPES:")) {
-
+            rememberPeerState(reply);
             String typesStr = reply.getContent().substring("CARGO_TYPES:".length());
-
             // Если нет типов в грузовике-получателе, значит совместимость обеспечена
             if (typesStr.isEmpty()) {
                 LogHelper.debug(truck.getId(), "Грузовик " + receiverAID.getLocalName() + " пуст, совместимость обеспечена");
-                return true;
+                return new BitSet();
             }
+            // Матрица несовместимости симметрична: отдельный запрос GET_INCOMPATIBILITIES не нужен
+            return CargoTypeRegistry.getInstance().maskOf(Arrays.asList(typesStr.split(",")));
+        }
 
-            String[] types = typesStr.split(",");
-            LogHelper.debug(truck.getId(), "Типы в грузовике " + receiverAID.getLocalName() + ": " + Arrays.toString(types));
-            LogHelper.debug(truck.getId(), "Несовместимые типы для груза " + cargo.getId() + ": " + cargo.getIncompatibleTypes());
-
-            // 1. Проверяем, есть ли в принимающем грузовике типы, которые несовместимы с передаваемым грузом
-            for (String type : types) {
-                if (type.isEmpty()) continue;
+        // Если не получили ответ о типах грузов
+        LogHelper.warning(truck.getId(), "Не получен ответ о типах грузов от " + receiverAID.getLocalName() +
+                ", считаем несовместимым для безопасности");
+        return null;
+    }
 
-                if (cargo.getIncompatibleTypes().contains(type)) {
-                    LogHelper.warning(truck.getId(), "Груз " + cargo.getId() +
-                            " несовместим с типом " + type + " в грузовике " + receiverAID.getLocalName());
-                    return false;
+    /**
+     * Проверка совместимости типов предложившего обмен грузовика с нашими грузами:
+     * продолжаем обмен или отклоняем предложение
+     */
+    private void onProposerTypesKnown(AID sender, BitSet proposerTypes) {
+        BitSet loadedTypes = truck.getLoadedTypeMask();
+        // Набор против набора: эти пары повторяются от предложения к предложению, ответ берется из кеша
+        if (!CompatibilityCache.getInstance().areCompatible(truck.getLoadedTypeSignature(), loadedTypes,
+                CompatibilityCache.signatureOf(proposerTypes), proposerTypes)) {
+            CargoTypeRegistry registry = CargoTypeRegistry.getInstance();
+            for (int typeId = proposerTypes.nextSetBit(0); typeId >= 0; typeId = proposerTypes.nextSetBit(typeId + 1)) {
+                if (!registry.isCompatible(typeId, loadedTypes)) {
+                    LogHelper.failure(truck.getId(), "Тип " + registry.nameOf(typeId) +
+                            " несовместим с грузами типов " + truck.getLoadedCargoTypes());
+                    break;
                 }
             }
+            // Отклоняем из-за несовместимости
+            ACLMessage reject = new ACLMessage(ACLMessage.REJECT_PROPOSAL);
+            reject.addReceiver(sender);
+            reject.setContent("REJECT_REASON:Несовместимые типы грузов");
+            send(reject);
+            LogHelper.failure(truck.getId()," Предложение отклонено из-за несовместимости типов грузов");
+            exchangeInProgress = false;
+            checkLoadingProgress();
+            return;
+        }
+        // Продолжаем обмен
+        continueExchange(sender);
+    }
 
-            // 2. Проверяем, нет ли среди грузов принимающего грузовика таких, у которых есть несовместимость с нашим грузом
-            // Запрашиваем дополнительную информацию о несовместимостях
-            ACLMessage incompRequest = new ACLMessage(ACLMessage.REQUEST);
-            incompRequest.addReceiver(receiverAID);
-            incompRequest.setContent("GET_INCOMPATIBILITIES");
-            send(incompRequest);
-
-            MessageTemplate mtIncomp = MessageTemplate.and(
-                    MessageTemplate.MatchPerformative(ACLMessage.INFORM),
-                    MessageTemplate.MatchSender(receiverAID)
-            );
-
-            ACLMessage incompReply = blockingReceive(mtIncomp, 5000);
-
-            if (incompReply != null && incompReply.getContent() != null) {
-                String content = incompReply.getContent();
-                LogHelper.debug(truck.getId(), "Получена информация о несовместимостях: " + content);
-
-                if (content.startsWith("INCOMPATIBILITIES:")) {
-                    String incompStr = content.substring("INCOMPATIBILITIES:".length());
-
-                    // Если нет несовместимостей, разрешаем обмен
-                    if (incompStr.isEmpty()) {
-                        LogHelper.debug(truck.getId(), "Нет информации о несовместимостях в грузовике " +
-                                receiverAID.getLocalName() + ", считаем груз совместимым");
-                        return true;
-                    }
+    /**
+     * Ответ на запрос типов грузов: короткий, если спрашивающему уже известна наша текущая версия
+     */
+    private String cargoTypesAnswer(ACLMessage request) {
+        String knownVersion = request.getUserDefinedParameter(KNOWN_VERSION_PARAM);
+        if (knownVersion != null && knownVersion.equals(String.valueOf(truck.getStateVersion()))) {
+            return "CARGO_TYPES_UNCHANGED";
+        }
+        refreshStateSummary();
+        return "CARGO_TYPES:" + typesSummary;
+    }
 
-                    String[] incompPairs = incompStr.split(";");
+    /**
+     * Строки с типами и несовместимостями наших грузов пересобираются только при смене версии состояния
+     */
+    private void refreshStateSummary() {
+        if (summaryVersion == truck.getStateVersion()) {
+            return;
+        }
+        typesSummary = String.join(",", truck.getLoadedCargoTypes());
+        StringBuilder incompatibilities = new StringBuilder("INCOMPATIBILITIES:");
+        CargoTypeRegistry registry = CargoTypeRegistry.getInstance();
+        for (String type : truck.getLoadedCargoTypes()) {
+            List<String> incompatibleTypes = registry.incompatibleTypesOf(registry.idOf(type));
+            if (!incompatibleTypes.isEmpty()) {
+                incompatibilities.append(type).append(":").append(String.join(",", incompatibleTypes)).append(";");
+            }
+        }
+        incompatibilitiesSummary = incompatibilities.toString();
+        summaryVersion = truck.getStateVersion();
+    }
 
-                    for (String pair : incompPairs) {
-                        if (pair.isEmpty()) continue;
+    // Версия нашего состояния и типы грузов - в параметрах исходящего сообщения
+    private void stampState(ACLMessage msg) {
+        refreshStateSummary();
+        msg.addUserDefinedParameter(STATE_VERSION_PARAM, String.valueOf(summaryVersion));
+        msg.addUserDefinedParameter(LOADED_TYPES_PARAM, typesSummary);
+    }
 
-                        String[] parts = pair.split(":");
-                        if (parts.length == 2) {
-                            String cargoType = parts[0];
-                            String[] incompTypes = parts[1].split(",");
-
-                            for (String incompType : incompTypes) {
-                                if (incompType.equals(cargo.getType())) {
-                                    LogHelper.warning(truck.getId(), "Тип " + cargo.getType() +
-                                            " несовместим с типом " + cargoType + " в грузовике " + receiverAID.getLocalName());
-                                    return false;
-                                }
-                            }
-                        }
-                    }
-                }
-            } else {
-                LogHelper.debug(truck.getId(), "Не получен ответ о несовместимостях, но типы грузов совместимы");
-                return true;
-            }
+    /**
+     * Запомнить версию и типы грузов отправителя из параметров сообщения
+     * @return запомненное состояние или null, если отправитель их не передал
+     */
+    private PeerState rememberPeerState(ACLMessage msg) {
+        String version = msg.getUserDefinedParameter(STATE_VERSION_PARAM);
+        String types = msg.getUserDefinedParameter(LOADED_TYPES_PARAM);
+        if (version == null || types == null) {
+            return null;
+        }
+        PeerState known = peerStates.get(msg.getSender());
+        long parsedVersion;
+        try {
+            parsedVersion = Long.parseLong(version);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (known != null && known.version == parsedVersion) {
+            known = new PeerState(known.version, known.types);
+        } else {
+            BitSet typeMask = types.isEmpty() ? new BitSet()
+                    : CargoTypeRegistry.getInstance().maskOf(Arrays.asList(types.split(",")));
+            known = new PeerState(parsedVersion, typeMask);
+        }
+        peerStates.put(msg.getSender(), known);
+        return known;
+    }
 
-            LogHelper.debug(truck.getId(), "Груз " + cargo.getId() + " (" + cargo.getType() +
-                    ") совместим с грузами в грузовике " + receiverAID.getLocalName());
-            return true;
+    /**
+     * Последнее известное состояние другого грузовика
+     */
+    private static final class PeerState {
+        final long version;
+        final BitSet types;
+        final long receivedAt = System.currentTimeMillis();
+
+        PeerState(long version, BitSet types) {
+            this.version = version;
+            this.types = types;
         }
+    }
 
-        // Если не получили ответ о типах грузов
-        LogHelper.warning(truck.getId(), "Не получен ответ о типах грузов от " + receiverAID.getLocalName() +
-                ", считаем несовместимым для безопасности");
-        return false;
+    /**
+     * Разобрать двоичное содержимое сообщения (груз, список грузов или грузовик)
+     */
+    private Object readPayload(ACLMessage msg) throws IOException {
+        return PayloadCodec.decode(msg.getByteSequenceContent());
     }
+
     private String serializeTruckToString() {
         StringBuilder sb = new StringBuilder();
         sb.append("TRUCK_DATA_START\n");
@@ -1345,10 +1721,8 @@ public class TruckAgent extends Agent {
         sb.append("CAPACITY:").append(truck.getCapacity()).append("\n");
         sb.append("CURRENT_LOAD:").append(truck.getCurrentLoad()).append("\n");
         sb.append("LOAD_PERCENTAGE:").append(truck.getLoadPercentage()).append("\n");
-        sb.append("PROCESSED_CARGO_IDS:").append(String.join(",",
-                processedCargoIds.stream().map(String::valueOf).collect(Collectors.toList()))).append("\n");
-        sb.append("IMPOSSIBLE_CARGO_IDS:").append(String.join(",",
-                impossibleCargoIds.stream().map(String::valueOf).collect(Collectors.toList()))).append("\n");
+        sb.append("PROCESSED_CARGO_IDS:").append(processedCargoIds.join(",")).append("\n");
+        sb.append("IMPOSSIBLE_CARGO_IDS:").append(impossibleCargoIds.join(",")).append("\n");
 
         // List of loaded cargo types
         sb.append("CARGO_TYPES:");
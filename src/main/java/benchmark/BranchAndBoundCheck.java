@@ -0,0 +1,145 @@
+package benchmark;
+
+import model.Cargo;
+import model.CargoTypeRegistry;
+import model.Truck;
+import solver.BranchAndBoundSolver;
+import solver.LoadingPlan;
+import solver.LoadingProblem;
+
+import java.util.*;
+
+/**
+ * Сверка {@link BranchAndBoundSolver} с полным перебором на малых случайных задачах
+ * (2-4 грузовика, 4-8 грузов, несколько несовместимых типов). Перебор пробует для каждого
+ * груза все грузовики и "не распределен" через {@link Truck#loadCargo} и выбирает лучший план
+ * лексикографически: сначала вес нераспределенных грузов, затем сумма отклонений от идеальной.
+ * Часть задач - с одинаковыми грузовиками и одинаковыми грузами, чтобы проверить отсечение
+ * симметрии. План решателя должен совпасть с перебором по обоим значениям и быть доказанно
+ * оптимальным; иначе задача печатается и проверка завершается исключением.
+ *
+ * Запуск: java -cp truck-loading-server.jar benchmark.BranchAndBoundCheck [количество задач] [зерно]
+ */
+public class BranchAndBoundCheck {
+    private static final double EPSILON = 1e-6;
+    private static final int TYPES = 4;
+    private static final double CONFLICT_PROBABILITY = 0.3;
+    private static final long TIME_LIMIT_MILLIS = 5000;
+
+    public static void main(String[] args) {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        Random random = new Random(seed);
+
+        int mismatches = 0;
+        long solverNanos = 0;
+        for (int instance = 0; instance < instances; instance++) {
+            LoadingProblem problem = randomProblem(random, "bnb-check" + seed + "-" + instance);
+            Brute brute = new Brute(problem);
+            brute.search(0);
+
+            long start = System.nanoTime();
+            LoadingPlan plan = new BranchAndBoundSolver(TIME_LIMIT_MILLIS).solve(problem);
+            solverNanos += System.nanoTime() - start;
+            plan.toTrucks(); // бросает исключение, если план нарушает вместимость или совместимость
+
+            boolean sameValue = Math.abs(plan.getUnassignedWeight() - brute.bestUnassigned) <= EPSILON
+                    && Math.abs(plan.getDeviation() - brute.bestDeviation) <= EPSILON;
+            // Нулевое отклонение при нераспределенных грузах решатель не считает доказанным
+            boolean provable = brute.bestUnassigned <= EPSILON || brute.bestDeviation > EPSILON;
+            if (!sameValue || (provable && !plan.isProvenOptimal())) {
+                mismatches++;
+                System.out.println("Задача " + instance + ": " + plan + ", нераспределено " +
+                        plan.getUnassignedWeight() + " кг, отклонение " + plan.getDeviation() +
+                        "; перебор: нераспределено " + brute.bestUnassigned + " кг, отклонение " +
+                        brute.bestDeviation);
+            }
+        }
+
+        System.out.printf(Locale.ROOT, "Задач: %d, расхождений: %d, среднее время решателя: %.3f мс%n",
+                instances, mismatches, solverNanos / 1e6 / Math.max(1, instances));
+        if (mismatches > 0) {
+            throw new IllegalStateException("Решатель расходится с перебором в " + mismatches + " задачах");
+        }
+    }
+
+    private static LoadingProblem randomProblem(Random random, String prefix) {
+        CargoTypeRegistry registry = CargoTypeRegistry.getInstance();
+        String[] types = new String[TYPES];
+        for (int i = 0; i < TYPES; i++) {
+            types[i] = prefix + "-type" + i;
+            List<String> incompatible = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                if (random.nextDouble() < CONFLICT_PROBABILITY) {
+                    incompatible.add(types[j]);
+                }
+            }
+            registry.register(types[i], incompatible);
+        }
+
+        int truckCount = 2 + random.nextInt(3);
+        boolean equalTrucks = random.nextInt(4) == 0;
+        float sharedCapacity = 500 * (1 + random.nextInt(4));
+        List<Truck> trucks = new ArrayList<>(truckCount);
+        for (int i = 0; i < truckCount; i++) {
+            trucks.add(new Truck(i + 1, equalTrucks ? sharedCapacity : 500 * (1 + random.nextInt(4))));
+        }
+
+        int cargoCount = 4 + random.nextInt(5);
+        List<Cargo> cargos = new ArrayList<>(cargoCount);
+        for (int i = 0; i < cargoCount; i++) {
+            if (i > 0 && random.nextInt(4) == 0) {
+                Cargo previous = cargos.get(i - 1);
+                cargos.add(new Cargo(i + 1, previous.getTypeId(), previous.getWeight()));
+            } else {
+                int typeId = registry.idOf(types[random.nextInt(TYPES)]);
+                cargos.add(new Cargo(i + 1, typeId, 20 + random.nextInt(780)));
+            }
+        }
+        return new LoadingProblem(trucks, cargos, 30 + random.nextInt(61));
+    }
+
+    /**
+     * Полный перебор: (грузовиков + 1) ^ грузов вариантов
+     */
+    private static final class Brute {
+        private final LoadingProblem problem;
+        private final List<Truck> trucks = new ArrayList<>();
+        private double unassigned;
+        private double bestUnassigned = Double.POSITIVE_INFINITY;
+        private double bestDeviation = Double.POSITIVE_INFINITY;
+
+        Brute(LoadingProblem problem) {
+            this.problem = problem;
+            for (Truck template : problem.getTrucks()) {
+                trucks.add(new Truck(template.getId(), template.getCapacity()));
+            }
+        }
+
+        void search(int index) {
+            if (index == problem.getCargoCount()) {
+                double deviation = 0;
+                for (Truck truck : trucks) {
+                    deviation += Math.abs((double) truck.getCurrentLoad() / truck.getCapacity() * 100
+                            - problem.getIdealLoadPercentage());
+                }
+                if (unassigned < bestUnassigned - EPSILON
+                        || (unassigned <= bestUnassigned + EPSILON && deviation < bestDeviation - EPSILON)) {
+                    bestUnassigned = unassigned;
+                    bestDeviation = deviation;
+                }
+                return;
+            }
+            Cargo cargo = problem.getCargos().get(index);
+            unassigned += cargo.getWeight();
+            search(index + 1);
+            unassigned -= cargo.getWeight();
+            for (Truck truck : trucks) {
+                if (truck.loadCargo(cargo)) {
+                    search(index + 1);
+                    truck.removeCargo(cargo);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package benchmark;
+
+import model.Cargo;
+import model.CargoPool;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Нагрузочный тест пула грузов: N потоков одновременно пытаются зарезервировать и взять
+ * все грузы пула. Сравнивается CAS-реализация {@link CargoPool} с прежней версией на synchronized.
+ *
+ * Запуск: java -cp truck-loading-server.jar benchmark.CargoPoolContentionBenchmark [количество грузов]
+ */
+public class CargoPoolContentionBenchmark {
+    private static final int[] CLAIMER_COUNTS = {8, 64, 512};
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 5;
+
+    /**
+     * Общий интерфейс для сравниваемых реализаций
+     */
+    private interface Claimable {
+        void reset(List<Cargo> cargos);
+        boolean reserve(int cargoId);
+        Cargo take(int cargoId);
+        void cancel(int cargoId);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int cargoCount = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        List<Cargo> cargos = new ArrayList<>(cargoCount);
+        for (int i = 0; i < cargoCount; i++) {
+            cargos.add(new Cargo(i, "type" + (i % 16), 50 + (i % 500), Collections.<String>emptyList()));
+        }
+
+        CargoPool pool = CargoPool.getInstance();
+        pool.setLoggingEnabled(false);
+        Claimable casPool = new Claimable() {
+            public void reset(List<Cargo> c) { pool.initializePool(c); }
+            public boolean reserve(int id) { return pool.reserveCargo(id); }
+            public Cargo take(int id) { return pool.takeCargo(id); }
+            public void cancel(int id) { pool.cancelReservation(id); }
+        };
+        Claimable lockedPool = new SynchronizedPool();
+
+        System.out.println("Грузов в пуле: " + cargoCount);
+        System.out.printf("%-10s %-14s %14s %14s %12s%n", "claimers", "pool", "ms/round", "attempts/s", "collisions");
+        for (int claimers : CLAIMER_COUNTS) {
+            runScenario("synchronized", lockedPool, cargos, claimers);
+            runScenario("cas", casPool, cargos, claimers);
+        }
+    }
+
+    private static void runScenario(String name, Claimable pool, List<Cargo> cargos, int claimers)
+            throws InterruptedException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runRound(pool, cargos, claimers);
+        }
+        long totalNanos = 0;
+        long totalAttempts = 0;
+        long totalCollisions = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long[] result = runRound(pool, cargos, claimers);
+            totalNanos += result[0];
+            totalAttempts += result[1];
+            totalCollisions += result[2];
+        }
+        double msPerRound = totalNanos / 1e6 / MEASURED_ROUNDS;
+        double attemptsPerSecond = totalAttempts / (totalNanos / 1e9);
+        System.out.printf("%-10d %-14s %14.2f %14.0f %12d%n", claimers, name, msPerRound, attemptsPerSecond,
+                totalCollisions / MEASURED_ROUNDS);
+    }
+
+    /**
+     * Один раунд: все потоки стартуют одновременно и проходят весь пул, начиная со случайной позиции.
+     * @return {время в наносекундах, число попыток, число неудачных резервирований}
+     */
+    private static long[] runRound(Claimable pool, List<Cargo> cargos, int claimers) throws InterruptedException {
+        pool.reset(cargos);
+        int cargoCount = cargos.size();
+        AtomicIntegerArray claimedBy = new AtomicIntegerArray(cargoCount);
+        AtomicLong attempts = new AtomicLong();
+        AtomicLong collisions = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(claimers);
+
+        for (int t = 0; t < claimers; t++) {
+            Thread thread = new Thread(() -> {
+                int offset = ThreadLocalRandom.current().nextInt(cargoCount);
+                long localAttempts = 0;
+                long localCollisions = 0;
+                try {
+                    start.await();
+                    for (int i = 0; i < cargoCount; i++) {
+                        int id = (offset + i) % cargoCount;
+                        localAttempts++;
+                        if (pool.reserve(id)) {
+                            if (pool.take(id) != null) {
+                                claimedBy.incrementAndGet(id);
+                            } else {
+                                pool.cancel(id);
+                            }
+                        } else {
+                            localCollisions++;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    attempts.addAndGet(localAttempts);
+                    collisions.addAndGet(localCollisions);
+                    done.countDown();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+
+        for (int id = 0; id < cargoCount; id++) {
+            if (claimedBy.get(id) != 1) {
+                throw new IllegalStateException("Груз " + id + " взят " + claimedBy.get(id) + " раз");
+            }
+        }
+        return new long[]{elapsed, attempts.get(), collisions.get()};
+    }
+
+    /**
+     * Прежняя реализация пула: три конкурентных коллекции и synchronized-методы
+     */
+    private static final class SynchronizedPool implements Claimable {
+        private final Map<Integer, Cargo> availableCargos = new ConcurrentHashMap<>();
+        private final Set<Integer> reservedCargos = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        private final Set<Integer> takenCargos = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+        public void reset(List<Cargo> cargos) {
+            availableCargos.clear();
+            reservedCargos.clear();
+            takenCargos.clear();
+            for (Cargo cargo : cargos) {
+                availableCargos.put(cargo.getId(), cargo);
+            }
+        }
+
+        public synchronized boolean reserve(int cargoId) {
+            if (availableCargos.containsKey(cargoId) &&
+                    !reservedCargos.contains(cargoId) &&
+                    !takenCargos.contains(cargoId)) {
+                reservedCargos.add(cargoId);
+                return true;
+            }
+            return false;
+        }
+
+        public synchronized Cargo take(int cargoId) {
+            if (reservedCargos.remove(cargoId)) {
+                takenCargos.add(cargoId);
+                return availableCargos.get(cargoId);
+            }
+            return null;
+        }
+
+        public synchronized void cancel(int cargoId) {
+            reservedCargos.remove(cargoId);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package benchmark;
+
+import model.Cargo;
+import model.CargoPool;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Сравнение объема памяти, который занимает пул грузов: колоночное хранилище {@link CargoPool}
+ * против прежней раскладки (объект Cargo на груз в ConcurrentHashMap плюс два множества ID).
+ * Грузы создаются так же, как при разборе конфигурации: собственная строка типа
+ * и собственный список несовместимых типов у каждого груза.
+ *
+ * Запуск: java -Xmx4g -cp truck-loading-server.jar benchmark.CargoPoolFootprintBenchmark [количество грузов]
+ */
+public class CargoPoolFootprintBenchmark {
+    private static final int TYPE_COUNT = 32;
+
+    public static void main(String[] args) {
+        int cargoCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.println("Грузов в пуле: " + cargoCount);
+        System.out.printf("%-14s %16s %14s%n", "layout", "retained, MB", "bytes/cargo");
+
+        long before = usedMemory();
+        LegacyPool legacy = new LegacyPool(generateCargos(cargoCount));
+        long legacyBytes = usedMemory() - before;
+        print("legacy", legacyBytes, cargoCount);
+        legacy.touch();
+        legacy = null;
+
+        before = usedMemory();
+        CargoPool pool = CargoPool.getInstance();
+        pool.setLoggingEnabled(false);
+        pool.initializePool(generateCargos(cargoCount));
+        long columnarBytes = usedMemory() - before;
+        print("columnar", columnarBytes, cargoCount);
+
+        if (pool.getAvailableCargoCount() != cargoCount) {
+            throw new IllegalStateException("В пуле " + pool.getAvailableCargoCount() + " грузов вместо " + cargoCount);
+        }
+        System.out.printf("Экономия: %.1fx%n", (double) legacyBytes / Math.max(columnarBytes, 1));
+    }
+
+    private static List<Cargo> generateCargos(int cargoCount) {
+        Random random = new Random(42);
+        List<Cargo> cargos = new ArrayList<>(cargoCount);
+        for (int i = 0; i < cargoCount; i++) {
+            int type = i % TYPE_COUNT;
+            List<String> incompatibleTypes = new ArrayList<>();
+            if (type % 4 == 0) {
+                incompatibleTypes.add(new String("type" + (type + 1)));
+            }
+            cargos.add(new Cargo(i, new String("type" + type), 50 + random.nextInt(500), incompatibleTypes));
+        }
+        return cargos;
+    }
+
+    private static void print(String layout, long bytes, int cargoCount) {
+        System.out.printf("%-14s %16.1f %14.1f%n", layout, bytes / 1024.0 / 1024.0, (double) bytes / cargoCount);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Прежняя раскладка пула: объекты грузов в хеш-таблице и два множества упакованных ID
+     */
+    private static final class LegacyPool {
+        private final Map<Integer, Cargo> availableCargos = new ConcurrentHashMap<>();
+        private final Set<Integer> reservedCargos = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        private final Set<Integer> takenCargos = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+        LegacyPool(List<Cargo> cargos) {
+            for (Cargo cargo : cargos) {
+                availableCargos.put(cargo.getId(), cargo);
+            }
+        }
+
+        /**
+         * Держит пул достижимым до окончания замера
+         */
+        void touch() {
+            if (availableCargos.size() + reservedCargos.size() + takenCargos.size() < 0) {
+                throw new IllegalStateException();
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package benchmark;
+
+import model.Cargo;
+import model.CargoPool;
+import model.CargoPoolJournal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Стоимость журнала пула грузов: время одного перехода состояния с журналом и без него.
+ * Каждый поток резервирует и забирает свою полосу грузов, затем возвращает их в пул,
+ * то есть на груз приходится три перехода. Небольшой размер файла журнала заставляет
+ * его уплотняться во время замера. После замера журнал читается заново и проверяется,
+ * что восстановленное состояние совпадает с пулом.
+ *
+ * Запуск: java -cp truck-loading-server.jar benchmark.CargoPoolJournalBenchmark [количество грузов]
+ */
+public class CargoPoolJournalBenchmark {
+    private static final int[] THREAD_COUNTS = {1, 8, 64};
+    private static final int SEGMENT_BYTES = 4 << 20;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int TRANSITIONS_PER_CARGO = 3;
+
+    public static void main(String[] args) throws Exception {
+        int cargoCount = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        List<Cargo> cargos = new ArrayList<>(cargoCount);
+        for (int i = 0; i < cargoCount; i++) {
+            cargos.add(new Cargo(i, "type" + (i % 16), 50 + (i % 500), Collections.<String>emptyList()));
+        }
+        CargoPool pool = CargoPool.getInstance();
+        pool.setLoggingEnabled(false);
+        Path directory = Files.createTempDirectory("cargo-journal");
+        Path journalPath = directory.resolve("bench.journal");
+
+        System.out.println("Грузов в пуле: " + cargoCount + ", файл журнала: " + (SEGMENT_BYTES >> 20) + " МБ");
+        System.out.printf("%-9s %16s %16s %12s%n", "threads", "no journal, ns", "journal, ns", "overhead");
+        try {
+            for (int threads : THREAD_COUNTS) {
+                double plain = measure(pool, cargos, threads, null);
+                double journaled = measure(pool, cargos, threads, journalPath);
+                System.out.printf("%-9d %16.1f %16.1f %11.1f%%%n", threads, plain, journaled,
+                        (journaled - plain) / plain * 100);
+            }
+            verifyRecovery(pool, cargos, journalPath);
+        } finally {
+            CargoPoolJournal.delete(journalPath);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * @return среднее время одного перехода в наносекундах
+     */
+    private static double measure(CargoPool pool, List<Cargo> cargos, int threads, Path journalPath)
+            throws Exception {
+        long totalNanos = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            pool.initializePool(cargos);
+            if (journalPath != null) {
+                pool.attachJournal(CargoPoolJournal.open(journalPath, SEGMENT_BYTES));
+            }
+            long elapsed = runRound(pool, cargos, threads);
+            pool.detachJournal(true);
+            if (round >= WARMUP_ROUNDS) {
+                totalNanos += elapsed;
+            }
+        }
+        return (double) totalNanos / MEASURED_ROUNDS / ((long) cargos.size() * TRANSITIONS_PER_CARGO);
+    }
+
+    private static long runRound(CargoPool pool, List<Cargo> cargos, int threads) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        int stripe = (cargos.size() + threads - 1) / threads;
+        for (int t = 0; t < threads; t++) {
+            int from = t * stripe;
+            int to = Math.min(cargos.size(), from + stripe);
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    String owner = "truck-" + from;
+                    for (int i = from; i < to; i++) {
+                        int id = cargos.get(i).getId();
+                        if (!pool.reserveCargo(id, owner, CargoPool.DEFAULT_LEASE_MS) || pool.takeCargo(id, owner) == null) {
+                            throw new IllegalStateException("Груз " + id + " не удалось взять");
+                        }
+                        pool.returnCargo(cargos.get(i));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - begin;
+    }
+
+    /**
+     * Забрать половину грузов, "упасть" без закрытия журнала и проверить, что журнал помнит, что и кем взято
+     */
+    private static void verifyRecovery(CargoPool pool, List<Cargo> cargos, Path journalPath) throws IOException {
+        pool.initializePool(cargos);
+        CargoPoolJournal journal = CargoPoolJournal.open(journalPath, SEGMENT_BYTES);
+        pool.attachJournal(journal);
+        for (int i = 0; i < cargos.size(); i += 2) {
+            int id = cargos.get(i).getId();
+            String owner = "truck-" + (i % 7);
+            pool.reserveCargo(id, owner, CargoPool.DEFAULT_LEASE_MS);
+            pool.takeCargo(id, owner);
+        }
+        CargoPoolJournal.Recovery recovery = CargoPoolJournal.recover(journalPath);
+        for (int i = 0; i < cargos.size(); i++) {
+            int id = cargos.get(i).getId();
+            boolean taken = i % 2 == 0;
+            if ((recovery.getState(id) == CargoPool.TAKEN) != taken ||
+                    (taken && !("truck-" + (i % 7)).equals(recovery.getOwner(id)))) {
+                throw new IllegalStateException("Журнал восстановил груз " + id + " неверно");
+            }
+        }
+        pool.detachJournal(true);
+        System.out.println("Восстановление из журнала проверено: " + (cargos.size() + 1) / 2 + " взятых грузов");
+    }
+}
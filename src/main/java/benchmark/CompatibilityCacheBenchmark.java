@@ -0,0 +1,128 @@
+package benchmark;
+
+import model.CargoTypeRegistry;
+import model.CompatibilityCache;
+
+import java.util.*;
+
+/**
+ * Проверка совместимости прямо по матрице против {@link CompatibilityCache} в двух видах:
+ * тип груза против набора загруженных типов и набор против набора (предложение обмена).
+ * Наборы типов берутся из небольшого числа "типичных" конфигураций грузовиков, как при обмене
+ * между грузовиками одной задачи. Перед замером ответы кеша сверяются с прямой проверкой.
+ *
+ * Запуск: java -cp truck-loading-server.jar benchmark.CompatibilityCacheBenchmark [количество типов]
+ */
+public class CompatibilityCacheBenchmark {
+    private static final int CONFIGURATIONS = 64;
+    private static final int QUERIES = 1 << 16;
+    private static final long TARGET_NANOS = 300_000_000L;
+
+    public static void main(String[] args) {
+        int typeCount = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        CargoTypeRegistry registry = CargoTypeRegistry.getInstance();
+        Random random = new Random(11);
+        int[] typeIds = new int[typeCount];
+        for (int i = 0; i < typeCount; i++) {
+            typeIds[i] = registry.intern("bench-type" + i);
+        }
+        for (int i = 0; i < typeCount * 2; i++) {
+            registry.declareIncompatible(typeIds[random.nextInt(typeCount)], typeIds[random.nextInt(typeCount)]);
+        }
+
+        BitSet[] masks = new BitSet[CONFIGURATIONS];
+        long[] signatures = new long[CONFIGURATIONS];
+        for (int i = 0; i < CONFIGURATIONS; i++) {
+            masks[i] = new BitSet();
+            for (int j = 0; j < 8; j++) {
+                masks[i].set(typeIds[random.nextInt(typeCount)]);
+            }
+            signatures[i] = CompatibilityCache.signatureOf(masks[i]);
+        }
+        int[] queryMasks = new int[QUERIES];
+        int[] queryTypes = new int[QUERIES];
+        int[] queryOthers = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queryMasks[i] = random.nextInt(CONFIGURATIONS);
+            queryTypes[i] = typeIds[random.nextInt(typeCount)];
+            queryOthers[i] = random.nextInt(CONFIGURATIONS);
+        }
+
+        CompatibilityCache cache = CompatibilityCache.getInstance();
+        for (int i = 0; i < QUERIES; i++) {
+            BitSet mask = masks[queryMasks[i]];
+            if (cache.isCompatible(queryTypes[i], signatures[queryMasks[i]], mask) !=
+                    registry.isCompatible(queryTypes[i], mask)) {
+                throw new IllegalStateException("Кеш расходится с матрицей для типа " + queryTypes[i]);
+            }
+            int other = queryOthers[i];
+            if (cache.areCompatible(signatures[queryMasks[i]], mask, signatures[other], masks[other]) !=
+                    registry.areCompatible(mask, masks[other])) {
+                throw new IllegalStateException("Кеш расходится с матрицей для пары наборов");
+            }
+        }
+
+        System.out.println("Типов: " + typeCount + ", конфигураций: " + CONFIGURATIONS);
+        System.out.printf("%-12s %12s%n", "impl", "ns/query");
+        System.out.printf("%-12s %12.2f%n", "type direct", measure(() -> {
+            int compatible = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                if (registry.isCompatible(queryTypes[i], masks[queryMasks[i]])) compatible++;
+            }
+            return compatible;
+        }));
+        System.out.printf("%-12s %12.2f%n", "type cached", measure(() -> {
+            int compatible = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                int m = queryMasks[i];
+                if (cache.isCompatible(queryTypes[i], signatures[m], masks[m])) compatible++;
+            }
+            return compatible;
+        }));
+        System.out.printf("%-12s %12.2f%n", "set direct", measure(() -> {
+            int compatible = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                if (registry.areCompatible(masks[queryMasks[i]], masks[queryOthers[i]])) compatible++;
+            }
+            return compatible;
+        }));
+        System.out.printf("%-12s %12.2f%n", "set cached", measure(() -> {
+            int compatible = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                int m = queryMasks[i];
+                int o = queryOthers[i];
+                if (cache.areCompatible(signatures[m], masks[m], signatures[o], masks[o])) compatible++;
+            }
+            return compatible;
+        }));
+        System.out.println(cache);
+    }
+
+    private interface Pass {
+        int run();
+    }
+
+    /**
+     * @return среднее время одного запроса в наносекундах после прогрева
+     */
+    private static double measure(Pass pass) {
+        long checksum = 0;
+        long begin = System.nanoTime();
+        while (System.nanoTime() - begin < TARGET_NANOS) {
+            checksum += pass.run();
+        }
+        long passes = 0;
+        begin = System.nanoTime();
+        long elapsed;
+        do {
+            checksum += pass.run();
+            passes++;
+            elapsed = System.nanoTime() - begin;
+        } while (elapsed < TARGET_NANOS);
+        // Результат проходов используется, чтобы JIT не выбросил их
+        if (checksum < 0) {
+            throw new IllegalStateException("Отрицательная контрольная сумма");
+        }
+        return (double) elapsed / passes / QUERIES;
+    }
+}
@@ -0,0 +1,182 @@
+package benchmark;
+
+import util.IntHashSet;
+import util.IntIntHashMap;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Нагрузка на GC от учета ID грузов в агентах: упакованные HashSet/HashMap против {@link IntHashSet}
+ * и {@link IntIntHashMap}. Один проход повторяет processCargos грузовика: множество обработанных ID
+ * очищается и заполняется заново, каждый ID сначала проверяется, каждый десятый попадает
+ * в множество невозможных, а позиции загруженных грузов пишутся в отображение ID -> позиция.
+ * Перед замером реализации сверяются между собой на случайных операциях.
+ *
+ * Запуск: java -cp truck-loading-server.jar benchmark.IntCollectionsAllocationBenchmark [количество грузов]
+ */
+public class IntCollectionsAllocationBenchmark {
+    private static final int WARMUP_PASSES = 20;
+    private static final int MEASURED_PASSES = 100;
+
+    private interface Pass {
+        long run(int[] cargoIds);
+    }
+
+    public static void main(String[] args) {
+        int cargoCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        verify();
+
+        // ID грузов из конфигурации идут подряд, но начинаются далеко за кешем Integer
+        int[] cargoIds = new int[cargoCount];
+        for (int i = 0; i < cargoCount; i++) {
+            cargoIds[i] = 1000 + i;
+        }
+
+        System.out.println("Грузов: " + cargoCount + ", проходов: " + MEASURED_PASSES);
+        System.out.printf("%-10s %16s %12s %12s %12s%n", "impl", "alloc/pass, KB", "ns/cargo", "GC count", "GC ms");
+        measure("boxed", cargoIds, new BoxedPass());
+        measure("primitive", cargoIds, new PrimitivePass());
+    }
+
+    private static void measure(String name, int[] cargoIds, Pass pass) {
+        long checksum = 0;
+        for (int i = 0; i < WARMUP_PASSES; i++) {
+            checksum += pass.run(cargoIds);
+        }
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+        long allocatedBefore = allocatedBytes();
+        long begin = System.nanoTime();
+        for (int i = 0; i < MEASURED_PASSES; i++) {
+            checksum += pass.run(cargoIds);
+        }
+        long elapsed = System.nanoTime() - begin;
+        long allocated = allocatedBytes() - allocatedBefore;
+        System.out.printf("%-10s %16.1f %12.1f %12d %12d%n", name,
+                allocated / 1024.0 / MEASURED_PASSES,
+                (double) elapsed / MEASURED_PASSES / cargoIds.length,
+                gcCount() - gcCountBefore, gcTime() - gcTimeBefore);
+        // Результат проходов используется, чтобы JIT не выбросил их
+        if (checksum < 0) {
+            throw new IllegalStateException("Отрицательная контрольная сумма");
+        }
+    }
+
+    /**
+     * Множества и отображение живут между проходами, как поля агента
+     */
+    private static final class BoxedPass implements Pass {
+        private final Set<Integer> processed = new HashSet<>();
+        private final Set<Integer> impossible = new HashSet<>();
+        private final Map<Integer, Integer> positions = new HashMap<>();
+
+        @Override
+        public long run(int[] cargoIds) {
+            processed.clear();
+            impossible.clear();
+            positions.clear();
+            for (int i = 0; i < cargoIds.length; i++) {
+                int id = cargoIds[i];
+                if (processed.contains(id)) continue;
+                if (i % 10 == 0) {
+                    impossible.add(id);
+                } else {
+                    positions.put(id, positions.size());
+                }
+                processed.add(id);
+            }
+            return processed.size() + impossible.size() + positions.size();
+        }
+    }
+
+    private static final class PrimitivePass implements Pass {
+        private final IntHashSet processed = new IntHashSet();
+        private final IntHashSet impossible = new IntHashSet();
+        private final IntIntHashMap positions = new IntIntHashMap(-1);
+
+        @Override
+        public long run(int[] cargoIds) {
+            processed.clear();
+            impossible.clear();
+            positions.clear();
+            for (int i = 0; i < cargoIds.length; i++) {
+                int id = cargoIds[i];
+                if (processed.contains(id)) continue;
+                if (i % 10 == 0) {
+                    impossible.add(id);
+                } else {
+                    positions.put(id, positions.size());
+                }
+                processed.add(id);
+            }
+            return processed.size() + impossible.size() + positions.size();
+        }
+    }
+
+    /**
+     * Случайные добавления и удаления (включая 0 и отрицательные ID) должны давать тот же результат,
+     * что и стандартные коллекции
+     */
+    private static void verify() {
+        Random random = new Random(7);
+        Set<Integer> expectedSet = new HashSet<>();
+        Map<Integer, Integer> expectedMap = new HashMap<>();
+        IntHashSet set = new IntHashSet(4);
+        IntIntHashMap map = new IntIntHashMap(4, Integer.MIN_VALUE);
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(2000) - 100;
+            int value = random.nextInt();
+            if (random.nextInt(3) == 0) {
+                check(expectedSet.remove(key) == set.remove(key), "remove", key);
+                Integer removed = expectedMap.remove(key);
+                check((removed != null ? removed : Integer.MIN_VALUE) == map.remove(key), "map remove", key);
+            } else {
+                check(expectedSet.add(key) == set.add(key), "add", key);
+                Integer previous = expectedMap.put(key, value);
+                check((previous != null ? previous : Integer.MIN_VALUE) == map.put(key, value), "map put", key);
+            }
+            int probe = random.nextInt(2000) - 100;
+            check(expectedSet.contains(probe) == set.contains(probe), "contains", probe);
+            Integer expectedValue = expectedMap.get(probe);
+            check((expectedValue != null ? expectedValue : Integer.MIN_VALUE) == map.get(probe), "get", probe);
+        }
+        check(expectedSet.size() == set.size() && expectedMap.size() == map.size(), "size", -1);
+        int[] values = set.toArray();
+        check(values.length == expectedSet.size(), "toArray", -1);
+        for (int value : values) {
+            check(expectedSet.contains(value), "toArray", value);
+        }
+    }
+
+    private static void check(boolean condition, String operation, int key) {
+        if (!condition) {
+            throw new IllegalStateException("Расхождение с java.util в операции " + operation + " для " + key);
+        }
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+}
@@ -0,0 +1,159 @@
+package benchmark;
+
+import model.Cargo;
+import model.PayloadCodec;
+import model.Truck;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Размер и скорость кодирования содержимого ACL-сообщений: сериализация Java
+ * (как в setContentObject) против {@link PayloadCodec} со сжатием и без.
+ * Кодируются списки грузов разной длины (ответ на REQUEST_CARGO) и одиночный груз (передача груза).
+ * Перед замером проверяется, что разобранные грузы совпадают с исходными.
+ *
+ * Запуск: java -cp truck-loading-server.jar benchmark.PayloadCodecBenchmark
+ */
+public class PayloadCodecBenchmark {
+    private static final int[] LIST_SIZES = {1, 10, 1000, 10000};
+    private static final int TYPE_COUNT = 16;
+    private static final long TARGET_NANOS = 300_000_000L;
+
+    private interface Codec {
+        byte[] encode(List<Cargo> cargos) throws IOException;
+
+        Object decode(byte[] payload) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, Codec> codecs = new LinkedHashMap<>();
+        codecs.put("java", new JavaCodec());
+        codecs.put("binary", new BinaryCodec(false));
+        codecs.put("binary+zip", new BinaryCodec(true));
+
+        verifyTruck();
+        System.out.printf("%-8s %-11s %12s %14s %14s%n", "cargos", "codec", "bytes", "encode, us", "decode, us");
+        for (int size : LIST_SIZES) {
+            List<Cargo> cargos = generateCargos(size);
+            for (Map.Entry<String, Codec> entry : codecs.entrySet()) {
+                Codec codec = entry.getValue();
+                byte[] payload = codec.encode(cargos);
+                verify(cargos, codec.decode(payload), entry.getKey());
+                double encodeMicros = measure(() -> codec.encode(cargos));
+                double decodeMicros = measure(() -> codec.decode(payload));
+                System.out.printf("%-8d %-11s %12d %14.2f %14.2f%n", size, entry.getKey(), payload.length,
+                        encodeMicros, decodeMicros);
+            }
+        }
+    }
+
+    private interface Operation {
+        Object run() throws IOException;
+    }
+
+    /**
+     * @return среднее время операции в микросекундах после прогрева
+     */
+    private static double measure(Operation operation) throws IOException {
+        long iterations = 0;
+        long begin = System.nanoTime();
+        // Прогрев - столько же времени, сколько сам замер
+        while (System.nanoTime() - begin < TARGET_NANOS) {
+            operation.run();
+        }
+        begin = System.nanoTime();
+        long elapsed;
+        do {
+            if (operation.run() == null) {
+                throw new IllegalStateException("Пустой результат");
+            }
+            iterations++;
+            elapsed = System.nanoTime() - begin;
+        } while (elapsed < TARGET_NANOS);
+        return elapsed / 1000.0 / iterations;
+    }
+
+    private static List<Cargo> generateCargos(int size) {
+        Random random = new Random(size);
+        List<Cargo> cargos = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int type = random.nextInt(TYPE_COUNT);
+            List<String> incompatibleTypes = type % 4 == 0
+                    ? Collections.singletonList("type" + (type + 1)) : Collections.<String>emptyList();
+            cargos.add(new Cargo(1000 + i, "type" + type, 50 + random.nextInt(500), incompatibleTypes));
+        }
+        return cargos;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void verify(List<Cargo> expected, Object decoded, String codec) {
+        List<Cargo> actual = (List<Cargo>) decoded;
+        if (actual.size() != expected.size()) {
+            throw new IllegalStateException(codec + ": разобрано " + actual.size() + " грузов из " + expected.size());
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            Cargo e = expected.get(i);
+            Cargo a = actual.get(i);
+            if (e.getId() != a.getId() || !e.getType().equals(a.getType()) || e.getWeight() != a.getWeight() ||
+                    !e.getIncompatibleTypes().equals(a.getIncompatibleTypes())) {
+                throw new IllegalStateException(codec + ": груз " + e + " разобран как " + a);
+            }
+        }
+    }
+
+    private static void verifyTruck() throws IOException {
+        Truck truck = new Truck(7, 100000);
+        truck.addIncompatibleCargoType("type15");
+        for (Cargo cargo : generateCargos(50)) {
+            if (truck.canAddCargo(cargo)) {
+                truck.addCargo(cargo);
+            }
+        }
+        Truck decoded = (Truck) PayloadCodec.decode(PayloadCodec.encode(truck));
+        if (decoded.getId() != truck.getId() || decoded.getCapacity() != truck.getCapacity() ||
+                decoded.getCurrentLoad() != truck.getCurrentLoad() ||
+                !decoded.getLoadedCargoTypes().equals(truck.getLoadedCargoTypes()) ||
+                !decoded.getIncompatibleCargoTypes().equals(truck.getIncompatibleCargoTypes())) {
+            throw new IllegalStateException("Грузовик разобран неверно: " + decoded);
+        }
+    }
+
+    private static final class JavaCodec implements Codec {
+        @Override
+        public byte[] encode(List<Cargo> cargos) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(new ArrayList<>(cargos));
+            }
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public Object decode(byte[] payload) throws IOException {
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+                return in.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    private static final class BinaryCodec implements Codec {
+        private final boolean compress;
+
+        BinaryCodec(boolean compress) {
+            this.compress = compress;
+        }
+
+        @Override
+        public byte[] encode(List<Cargo> cargos) {
+            return PayloadCodec.encode(cargos, compress);
+        }
+
+        @Override
+        public Object decode(byte[] payload) throws IOException {
+            return PayloadCodec.decode(payload);
+        }
+    }
+}
@@ -1,19 +1,34 @@
 package model;
 
 import java.io.Serializable;
+import java.util.BitSet;
 import java.util.List;
 
+/**
+ * Груз. Тип хранится номером из {@link CargoTypeRegistry}; несовместимые типы груз не хранит,
+ * они общие для всех грузов одного типа и берутся из строки матрицы реестра.
+ */
 public class Cargo implements Serializable {
     private int id;
+    private int typeId;
     private String type;
     private float weight;
-    private List<String> incompatibleTypes;
 
+    /**
+     * Создать груз и зарегистрировать его тип и несовместимости в реестре типов
+     */
     public Cargo(int id, String type, float weight, List<String> incompatibleTypes) {
+        this(id, CargoTypeRegistry.getInstance().register(type, incompatibleTypes), weight);
+    }
+
+    /**
+     * Создать груз уже зарегистрированного типа
+     */
+    public Cargo(int id, int typeId, float weight) {
         this.id = id;
-        this.type = type;
+        this.typeId = typeId;
+        this.type = CargoTypeRegistry.getInstance().nameOf(typeId);
         this.weight = weight;
-        this.incompatibleTypes = incompatibleTypes;
     }
 
     public int getId() {
@@ -24,12 +39,38 @@ public class Cargo implements Serializable {
         return type;
     }
 
+    public int getTypeId() {
+        return typeId;
+    }
+
     public float getWeight() {
         return weight;
     }
 
     public List<String> getIncompatibleTypes() {
-        return incompatibleTypes;
+        return CargoTypeRegistry.getInstance().incompatibleTypesOf(typeId);
+    }
+
+    /**
+     * Совместим ли груз со всеми типами из маски (см. {@link CargoTypeRegistry#maskOf})
+     */
+    public boolean isCompatibleWith(BitSet typeMask) {
+        return CargoTypeRegistry.getInstance().isCompatible(typeId, typeMask);
+    }
+
+    /**
+     * Груз однозначно определяется своим ID: пул выдает новые объекты для одного и того же груза
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Cargo)) return false;
+        return id == ((Cargo) o).id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(id);
     }
 
     @Override
@@ -0,0 +1,183 @@
+package model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Колоночное хранилище грузов пула: каждый атрибут груза лежит в своем массиве примитивов,
+ * номер строки - порядковый номер груза в хранилище. Объекты {@link Cargo} не хранятся,
+ * они создаются только при выдаче груза наружу.
+ *
+ * Массивы разбиты на блоки фиксированного размера: добавление строки не копирует
+ * существующие блоки, поэтому CAS по состояниям не конфликтует с ростом хранилища.
+ * Строка становится видимой другим потокам только после записи ее ID в индекс,
+ * поэтому значения колонок к этому моменту уже опубликованы.
+ *
+ * Колонка состояний хранит штамп: в младших двух битах - состояние, в остальных - номер версии,
+ * который увеличивается при каждом переходе. По версии журнал восстанавливает последнее
+ * состояние груза, даже если записи о переходах попали в него не по порядку.
+ */
+final class CargoColumns implements Serializable {
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // ID из диапазона [0, MAX_DENSE_ID) индексируются страницами массивов, остальные - хеш-таблицей
+    private static final int MAX_DENSE_ID = 1 << 26;
+    private static final int STATE_BITS = 2;
+    private static final int STATE_MASK = (1 << STATE_BITS) - 1;
+
+    private static final class Chunk implements Serializable {
+        final int[] ids = new int[CHUNK_SIZE];
+        final float[] weights = new float[CHUNK_SIZE];
+        final int[] buckets = new int[CHUNK_SIZE];
+        final AtomicIntegerArray stamps = new AtomicIntegerArray(CHUNK_SIZE);
+        // Номер владельца последнего перехода в журнале (0 - неизвестен)
+        final int[] owners = new int[CHUNK_SIZE];
+    }
+
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile int size;
+    // Страницы индекса ID -> номер строки + 1 (0 - груза нет)
+    private volatile AtomicIntegerArray[] idPages = new AtomicIntegerArray[0];
+    private final Map<Integer, Integer> sparseIds = new ConcurrentHashMap<>();
+
+    synchronized void clear() {
+        chunks = new Chunk[0];
+        idPages = new AtomicIntegerArray[0];
+        sparseIds.clear();
+        size = 0;
+    }
+
+    /**
+     * Добавить строку в состоянии AVAILABLE
+     * @return номер строки
+     */
+    synchronized int append(int cargoId, float weight, int bucketId) {
+        int row = size;
+        int chunkIndex = row >>> CHUNK_BITS;
+        Chunk[] current = chunks;
+        if (chunkIndex == current.length) {
+            current = Arrays.copyOf(current, Math.max(4, current.length * 2));
+        }
+        if (current[chunkIndex] == null) {
+            current[chunkIndex] = new Chunk();
+            chunks = current;
+        }
+        Chunk chunk = current[chunkIndex];
+        int offset = row & CHUNK_MASK;
+        chunk.ids[offset] = cargoId;
+        chunk.weights[offset] = weight;
+        chunk.buckets[offset] = bucketId;
+        size = row + 1;
+        publishId(cargoId, row);
+        return row;
+    }
+
+    /**
+     * Номер строки груза или -1, если груза в хранилище нет
+     */
+    int rowOf(int cargoId) {
+        if (cargoId >= 0 && cargoId < MAX_DENSE_ID) {
+            AtomicIntegerArray[] pages = idPages;
+            int pageIndex = cargoId >>> CHUNK_BITS;
+            if (pageIndex >= pages.length || pages[pageIndex] == null) {
+                return -1;
+            }
+            return pages[pageIndex].get(cargoId & CHUNK_MASK) - 1;
+        }
+        Integer row = sparseIds.get(cargoId);
+        return row != null ? row : -1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int id(int row) {
+        return chunks[row >>> CHUNK_BITS].ids[row & CHUNK_MASK];
+    }
+
+    float weight(int row) {
+        return chunks[row >>> CHUNK_BITS].weights[row & CHUNK_MASK];
+    }
+
+    int bucket(int row) {
+        return chunks[row >>> CHUNK_BITS].buckets[row & CHUNK_MASK];
+    }
+
+    int state(int row) {
+        return stateOf(stamp(row));
+    }
+
+    int stamp(int row) {
+        return chunks[row >>> CHUNK_BITS].stamps.get(row & CHUNK_MASK);
+    }
+
+    /**
+     * Атомарно перевести строку из состояния expected в newState с увеличением версии
+     * @return новый штамп или -1, если строка не в состоянии expected
+     */
+    int transitionState(int row, int expected, int newState) {
+        AtomicIntegerArray stamps = chunks[row >>> CHUNK_BITS].stamps;
+        int offset = row & CHUNK_MASK;
+        while (true) {
+            int current = stamps.get(offset);
+            if (stateOf(current) != expected) {
+                return -1;
+            }
+            int next = stampOf(versionOf(current) + 1, newState);
+            if (stamps.compareAndSet(offset, current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Записать штамп напрямую (только при восстановлении из журнала, до начала работы агентов)
+     */
+    void restoreStamp(int row, int stamp) {
+        chunks[row >>> CHUNK_BITS].stamps.set(row & CHUNK_MASK, stamp);
+    }
+
+    int owner(int row) {
+        return chunks[row >>> CHUNK_BITS].owners[row & CHUNK_MASK];
+    }
+
+    void setOwner(int row, int ownerId) {
+        chunks[row >>> CHUNK_BITS].owners[row & CHUNK_MASK] = ownerId;
+    }
+
+    static int stateOf(int stamp) {
+        return stamp & STATE_MASK;
+    }
+
+    static int versionOf(int stamp) {
+        return stamp >>> STATE_BITS;
+    }
+
+    static int stampOf(int version, int state) {
+        return (version << STATE_BITS) | state;
+    }
+
+    private void publishId(int cargoId, int row) {
+        if (cargoId < 0 || cargoId >= MAX_DENSE_ID) {
+            sparseIds.put(cargoId, row);
+            return;
+        }
+        int pageIndex = cargoId >>> CHUNK_BITS;
+        AtomicIntegerArray[] pages = idPages;
+        if (pageIndex >= pages.length) {
+            pages = Arrays.copyOf(pages, Math.max(pageIndex + 1, pages.length * 2));
+            idPages = pages;
+        }
+        if (pages[pageIndex] == null) {
+            pages[pageIndex] = new AtomicIntegerArray(CHUNK_SIZE);
+            // Повторная запись volatile-ссылки публикует новую страницу читателям
+            idPages = pages;
+        }
+        pages[pageIndex].set(cargoId & CHUNK_MASK, row + 1);
+    }
+}
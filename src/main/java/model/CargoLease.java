@@ -0,0 +1,42 @@
+package model;
+
+import java.io.Serializable;
+
+/**
+ * Аренда зарезервированного груза: владелец резервирования и момент, после которого
+ * резервирование снимается автоматически. При продлении создается новая аренда,
+ * поэтому объект неизменяем и может храниться в упорядоченном по сроку множестве.
+ */
+final class CargoLease implements Comparable<CargoLease>, Serializable {
+    final int row;
+    final int cargoId;
+    final String owner;
+    final long deadlineNanos;
+    final long generation;
+
+    CargoLease(int row, int cargoId, String owner, long deadlineNanos, long generation) {
+        this.row = row;
+        this.cargoId = cargoId;
+        this.owner = owner;
+        this.deadlineNanos = deadlineNanos;
+        this.generation = generation;
+    }
+
+    boolean isOwnedBy(String agentName) {
+        return owner == null ? agentName == null : owner.equals(agentName);
+    }
+
+    boolean isExpired(long nowNanos) {
+        return nowNanos - deadlineNanos >= 0;
+    }
+
+    @Override
+    public int compareTo(CargoLease other) {
+        int byDeadline = Long.compare(deadlineNanos - other.deadlineNanos, 0);
+        if (byDeadline != 0) {
+            return byDeadline;
+        }
+        int byCargo = Integer.compare(cargoId, other.cargoId);
+        return byCargo != 0 ? byCargo : Long.compare(generation, other.generation);
+    }
+}
@@ -1,17 +1,64 @@
 package model;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * Класс, представляющий общий пул доступных грузов
+ * Класс, представляющий общий пул доступных грузов.
+ * Грузы хранятся построчно в колоночном хранилище ({@link CargoColumns}): ID, вес, корзина
+ * и атомарное состояние (AVAILABLE → RESERVED → TAKEN) лежат в массивах примитивов,
+ * переходы выполняются через CAS без общей блокировки. Объекты {@link Cargo} создаются
+ * только при выдаче груза наружу.
+ * Грузы разложены по корзинам типов ({@link CargoTypeBucket}), внутри корзины доступные грузы
+ * упорядочены по весу; несовместимые с грузовиком корзины пропускаются по маске целиком.
+ * Об изменениях пул сообщает подписчикам ({@link CargoPoolSubscription}), опрашивать его не нужно.
+ * Резервирование - это аренда ({@link CargoLease}) с владельцем и сроком: если агент не забрал груз
+ * и не продлил аренду вовремя, фоновый поток возвращает груз в пул.
+ * Каждое изменение набора доступных грузов увеличивает эпоху пула; по ней читатели узнают,
+ * изменилось ли что-нибудь, а неизменяемый снимок ({@link CargoPoolSnapshot}) собирается
+ * не чаще одного раза за эпоху.
+ * Если подключен журнал ({@link CargoPoolJournal}), каждый переход записывается в него вместе
+ * с версией и владельцем, а после сбоя пул восстанавливается методом {@link #restore}.
  */
 public class CargoPool implements Serializable {
+    public static final int AVAILABLE = 0;
+    public static final int RESERVED = 1;
+    public static final int TAKEN = 2;
+    private static final int MAX_CLAIM_ATTEMPTS = 3;
+    // Наибольший шаг чередования кандидатов между одновременными подборами
+    private static final int MAX_CLAIM_STRIDE = 32;
+    public static final long DEFAULT_LEASE_MS = 30000;
+    private static final long REAPER_MAX_PARK_MS = 100;
+
     private static CargoPool instance;
-    private final Map<Integer, Cargo> availableCargos = new ConcurrentHashMap<>();
-    private final Set<Integer> reservedCargos = Collections.newSetFromMap(new ConcurrentHashMap<>());
-    private final Set<Integer> takenCargos = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final CargoColumns columns = new CargoColumns();
+    private final Map<Integer, CargoTypeBucket> buckets = new ConcurrentHashMap<>();
+    private final List<CargoTypeBucket> bucketsById = new CopyOnWriteArrayList<>();
+    private final transient List<CargoPoolSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final transient ConcurrentSkipListSet<CargoLease> leases = new ConcurrentSkipListSet<>();
+    private final transient Map<Integer, CargoLease> leasesByRow = new ConcurrentHashMap<>();
+    private final transient AtomicBoolean reaperStarted = new AtomicBoolean();
+    private final LongAdder expiredLeases = new LongAdder();
+    private final LongAdder renewedLeases = new LongAdder();
+    private final AtomicLong epoch = new AtomicLong();
+    private final LongAdder claimAttempts = new LongAdder();
+    private final LongAdder claimCollisions = new LongAdder();
+    // Подборы claimCargos, выполняемые прямо сейчас, и номер очередного подбора
+    private final AtomicInteger activeClaims = new AtomicInteger();
+    private final AtomicInteger claimTickets = new AtomicInteger();
+    private volatile CargoPoolSnapshot snapshot;
+    private volatile boolean loggingEnabled = true;
+    private volatile CargoPoolJournal journal;
 
     private CargoPool() {
         // Приватный конструктор для синглтона
@@ -28,102 +75,838 @@ public class CargoPool implements Serializable {
     }
 
     /**
-     * Инициализировать пул грузов начальным списком
+     * Инициализировать пул грузов начальным списком (предыдущее содержимое сбрасывается)
      */
-    public void initializePool(List<Cargo> cargos) {
+    public synchronized void initializePool(List<Cargo> cargos) {
+        columns.clear();
+        buckets.clear();
+        bucketsById.clear();
+        leases.clear();
+        leasesByRow.clear();
+        claimAttempts.reset();
+        claimCollisions.reset();
+        // Сначала строки добавляются в хранилище, затем индекс каждой корзины сортируется один раз
+        int[] bucketSizes = new int[0];
         for (Cargo cargo : cargos) {
-            availableCargos.put(cargo.getId(), cargo);
+            if (columns.rowOf(cargo.getId()) >= 0) {
+                continue;
+            }
+            CargoTypeBucket bucket = bucketFor(cargo);
+            columns.append(cargo.getId(), cargo.getWeight(), bucket.id);
+            if (bucket.id >= bucketSizes.length) {
+                bucketSizes = Arrays.copyOf(bucketSizes, Math.max(bucket.id + 1, bucketSizes.length * 2));
+            }
+            bucketSizes[bucket.id]++;
+        }
+        long[][] keysByBucket = new long[bucketsById.size()][];
+        for (int bucketId = 0; bucketId < keysByBucket.length; bucketId++) {
+            keysByBucket[bucketId] = new long[bucketSizes[bucketId]];
+            bucketSizes[bucketId] = 0;
         }
-        System.out.println("Пул грузов инициализирован с " + cargos.size() + " грузами");
+        for (int row = 0; row < columns.size(); row++) {
+            int bucketId = columns.bucket(row);
+            keysByBucket[bucketId][bucketSizes[bucketId]++] = CargoWeightIndex.key(columns.weight(row), columns.id(row));
+        }
+        for (CargoTypeBucket bucket : bucketsById) {
+            long[] keys = keysByBucket[bucket.id];
+            Arrays.sort(keys);
+            bucket.weightIndex = CargoWeightIndex.build(keys, columns);
+            bucket.availableCount.add(keys.length);
+        }
+        epoch.incrementAndGet();
+        CargoPoolJournal currentJournal = journal;
+        if (currentJournal != null) {
+            // Версии начинаются заново, поэтому записи прежнего содержимого пула больше не нужны
+            currentJournal.compact();
+        }
+        log("Пул грузов инициализирован с " + cargos.size() + " грузами");
+    }
+
+    /**
+     * Подключить журнал переходов. Файлы предыдущего запуска остаются до первого уплотнения,
+     * поэтому порядок такой: initializePool, attachJournal, затем {@link #restore}.
+     */
+    public void attachJournal(CargoPoolJournal newJournal) {
+        newJournal.bind(new CargoPoolJournal.StateSource() {
+            public int size() {
+                return columns.size();
+            }
+
+            public void forEachChanged(CargoPoolJournal.RecordSink sink) {
+                for (int row = 0; row < columns.size(); row++) {
+                    int stamp = columns.stamp(row);
+                    if (CargoColumns.versionOf(stamp) > 0) {
+                        sink.accept(columns.id(row), stamp, columns.owner(row));
+                    }
+                }
+            }
+        });
+        journal = newJournal;
     }
 
     /**
-     * Получить список доступных грузов
+     * Отключить журнал
+     * @param delete удалить файлы журнала (распределение завершено штатно и восстанавливать нечего)
+     */
+    public void detachJournal(boolean delete) throws IOException {
+        CargoPoolJournal detached = journal;
+        journal = null;
+        if (detached == null) {
+            return;
+        }
+        if (delete) {
+            detached.closeAndDelete();
+        } else {
+            detached.close();
+        }
+    }
+
+    /**
+     * Восстановить состояния грузов из журнала (после initializePool, до запуска агентов).
+     * Резервирования прежнего запуска не восстанавливаются - их владельцы уже не существуют,
+     * такие грузы снова доступны. Взятые грузы остаются взятыми.
+     * Если журнал подключен, восстановленное состояние сразу записывается в новое поколение журнала.
+     * @return количество грузов, оставшихся взятыми
+     */
+    public synchronized int restore(CargoPoolJournal.Recovery recovery) {
+        int taken = 0;
+        for (int cargoId : recovery.getCargoIds()) {
+            int row = columns.rowOf(cargoId);
+            if (row < 0) {
+                continue;
+            }
+            int stamp = recovery.getStamp(cargoId);
+            int state = CargoColumns.stateOf(stamp) == TAKEN ? TAKEN : AVAILABLE;
+            // Версия продолжается с записанной, чтобы новые записи журнала были старше восстановленных
+            columns.restoreStamp(row, CargoColumns.stampOf(CargoColumns.versionOf(stamp) + 1, state));
+            CargoTypeBucket bucket = bucketsById.get(columns.bucket(row));
+            if (state == TAKEN) {
+                CargoPoolJournal attached = journal;
+                columns.setOwner(row, attached != null ? attached.ownerId(recovery.getOwner(cargoId)) : 0);
+                bucket.availableCount.decrement();
+                taken++;
+            }
+            bucket.weightIndex.sync(row, columns);
+        }
+        epoch.incrementAndGet();
+        CargoPoolJournal currentJournal = journal;
+        if (currentJournal != null) {
+            currentJournal.compact();
+        }
+        log("Из журнала восстановлено взятых грузов: " + taken);
+        return taken;
+    }
+
+    /**
+     * Подписаться на изменения пула
+     * @param kinds виды событий (битовая маска констант {@link CargoPoolEvent})
+     * @param listener слушатель, получающий сигнал о накопившихся изменениях
+     */
+    public CargoPoolSubscription subscribe(int kinds, CargoPoolListener listener) {
+        CargoPoolSubscription subscription = new CargoPoolSubscription(kinds, listener);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public void unsubscribe(CargoPoolSubscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    /**
+     * Включить или выключить вывод сообщений о каждом переходе состояния
+     */
+    public void setLoggingEnabled(boolean loggingEnabled) {
+        this.loggingEnabled = loggingEnabled;
+    }
+
+    /**
+     * Получить список доступных грузов (сгруппированы по типу, внутри типа - по возрастанию веса)
      */
     public List<Cargo> getAvailableCargos() {
-        List<Cargo> result = new ArrayList<>();
-        for (Map.Entry<Integer, Cargo> entry : availableCargos.entrySet()) {
-            if (!reservedCargos.contains(entry.getKey()) && !takenCargos.contains(entry.getKey())) {
-                result.add(entry.getValue());
+        return new ArrayList<>(getSnapshot().getAvailableCargos());
+    }
+
+    /**
+     * Текущая эпоха пула: увеличивается при каждом изменении набора доступных грузов
+     */
+    public long getEpoch() {
+        return epoch.get();
+    }
+
+    /**
+     * Изменился ли набор доступных грузов после эпохи knownEpoch
+     */
+    public boolean hasChangedSince(long knownEpoch) {
+        return epoch.get() != knownEpoch;
+    }
+
+    /**
+     * Неизменяемый снимок доступных грузов. В пределах эпохи возвращается уже собранный снимок,
+     * после изменений он пересобирается первым же читателем.
+     */
+    public CargoPoolSnapshot getSnapshot() {
+        CargoPoolSnapshot current = snapshot;
+        long currentEpoch = epoch.get();
+        if (current != null && current.getEpoch() == currentEpoch) {
+            return current;
+        }
+        // Эпоха читается до обхода: изменения во время обхода увеличат ее, и снимок будет пересобран
+        List<Cargo> available = new ArrayList<>();
+        for (CargoTypeBucket bucket : bucketsById) {
+            CargoWeightIndex index = bucket.weightIndex;
+            for (int position = index.nextAvailable(0); position >= 0; position = index.nextAvailable(position + 1)) {
+                int row = index.rowAt(position);
+                if (columns.state(row) == AVAILABLE) {
+                    available.add(bucket.cargoAt(row, columns));
+                }
+            }
+        }
+        CargoPoolSnapshot rebuilt = new CargoPoolSnapshot(currentEpoch, available);
+        snapshot = rebuilt;
+        return rebuilt;
+    }
+
+    /**
+     * Есть ли в пуле хотя бы один доступный груз не тяжелее maxWeight, который можно добавить в грузовик.
+     * Несовместимые с грузовиком типы отбрасываются по маске без перебора их грузов.
+     */
+    public boolean hasCompatibleCargo(Truck truck, float maxWeight) {
+        return findHeaviestAvailable(maxWeight, truck) != null;
+    }
+
+    /**
+     * Найти самый тяжелый доступный груз, который не тяжелее maxWeight и который можно добавить в грузовик
+     * @param truck грузовик для проверки совместимости или null, если проверка не нужна
+     * @return груз или null, если подходящего нет (груз не резервируется)
+     */
+    public Cargo findHeaviestAvailable(float maxWeight, Truck truck) {
+        Cargo best = null;
+        for (CargoTypeBucket bucket : compatibleBuckets(truck)) {
+            CargoWeightIndex index = bucket.weightIndex;
+            Cargo candidate = fittingBelow(bucket, index, index.lastAtMost(maxWeight), truck);
+            if (candidate != null && (best == null || candidate.getWeight() > best.getWeight())) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Найти доступный груз, вес которого ближе всего к weight (но не больше maxWeight)
+     * @param truck грузовик для проверки совместимости или null, если проверка не нужна
+     * @return груз или null, если подходящего нет (груз не резервируется)
+     */
+    public Cargo findClosestAvailable(float weight, float maxWeight, Truck truck) {
+        Cargo best = null;
+        float bestDistance = Float.MAX_VALUE;
+        for (CargoTypeBucket bucket : compatibleBuckets(truck)) {
+            CargoWeightIndex index = bucket.weightIndex;
+            Cargo below = fittingBelow(bucket, index, index.lastAtMost(Math.min(weight, maxWeight)), truck);
+            Cargo above = fittingAbove(bucket, index, index.firstAbove(weight), maxWeight, truck);
+            if (below != null && weight - below.getWeight() <= bestDistance) {
+                best = below;
+                bestDistance = weight - below.getWeight();
+            }
+            if (above != null && above.getWeight() - weight < bestDistance) {
+                best = above;
+                bestDistance = above.getWeight() - weight;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Количество доступных грузов указанного типа
+     */
+    public int getAvailableCargoCount(String type) {
+        int typeId = CargoTypeRegistry.getInstance().idOf(type);
+        CargoTypeBucket bucket = typeId >= 0 ? buckets.get(typeId) : null;
+        return bucket != null ? bucket.getAvailableCount() : 0;
+    }
+
+    /**
+     * Первый подходящий грузовику доступный груз корзины, начиная с позиции from в сторону легких
+     */
+    private Cargo fittingBelow(CargoTypeBucket bucket, CargoWeightIndex index, int from, Truck truck) {
+        for (int position = index.previousAvailable(from); position >= 0;
+             position = index.previousAvailable(position - 1)) {
+            Cargo cargo = fittingCargo(bucket, index.rowAt(position), truck);
+            if (cargo != null) {
+                return cargo;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Первый подходящий грузовику доступный груз корзины не тяжелее maxWeight, начиная с позиции from
+     * в сторону тяжелых
+     */
+    private Cargo fittingAbove(CargoTypeBucket bucket, CargoWeightIndex index, int from, float maxWeight, Truck truck) {
+        for (int position = index.nextAvailable(from); position >= 0 && index.weightAt(position) <= maxWeight;
+             position = index.nextAvailable(position + 1)) {
+            Cargo cargo = fittingCargo(bucket, index.rowAt(position), truck);
+            if (cargo != null) {
+                return cargo;
+            }
+        }
+        return null;
+    }
+
+    private Cargo fittingCargo(CargoTypeBucket bucket, int row, Truck truck) {
+        if (columns.state(row) != AVAILABLE) {
+            return null;
+        }
+        Cargo cargo = bucket.cargoAt(row, columns);
+        return truck == null || truck.canAddCargo(cargo) ? cargo : null;
+    }
+
+    /**
+     * Корзины, в которых есть доступные грузы и которые совместимы с грузами грузовика
+     */
+    private List<CargoTypeBucket> compatibleBuckets(Truck truck) {
+        BitSet loadedMask = truck != null ? truck.getLoadedTypeMask() : new BitSet();
+        List<CargoTypeBucket> result = new ArrayList<>();
+        for (CargoTypeBucket bucket : bucketsById) {
+            if (bucket.getAvailableCount() > 0 && bucket.isCompatibleWith(loadedMask)) {
+                result.add(bucket);
             }
         }
         return result;
     }
 
     /**
-     * Попытаться зарезервировать груз
+     * Попытаться зарезервировать груз без указания владельца на срок {@link #DEFAULT_LEASE_MS}
      * @return true, если успешно, false, если груз недоступен
      */
-    public synchronized boolean reserveCargo(int cargoId) {
-        if (availableCargos.containsKey(cargoId) &&
-                !reservedCargos.contains(cargoId) &&
-                !takenCargos.contains(cargoId)) {
+    public boolean reserveCargo(int cargoId) {
+        return reserveCargo(cargoId, null, DEFAULT_LEASE_MS);
+    }
 
-            reservedCargos.add(cargoId);
-            System.out.println("Груз " + cargoId + " зарезервирован");
+    /**
+     * Попытаться зарезервировать груз в аренду
+     * @param owner имя агента-владельца резервирования
+     * @param leaseMs срок аренды; по его истечении незабранный груз снова становится доступным
+     * @return true, если успешно, false, если груз недоступен
+     */
+    public boolean reserveCargo(int cargoId, String owner, long leaseMs) {
+        int row = columns.rowOf(cargoId);
+        if (row < 0) {
+            return false;
+        }
+        claimAttempts.increment();
+        if (transition(row, AVAILABLE, RESERVED, owner)) {
+            // Аренда выдается после перехода: до этого момента строкой никто, кроме нас, не владеет
+            CargoLease lease = new CargoLease(row, cargoId, owner, deadline(leaseMs), 0);
+            leasesByRow.put(row, lease);
+            leases.add(lease);
+            startReaper();
+            log("Груз " + cargoId + " зарезервирован" + (owner != null ? " агентом " + owner : ""));
             return true;
         }
+        claimCollisions.increment();
         return false;
     }
 
     /**
-     * Получить груз по ID (после успешного резервирования)
+     * Продлить аренду зарезервированного груза
+     * @return true, если аренда принадлежит owner и еще не истекла
+     */
+    public boolean renewLease(int cargoId, String owner, long leaseMs) {
+        int row = columns.rowOf(cargoId);
+        if (row < 0) {
+            return false;
+        }
+        CargoLease current = leasesByRow.get(row);
+        if (current == null || !current.isOwnedBy(owner) || columns.state(row) != RESERVED) {
+            return false;
+        }
+        CargoLease renewed = new CargoLease(row, cargoId, owner, deadline(leaseMs), current.generation + 1);
+        if (!leasesByRow.replace(row, current, renewed)) {
+            return false;
+        }
+        leases.add(renewed);
+        leases.remove(current);
+        renewedLeases.increment();
+        return true;
+    }
+
+    /**
+     * Получить груз по ID после резервирования без владельца ({@link #reserveCargo(int)})
+     */
+    public Cargo takeCargo(int cargoId) {
+        return takeCargo(cargoId, null);
+    }
+
+    /**
+     * Получить груз по ID после успешного резервирования
+     * @param owner владелец резервирования; груз выдается, только если аренда все еще принадлежит ему
+     * @return груз или null, если аренда истекла или груз зарезервирован другим агентом
      */
-    public synchronized Cargo takeCargo(int cargoId) {
-        if (reservedCargos.contains(cargoId)) {
-            reservedCargos.remove(cargoId);
-            takenCargos.add(cargoId);
-            Cargo cargo = availableCargos.get(cargoId);
-            System.out.println("Груз " + cargoId + " взят из пула");
-            return cargo;
+    public Cargo takeCargo(int cargoId, String owner) {
+        int row = columns.rowOf(cargoId);
+        if (row < 0) {
+            return null;
+        }
+        // Пока аренда у нас, фоновый поток и другие агенты не могут вывести строку из RESERVED
+        if (releaseLease(row, owner) == null) {
+            return null;
+        }
+        if (transition(row, RESERVED, TAKEN, owner)) {
+            log("Груз " + cargoId + " взят из пула");
+            return cargoAt(row);
         }
         return null;
     }
 
     /**
-     * Отменить резервирование груза
+     * Атомарно подобрать и забрать набор совместимых грузов для грузовика.
+     * Грузы перебираются по убыванию веса и добавляются, пока суммарный вес меньше targetWeight
+     * и не превышает maxWeight. Набор забирается целиком: если хотя бы один груз перехватил
+     * другой грузовик, все резервирования откатываются и подбор повторяется.
+     * @param truck грузовик, для которого подбираются грузы (его состояние не изменяется)
+     * @param targetWeight желаемый суммарный вес набора
+     * @param maxWeight максимально допустимый суммарный вес набора
+     * @return взятые грузы или пустой список, если подходящего набора нет
+     */
+    public List<Cargo> claimCargos(Truck truck, float targetWeight, float maxWeight) {
+        return claimCargos(truck, null, targetWeight, maxWeight);
+    }
+
+    /**
+     * То же, что {@link #claimCargos(Truck, float, float)}, с указанием агента-владельца для журнала
+     */
+    public List<Cargo> claimCargos(Truck truck, String owner, float targetWeight, float maxWeight) {
+        activeClaims.incrementAndGet();
+        try {
+            for (int attempt = 0; attempt < MAX_CLAIM_ATTEMPTS; attempt++) {
+                // Одновременные подборы получают разные номера и берут кандидатов через один, через два...
+                // Повторная попытка получает новый номер и, скорее всего, другую полосу
+                int stride = Math.max(1, Math.min(activeClaims.get(), MAX_CLAIM_STRIDE));
+                int offset = Math.floorMod(claimTickets.getAndIncrement(), stride);
+                int[] selection = selectCompatibleSet(truck, targetWeight, maxWeight, stride, offset);
+                if (selection.length == 0) {
+                    return Collections.emptyList();
+                }
+                List<Cargo> claimed = claimAll(selection, owner);
+                if (claimed != null) {
+                    log("Грузовику " + truck.getId() + " выдан набор из " + claimed.size() + " грузов");
+                    return claimed;
+                }
+            }
+            return Collections.emptyList();
+        } finally {
+            activeClaims.decrementAndGet();
+        }
+    }
+
+    /**
+     * Жадный подбор по убыванию веса: слияние упорядоченных индексов совместимых корзин.
+     * Корзина, ставшая несовместимой с уже выбранными грузами, выбрасывается из слияния целиком.
+     * Подходящие кандидаты нумеруются по порядку, и подбор берет только кандидатов своей полосы
+     * (номер по модулю stride равен offset): одновременные подборы с разными offset выбирают
+     * непересекающиеся наборы из самых тяжелых грузов, а не сталкиваются на одном и том же.
+     * Если своей полосы не хватило до targetWeight, добираются пропущенные кандидаты.
+     * @param stride число полос (1 - обычный жадный подбор)
+     * @param offset полоса этого подбора, 0 <= offset < stride
      */
-    public synchronized void cancelReservation(int cargoId) {
-        reservedCargos.remove(cargoId);
-        System.out.println("Резервирование груза " + cargoId + " отменено");
+    private int[] selectCompatibleSet(Truck truck, float targetWeight, float maxWeight, int stride, int offset) {
+        PriorityQueue<BucketCursor> cursors = new PriorityQueue<>(
+                (a, b) -> Float.compare(b.headWeight(), a.headWeight()));
+        for (CargoTypeBucket bucket : compatibleBuckets(truck)) {
+            CargoWeightIndex index = bucket.weightIndex;
+            BucketCursor cursor = new BucketCursor(bucket, index, index.lastAtMost(maxWeight));
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+
+        int[] selection = new int[4];
+        int selected = 0;
+        int[] skipped = new int[4];
+        int skippedCount = 0;
+        int candidate = 0;
+        BitSet selectedTypes = new BitSet();
+        float total = 0;
+        while (total < targetWeight && !cursors.isEmpty()) {
+            BucketCursor cursor = cursors.poll();
+            CargoTypeBucket bucket = cursor.bucket;
+            // Грузы набора должны быть совместимы и между собой
+            if (!bucket.isCompatibleWith(selectedTypes)) {
+                continue;
+            }
+            int row = cursor.headRow();
+            float weight = cursor.headWeight();
+            if (total + weight <= maxWeight && fittingCargo(bucket, row, truck) != null) {
+                if (candidate++ % stride == offset) {
+                    if (selected == selection.length) {
+                        selection = Arrays.copyOf(selection, selected * 2);
+                    }
+                    selection[selected++] = row;
+                    selectedTypes.set(bucket.typeId);
+                    total += weight;
+                } else {
+                    if (skippedCount == skipped.length) {
+                        skipped = Arrays.copyOf(skipped, skippedCount * 2);
+                    }
+                    skipped[skippedCount++] = row;
+                }
+            }
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+
+        // Пропущенные кандидаты тоже идут по убыванию веса
+        for (int i = 0; i < skippedCount && total < targetWeight; i++) {
+            int row = skipped[i];
+            CargoTypeBucket bucket = bucketsById.get(columns.bucket(row));
+            float weight = columns.weight(row);
+            if (bucket.isCompatibleWith(selectedTypes) && total + weight <= maxWeight) {
+                if (selected == selection.length) {
+                    selection = Arrays.copyOf(selection, selected * 2);
+                }
+                selection[selected++] = row;
+                selectedTypes.set(bucket.typeId);
+                total += weight;
+            }
+        }
+        return Arrays.copyOf(selection, selected);
+    }
+
+    /**
+     * Текущая позиция в упорядоченном по убыванию веса индексе корзины
+     */
+    private static final class BucketCursor {
+        final CargoTypeBucket bucket;
+        final CargoWeightIndex index;
+        // Следующая еще не просмотренная позиция индекса (просмотр идет к легким грузам)
+        private int position;
+        private int head = -1;
+
+        BucketCursor(CargoTypeBucket bucket, CargoWeightIndex index, int start) {
+            this.bucket = bucket;
+            this.index = index;
+            this.position = start;
+        }
+
+        int headRow() {
+            return index.rowAt(head);
+        }
+
+        float headWeight() {
+            return index.weightAt(head);
+        }
+
+        boolean advance() {
+            int found = index.previousAvailable(position);
+            position = found - 1;
+            head = found;
+            return head >= 0;
+        }
+    }
+
+    /**
+     * Резервирует и забирает все строки набора; при любой неудаче откатывает уже выполненные переходы
+     * @return взятые грузы или null, если набор забрать не удалось
+     */
+    private List<Cargo> claimAll(int[] selection, String owner) {
+        claimAttempts.increment();
+        int reserved = 0;
+        while (reserved < selection.length && transition(selection[reserved], AVAILABLE, RESERVED, owner)) {
+            reserved++;
+        }
+        if (reserved < selection.length) {
+            for (int i = 0; i < reserved; i++) {
+                transition(selection[i], RESERVED, AVAILABLE);
+            }
+            claimCollisions.increment();
+            return null;
+        }
+
+        List<Cargo> claimed = new ArrayList<>(selection.length);
+        for (int i = 0; i < selection.length; i++) {
+            int row = selection[i];
+            if (!transition(row, RESERVED, TAKEN, owner)) {
+                for (int j = 0; j < i; j++) {
+                    transition(selection[j], TAKEN, AVAILABLE);
+                }
+                for (int j = i + 1; j < selection.length; j++) {
+                    transition(selection[j], RESERVED, AVAILABLE);
+                }
+                claimCollisions.increment();
+                return null;
+            }
+            claimed.add(cargoAt(row));
+        }
+        return claimed;
+    }
+
+    /**
+     * Отменить резервирование груза без владельца
+     */
+    public void cancelReservation(int cargoId) {
+        cancelReservation(cargoId, null);
+    }
+
+    /**
+     * Отменить резервирование груза, если аренда все еще принадлежит owner
+     */
+    public void cancelReservation(int cargoId, String owner) {
+        int row = columns.rowOf(cargoId);
+        if (row < 0 || releaseLease(row, owner) == null) {
+            return;
+        }
+        if (transition(row, RESERVED, AVAILABLE)) {
+            log("Резервирование груза " + cargoId + " отменено");
+        }
     }
 
     /**
      * Вернуть груз в пул (если он был взят)
      */
-    public synchronized void returnCargo(Cargo cargo) {
+    public void returnCargo(Cargo cargo) {
         int cargoId = cargo.getId();
-        if (takenCargos.contains(cargoId)) {
-            takenCargos.remove(cargoId);
-            System.out.println("Груз " + cargoId + " возвращен в пул");
+        int row = columns.rowOf(cargoId);
+        if (row >= 0 && transition(row, TAKEN, AVAILABLE)) {
+            log("Груз " + cargoId + " возвращен в пул");
+        }
+    }
+
+    /**
+     * Добавить новый груз в пул. Если груз с таким ID уже был взят, он снова становится доступным.
+     */
+    public void addCargo(Cargo cargo) {
+        int existing = columns.rowOf(cargo.getId());
+        if (existing >= 0) {
+            if (transition(existing, TAKEN, AVAILABLE)) {
+                log("Груз " + cargo.getId() + " возвращен в пул");
+            }
+            return;
         }
+        CargoTypeBucket bucket;
+        synchronized (this) {
+            if (columns.rowOf(cargo.getId()) >= 0) {
+                addCargo(cargo);
+                return;
+            }
+            bucket = bucketFor(cargo);
+            int row = columns.append(cargo.getId(), cargo.getWeight(), bucket.id);
+            // Индекс корзины неизменяем по составу: строим новый и досинхронизируем переходы,
+            // которые успели попасть в старый экземпляр
+            CargoWeightIndex rebuilt = bucket.weightIndex.with(row, columns);
+            bucket.weightIndex = rebuilt;
+            rebuilt.syncAll(columns);
+            bucket.availableCount.increment();
+        }
+        epoch.incrementAndGet();
+        publish(CargoPoolEvent.ADDED, cargo.getWeight(), bucket);
+        log("Груз " + cargo.getId() + " добавлен в пул");
     }
 
     /**
-     * Добавить новый груз в пул
+     * Получить текущее состояние груза (AVAILABLE, RESERVED, TAKEN) или -1, если груза нет в пуле
      */
-    public synchronized void addCargo(Cargo cargo) {
-        availableCargos.put(cargo.getId(), cargo);
-        System.out.println("Груз " + cargo.getId() + " добавлен в пул");
+    public int getCargoState(int cargoId) {
+        int row = columns.rowOf(cargoId);
+        return row >= 0 ? columns.state(row) : -1;
     }
 
     /**
      * Получить количество доступных грузов
      */
     public int getAvailableCargoCount() {
+        CargoPoolSnapshot current = snapshot;
+        if (current != null && current.getEpoch() == epoch.get()) {
+            return current.getAvailableCargoCount();
+        }
         int count = 0;
-        for (Integer id : availableCargos.keySet()) {
-            if (!reservedCargos.contains(id) && !takenCargos.contains(id)) {
-                count++;
-            }
+        for (CargoTypeBucket bucket : bucketsById) {
+            count += bucket.getAvailableCount();
         }
         return count;
     }
 
+    /**
+     * Количество резервирований, снятых по истечении аренды
+     */
+    public long getExpiredLeaseCount() {
+        return expiredLeases.sum();
+    }
+
+    /**
+     * Количество продлений аренды
+     */
+    public long getRenewedLeaseCount() {
+        return renewedLeases.sum();
+    }
+
+    /**
+     * Количество попыток захвата: одиночных резервирований и наборов claimCargos
+     */
+    public long getClaimAttemptCount() {
+        return claimAttempts.sum();
+    }
+
+    /**
+     * Количество попыток захвата, проигранных другому грузовику
+     */
+    public long getClaimCollisionCount() {
+        return claimCollisions.sum();
+    }
+
+    /**
+     * Доля попыток захвата, закончившихся столкновением (0, если попыток не было)
+     */
+    public double getClaimCollisionRate() {
+        long attempts = claimAttempts.sum();
+        return attempts == 0 ? 0.0 : (double) claimCollisions.sum() / attempts;
+    }
+
     /**
      * Получить общее количество грузов в пуле (включая зарезервированные и взятые)
      */
     public int getTotalCargoCount() {
-        return availableCargos.size();
+        return columns.size();
+    }
+
+    private boolean transition(int row, int from, int to) {
+        return transition(row, from, to, null);
+    }
+
+    /**
+     * Единственная точка смены состояния строки: CAS, запись в журнал, учет доступных грузов корзины,
+     * обновление ее индекса, эпохи пула и оповещение подписчиков
+     * @param owner агент, выполняющий переход (для журнала), или null
+     */
+    private boolean transition(int row, int from, int to, String owner) {
+        int stamp = columns.transitionState(row, from, to);
+        if (stamp < 0) {
+            return false;
+        }
+        CargoPoolJournal currentJournal = journal;
+        if (currentJournal != null) {
+            int ownerId = to == AVAILABLE ? 0 : currentJournal.ownerId(owner);
+            columns.setOwner(row, ownerId);
+            currentJournal.append(columns.id(row), stamp, ownerId);
+        }
+        CargoTypeBucket bucket = bucketsById.get(columns.bucket(row));
+        if (from == AVAILABLE) {
+            bucket.availableCount.decrement();
+            bucket.weightIndex.sync(row, columns);
+            epoch.incrementAndGet();
+        } else if (to == AVAILABLE) {
+            bucket.availableCount.increment();
+            bucket.weightIndex.sync(row, columns);
+            epoch.incrementAndGet();
+            publish(CargoPoolEvent.RELEASED, columns.weight(row), bucket);
+        }
+        if (to == TAKEN) {
+            publish(CargoPoolEvent.TAKEN, columns.weight(row), bucket);
+        }
+        return true;
+    }
+
+    private Cargo cargoAt(int row) {
+        return bucketsById.get(columns.bucket(row)).cargoAt(row, columns);
+    }
+
+    /**
+     * Снять аренду перед уходом строки из RESERVED. Аренда снимается раньше перехода,
+     * чтобы фоновый поток не принял ее за чужую и не вернул в пул уже новое резервирование.
+     * Снимается только аренда owner: после истечения нашей аренды груз мог зарезервировать другой агент.
+     * @return снятая аренда или null, если аренды нет или она чужая
+     */
+    private CargoLease releaseLease(int row, String owner) {
+        while (true) {
+            CargoLease lease = leasesByRow.get(row);
+            if (lease == null || !lease.isOwnedBy(owner)) {
+                return null;
+            }
+            // Аренду могли продлить или снять одновременно с нами - тогда смотрим заново
+            if (leasesByRow.remove(row, lease)) {
+                leases.remove(lease);
+                return lease;
+            }
+        }
+    }
+
+    private static long deadline(long leaseMs) {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseMs);
+    }
+
+    private void startReaper() {
+        if (reaperStarted.get() || !reaperStarted.compareAndSet(false, true)) {
+            return;
+        }
+        Thread reaper = new Thread(this::reapExpiredLeases, "cargo-lease-reaper");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    /**
+     * Фоновый поток: снимает истекшие аренды в порядке сроков и возвращает их грузы в пул.
+     * Новая аренда с более ранним сроком может появиться во время ожидания, поэтому поток
+     * засыпает не дольше чем на REAPER_MAX_PARK_MS.
+     */
+    private void reapExpiredLeases() {
+        while (!Thread.currentThread().isInterrupted()) {
+            CargoLease next = leases.isEmpty() ? null : firstLease();
+            long now = System.nanoTime();
+            if (next == null || !next.isExpired(now)) {
+                long parkNanos = TimeUnit.MILLISECONDS.toNanos(REAPER_MAX_PARK_MS);
+                if (next != null) {
+                    parkNanos = Math.min(parkNanos, next.deadlineNanos - now);
+                }
+                LockSupport.parkNanos(this, parkNanos);
+                continue;
+            }
+            if (!leases.remove(next)) {
+                continue;
+            }
+            if (leasesByRow.remove(next.row, next) && transition(next.row, RESERVED, AVAILABLE)) {
+                expiredLeases.increment();
+                log("Аренда груза " + next.cargoId + (next.owner != null ? " агентом " + next.owner : "") +
+                        " истекла, груз возвращен в пул");
+            }
+        }
+    }
+
+    private CargoLease firstLease() {
+        try {
+            return leases.first();
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    private void publish(int kind, float weight, CargoTypeBucket bucket) {
+        for (CargoPoolSubscription subscription : subscriptions) {
+            subscription.publish(kind, weight, bucket);
+        }
+    }
+
+    /**
+     * Корзина определяется типом груза: несовместимости общие для всех грузов типа
+     */
+    private CargoTypeBucket bucketFor(Cargo cargo) {
+        CargoTypeBucket bucket = buckets.get(cargo.getTypeId());
+        if (bucket != null) {
+            return bucket;
+        }
+        synchronized (bucketsById) {
+            // Номер корзины - ее позиция в bucketsById, поэтому корзины создаются по одной
+            return buckets.computeIfAbsent(cargo.getTypeId(), typeId -> {
+                CargoTypeBucket created = new CargoTypeBucket(bucketsById.size(), typeId);
+                bucketsById.add(created);
+                return created;
+            });
+        }
+    }
+
+    private void log(String message) {
+        if (loggingEnabled) {
+            System.out.println(message);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,47 @@
+package model;
+
+import java.io.Serializable;
+
+/**
+ * Накопленные с прошлого опроса изменения пула: какие виды событий были и сколько их было
+ */
+public class CargoPoolEvent implements Serializable {
+    public static final int ADDED = 1;
+    public static final int RELEASED = 2;
+    public static final int TAKEN = 4;
+    public static final int ALL = ADDED | RELEASED | TAKEN;
+
+    private final int kinds;
+    private final long changeCount;
+
+    public CargoPoolEvent(int kinds, long changeCount) {
+        this.kinds = kinds;
+        this.changeCount = changeCount;
+    }
+
+    public boolean isEmpty() {
+        return kinds == 0;
+    }
+
+    public boolean hasKind(int kind) {
+        return (kinds & kind) != 0;
+    }
+
+    public int getKinds() {
+        return kinds;
+    }
+
+    public long getChangeCount() {
+        return changeCount;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("CargoPoolEvent[");
+        if (hasKind(ADDED)) sb.append("ADDED ");
+        if (hasKind(RELEASED)) sb.append("RELEASED ");
+        if (hasKind(TAKEN)) sb.append("TAKEN ");
+        sb.append("x").append(changeCount).append("]");
+        return sb.toString();
+    }
+}
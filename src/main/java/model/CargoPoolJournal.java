@@ -0,0 +1,483 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Журнал переходов пула грузов в файле, отображенном в память.
+ * Каждый переход - запись фиксированной длины 16 байт: тег, ID груза, штамп (версия и состояние)
+ * и номер владельца. Имена владельцев записываются один раз отдельными записями.
+ * Записи добавляются без блокировок: место резервируется атомарным сдвигом позиции,
+ * а тег пишется последним и служит признаком завершенной записи.
+ *
+ * Когда файл заполняется, журнал уплотняется: создается файл следующего поколения со снимком
+ * всех изменявшихся грузов. Порядок записей не важен: при восстановлении для каждого груза
+ * берется запись с наибольшей версией из всех файлов журнала, поэтому записи, попавшие
+ * в старый файл во время уплотнения, не теряются.
+ *
+ * Отображение файла снимается сразу при его освобождении, а восстановление читает файлы
+ * без отображения: пока файл отображен в память, Windows не дает его удалить.
+ */
+public class CargoPoolJournal implements Closeable {
+    public static final int DEFAULT_SEGMENT_BYTES = 16 << 20;
+    static final int RECORD_BYTES = 16;
+    private static final int HEADER_BYTES = RECORD_BYTES;
+    private static final int MAGIC = 0x43504A31; // "CPJ1"
+    private static final int TRANSITION_TAG = 1;
+    private static final int SNAPSHOT_TAG = 2;
+    private static final int OWNER_TAG = 3;
+
+    /**
+     * Источник снимка состояния для уплотнения (пул грузов)
+     */
+    interface StateSource {
+        /**
+         * Количество грузов в пуле (верхняя граница размера снимка)
+         */
+        int size();
+
+        void forEachChanged(RecordSink sink);
+    }
+
+    interface RecordSink {
+        void accept(int cargoId, int stamp, int ownerId);
+    }
+
+    private final Path basePath;
+    private final int segmentBytes;
+    private final Map<String, Integer> ownerIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> ownerNames = new ConcurrentHashMap<>();
+    private final AtomicInteger nextOwnerId = new AtomicInteger(1);
+    private volatile Segment current;
+    private volatile StateSource stateSource;
+    private volatile boolean closed;
+
+    private CargoPoolJournal(Path basePath, int segmentBytes, Recovery recovered) throws IOException {
+        this.basePath = basePath.toAbsolutePath();
+        this.segmentBytes = segmentBytes;
+        for (Map.Entry<Integer, String> owner : recovered.ownerNames.entrySet()) {
+            ownerIds.put(owner.getValue(), owner.getKey());
+            ownerNames.put(owner.getKey(), owner.getValue());
+            nextOwnerId.set(Math.max(nextOwnerId.get(), owner.getKey() + 1));
+        }
+        this.current = createSegment(recovered.lastGeneration + 1, segmentBytes);
+    }
+
+    /**
+     * Открыть журнал рядом с basePath. Номера владельцев из уже существующих файлов сохраняются,
+     * сами файлы удаляются при первом уплотнении.
+     */
+    public static CargoPoolJournal open(Path basePath, int segmentBytes) throws IOException {
+        return new CargoPoolJournal(basePath, segmentBytes, recover(basePath));
+    }
+
+    public static CargoPoolJournal open(Path basePath) throws IOException {
+        return open(basePath, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Прочитать все файлы журнала и собрать последнее известное состояние каждого груза
+     */
+    public static Recovery recover(Path basePath) throws IOException {
+        Recovery recovery = new Recovery();
+        for (Path file : segmentFiles(basePath.toAbsolutePath())) {
+            recovery.lastGeneration = Math.max(recovery.lastGeneration, generationOf(file));
+            ByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                buffer = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE - 8));
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // читаем файл целиком
+                }
+            }
+            buffer.flip();
+            if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                continue;
+            }
+            recovery.read(buffer);
+        }
+        return recovery;
+    }
+
+    /**
+     * Удалить все файлы журнала (после штатного завершения распределения)
+     */
+    public static void delete(Path basePath) throws IOException {
+        for (Path file : segmentFiles(basePath.toAbsolutePath())) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    void bind(StateSource source) {
+        this.stateSource = source;
+    }
+
+    /**
+     * Номер владельца для записей журнала; новое имя записывается в журнал один раз
+     */
+    int ownerId(String owner) {
+        if (owner == null) {
+            return 0;
+        }
+        Integer known = ownerIds.get(owner);
+        if (known != null) {
+            return known;
+        }
+        int created = nextOwnerId.getAndIncrement();
+        Integer raced = ownerIds.putIfAbsent(owner, created);
+        if (raced != null) {
+            return raced;
+        }
+        ownerNames.put(created, owner);
+        appendOwner(created, owner);
+        return created;
+    }
+
+    /**
+     * Записать переход груза
+     */
+    void append(int cargoId, int stamp, int ownerId) {
+        while (!closed) {
+            Segment segment = current;
+            if (!segment.enter()) {
+                continue; // файл уже заменен новым поколением
+            }
+            try {
+                int offset = segment.reserve(RECORD_BYTES);
+                if (offset >= 0) {
+                    segment.writeRecord(offset, TRANSITION_TAG, cargoId, stamp, ownerId);
+                    return;
+                }
+            } finally {
+                segment.exit();
+            }
+            compact(segment);
+        }
+    }
+
+    /**
+     * Начать новое поколение со снимком текущего состояния и удалить устаревшие файлы
+     */
+    public void compact() {
+        compact(current);
+    }
+
+    private void compact(Segment full) {
+        synchronized (this) {
+            if (current != full || closed) {
+                return;
+            }
+            StateSource source = stateSource;
+            long snapshotBytes = HEADER_BYTES + (source != null ? (long) source.size() * RECORD_BYTES * 2 : 0) +
+                    ownerNames.size() * RECORD_BYTES * 8L;
+            Segment next;
+            try {
+                next = createSegment(full.generation + 1,
+                        (int) Math.min(Integer.MAX_VALUE - 8, Math.max(segmentBytes, snapshotBytes)));
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось создать файл журнала: " + e.getMessage(), e);
+            }
+            for (Map.Entry<Integer, String> owner : ownerNames.entrySet()) {
+                writeOwner(next, owner.getKey(), owner.getValue());
+            }
+            current = next;
+            if (source != null) {
+                source.forEachChanged((cargoId, stamp, ownerId) -> {
+                    int offset = next.reserve(RECORD_BYTES);
+                    if (offset < 0) {
+                        throw new IllegalStateException("Снимок пула не помещается в файл журнала");
+                    }
+                    next.writeRecord(offset, SNAPSHOT_TAG, cargoId, stamp, ownerId);
+                });
+            }
+            // Предыдущее поколение остается: в него еще могут дописываться переходы,
+            // начатые до переключения. Удаляются только более старые файлы.
+            removeGenerationsBefore(full.generation);
+            full.release();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        current.release();
+    }
+
+    /**
+     * Закрыть журнал и удалить его файлы
+     */
+    public void closeAndDelete() throws IOException {
+        close();
+        delete(basePath);
+    }
+
+    private void appendOwner(int ownerId, String owner) {
+        while (!closed) {
+            Segment segment = current;
+            if (!segment.enter()) {
+                continue;
+            }
+            try {
+                if (writeOwner(segment, ownerId, owner)) {
+                    return;
+                }
+            } finally {
+                segment.exit();
+            }
+            compact(segment);
+        }
+    }
+
+    private static boolean writeOwner(Segment segment, int ownerId, String owner) {
+        byte[] name = owner.getBytes(StandardCharsets.UTF_8);
+        int payloadRecords = (name.length + RECORD_BYTES - 1) / RECORD_BYTES;
+        int offset = segment.reserve(RECORD_BYTES * (1 + payloadRecords));
+        if (offset < 0) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            segment.buffer.put(offset + RECORD_BYTES + i, name[i]);
+        }
+        segment.writeRecord(offset, OWNER_TAG, ownerId, name.length, payloadRecords);
+        return true;
+    }
+
+    private Segment createSegment(long generation, int capacity) throws IOException {
+        Path file = segmentPath(basePath, generation);
+        Files.deleteIfExists(file);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        buffer.putInt(0, MAGIC);
+        buffer.putLong(4, generation);
+        return new Segment(generation, channel, buffer, capacity);
+    }
+
+    private void removeGenerationsBefore(long generation) {
+        try {
+            for (Path file : segmentFiles(basePath)) {
+                if (generationOf(file) < generation) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            // Старые файлы не мешают восстановлению (побеждает большая версия), удалим их позже
+            System.err.println("Не удалось удалить старые файлы журнала: " + e.getMessage());
+        }
+    }
+
+    private static Path segmentPath(Path basePath, long generation) {
+        return basePath.resolveSibling(basePath.getFileName() + "." + generation);
+    }
+
+    private static List<Path> segmentFiles(Path basePath) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Path directory = basePath.getParent();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return files;
+        }
+        String prefix = basePath.getFileName() + ".";
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path file : stream) {
+                if (generationOf(file) >= 0) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static long generationOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(name.lastIndexOf('.') + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Снять отображение файла, не дожидаясь сборки мусора. Если JVM этого не позволяет,
+     * отображение снимет сборщик мусора, а файл удалится при следующем уплотнении или запуске.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            try {
+                // Java 9+
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                // Java 8
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            System.err.println("Не удалось снять отображение файла журнала: " + e);
+        }
+    }
+
+    /**
+     * Один файл журнала.
+     * Писатели входят в файл через {@link #enter()}: освобождение дожидается, пока все писатели,
+     * начавшие запись до переключения поколения, выйдут, и только затем снимает отображение.
+     */
+    private static final class Segment {
+        final long generation;
+        final FileChannel channel;
+        MappedByteBuffer buffer;
+        final int capacity;
+        final AtomicInteger position = new AtomicInteger(HEADER_BYTES);
+        private final AtomicInteger writers = new AtomicInteger();
+        private volatile boolean retired;
+
+        Segment(long generation, FileChannel channel, MappedByteBuffer buffer, int capacity) {
+            this.generation = generation;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+
+        /**
+         * Зарезервировать место под запись
+         * @return смещение или -1, если файл заполнен
+         */
+        int reserve(int bytes) {
+            int offset = position.getAndAdd(bytes);
+            return offset + bytes <= capacity && offset >= 0 ? offset : -1;
+        }
+
+        void writeRecord(int offset, int tag, int first, int second, int third) {
+            buffer.putInt(offset + 4, first);
+            buffer.putInt(offset + 8, second);
+            buffer.putInt(offset + 12, third);
+            // Тег последним: запись без тега при чтении пропускается
+            buffer.putInt(offset, tag);
+        }
+
+        /**
+         * @return false, если файл уже освобожден и писать в него нельзя
+         */
+        boolean enter() {
+            writers.incrementAndGet();
+            if (retired) {
+                writers.decrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        void exit() {
+            writers.decrementAndGet();
+        }
+
+        void release() {
+            retired = true;
+            while (writers.get() > 0) {
+                Thread.yield(); // запись занимает несколько putInt
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Ошибка закрытия файла журнала: " + e.getMessage());
+            }
+            if (buffer != null) {
+                unmap(buffer);
+                buffer = null;
+            }
+        }
+    }
+
+    /**
+     * Состояние пула, восстановленное из журнала: последний штамп и владелец каждого груза
+     */
+    public static final class Recovery {
+        private final Map<Integer, int[]> latest = new HashMap<>();
+        private final Map<Integer, String> ownerNames = new HashMap<>();
+        private long lastGeneration = -1;
+
+        public boolean isEmpty() {
+            return latest.isEmpty();
+        }
+
+        public Set<Integer> getCargoIds() {
+            return Collections.unmodifiableSet(latest.keySet());
+        }
+
+        /**
+         * Последнее записанное состояние груза (AVAILABLE, RESERVED, TAKEN) или -1
+         */
+        public int getState(int cargoId) {
+            int[] record = latest.get(cargoId);
+            return record != null ? CargoColumns.stateOf(record[0]) : -1;
+        }
+
+        int getStamp(int cargoId) {
+            return latest.get(cargoId)[0];
+        }
+
+        /**
+         * Имя агента, который последним резервировал или забирал груз, или null
+         */
+        public String getOwner(int cargoId) {
+            int[] record = latest.get(cargoId);
+            return record != null ? ownerNames.get(record[1]) : null;
+        }
+
+        private void read(ByteBuffer buffer) {
+            int limit = buffer.limit() - RECORD_BYTES;
+            int offset = HEADER_BYTES;
+            while (offset <= limit) {
+                int tag = buffer.getInt(offset);
+                if (tag == TRANSITION_TAG || tag == SNAPSHOT_TAG) {
+                    merge(buffer.getInt(offset + 4), buffer.getInt(offset + 8), buffer.getInt(offset + 12),
+                            tag == TRANSITION_TAG);
+                } else if (tag == OWNER_TAG) {
+                    int ownerId = buffer.getInt(offset + 4);
+                    int length = buffer.getInt(offset + 8);
+                    int payloadRecords = buffer.getInt(offset + 12);
+                    if (length < 0 || payloadRecords < 0 || offset + RECORD_BYTES + length > buffer.limit()) {
+                        break;
+                    }
+                    byte[] name = new byte[length];
+                    for (int i = 0; i < length; i++) {
+                        name[i] = buffer.get(offset + RECORD_BYTES + i);
+                    }
+                    ownerNames.put(ownerId, new String(name, StandardCharsets.UTF_8));
+                    offset += payloadRecords * RECORD_BYTES;
+                }
+                offset += RECORD_BYTES;
+            }
+        }
+
+        /**
+         * Побеждает большая версия; при равных версиях запись о переходе точнее снимка
+         */
+        private void merge(int cargoId, int stamp, int ownerId, boolean isTransition) {
+            int[] known = latest.get(cargoId);
+            int version = CargoColumns.versionOf(stamp);
+            if (known == null || version > CargoColumns.versionOf(known[0]) ||
+                    (version == CargoColumns.versionOf(known[0]) && isTransition && known[2] == 0)) {
+                latest.put(cargoId, new int[]{stamp, ownerId, isTransition ? 1 : 0});
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package model;
+
+/**
+ * Подписчик на изменения пула грузов.
+ * Вызывается в потоке, изменившем пул, не чаще одного раза до вызова {@link CargoPoolSubscription#drain()},
+ * поэтому реализация должна только передать сигнал своему агенту и сразу вернуть управление.
+ */
+public interface CargoPoolListener {
+    void cargoPoolChanged(CargoPoolSubscription subscription);
+}
@@ -0,0 +1,40 @@
+package model;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Неизменяемый снимок доступных грузов пула на момент эпохи {@link #getEpoch()}.
+ * Пул пересобирает снимок только после изменений, поэтому повторные чтения
+ * в пределах одной эпохи возвращают один и тот же объект.
+ */
+public final class CargoPoolSnapshot implements Serializable {
+    private final long epoch;
+    private final List<Cargo> availableCargos;
+
+    CargoPoolSnapshot(long epoch, List<Cargo> availableCargos) {
+        this.epoch = epoch;
+        this.availableCargos = Collections.unmodifiableList(availableCargos);
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Доступные грузы (сгруппированы по типу, внутри типа - по возрастанию веса)
+     */
+    public List<Cargo> getAvailableCargos() {
+        return availableCargos;
+    }
+
+    public int getAvailableCargoCount() {
+        return availableCargos.size();
+    }
+
+    @Override
+    public String toString() {
+        return "CargoPoolSnapshot{epoch=" + epoch + ", available=" + availableCargos.size() + "}";
+    }
+}
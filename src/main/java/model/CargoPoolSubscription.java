@@ -0,0 +1,81 @@
+package model;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Подписка на изменения пула грузов.
+ * События объединяются: пока подписчик не вызвал {@link #drain()}, новые изменения только
+ * накапливаются и слушатель повторно не вызывается.
+ * Для событий ADDED и RELEASED можно задать фильтр: сигнал придет, только если появившийся груз
+ * не тяжелее заданного веса и совместим с типами, уже загруженными в грузовик.
+ */
+public class CargoPoolSubscription {
+    private final int kinds;
+    private final CargoPoolListener listener;
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+    private final AtomicInteger pendingKinds = new AtomicInteger();
+    private final LongAdder pendingChanges = new LongAdder();
+    private volatile boolean paused = false;
+    private volatile float maxWeight = Float.MAX_VALUE;
+    private volatile BitSet loadedMask = new BitSet();
+
+    CargoPoolSubscription(int kinds, CargoPoolListener listener) {
+        this.kinds = kinds;
+        this.listener = listener;
+    }
+
+    /**
+     * Получать сигналы о появлении грузов не тяжелее maxWeight, совместимых с loadedTypes
+     */
+    public void watchFor(float maxWeight, Set<String> loadedTypes) {
+        this.loadedMask = CargoTypeRegistry.getInstance().maskOf(loadedTypes);
+        this.maxWeight = maxWeight;
+        this.paused = false;
+    }
+
+    /**
+     * Получать сигналы обо всех изменениях выбранных видов
+     */
+    public void watchAll() {
+        watchFor(Float.MAX_VALUE, Collections.<String>emptySet());
+    }
+
+    /**
+     * Временно не получать сигналов (изменения за время паузы не накапливаются)
+     */
+    public void pause() {
+        paused = true;
+    }
+
+    /**
+     * Забрать накопленные изменения и снова разрешить вызов слушателя
+     */
+    public CargoPoolEvent drain() {
+        pending.set(false);
+        int drainedKinds = pendingKinds.getAndSet(0);
+        return new CargoPoolEvent(drainedKinds, pendingChanges.sumThenReset());
+    }
+
+    /**
+     * Вызывается пулом при изменении состояния груза
+     */
+    void publish(int kind, float weight, CargoTypeBucket bucket) {
+        if (paused || (kinds & kind) == 0) {
+            return;
+        }
+        if (kind != CargoPoolEvent.TAKEN &&
+                (weight > maxWeight || !bucket.isCompatibleWith(loadedMask))) {
+            return;
+        }
+        pendingKinds.getAndAccumulate(kind, (a, b) -> a | b);
+        pendingChanges.increment();
+        if (pending.compareAndSet(false, true)) {
+            listener.cargoPoolChanged(this);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Обмен грузами между двумя грузовиками, выполняемый целиком или не выполняемый вовсе:
+ * инициатор отдает набор {@link #getOutgoing()} и получает взамен {@link #getIncoming()}.
+ * Встречный набор может быть пустым - тогда это передача нескольких грузов в одну сторону.
+ */
+public class CargoSwap {
+    private final String swapId;
+    private final List<Cargo> outgoing;
+    private final List<Cargo> incoming;
+
+    public CargoSwap(String swapId, List<Cargo> outgoing, List<Cargo> incoming) {
+        this.swapId = swapId;
+        this.outgoing = Collections.unmodifiableList(new ArrayList<>(outgoing));
+        this.incoming = Collections.unmodifiableList(new ArrayList<>(incoming));
+    }
+
+    public String getSwapId() {
+        return swapId;
+    }
+
+    /**
+     * Грузы, которые инициатор передает второму грузовику
+     */
+    public List<Cargo> getOutgoing() {
+        return outgoing;
+    }
+
+    /**
+     * Грузы, которые второй грузовик передает инициатору
+     */
+    public List<Cargo> getIncoming() {
+        return incoming;
+    }
+
+    /**
+     * Вес, уходящий от инициатора с учетом встречного набора
+     */
+    public float getNetWeight() {
+        return TransferSelector.totalWeight(outgoing) - TransferSelector.totalWeight(incoming);
+    }
+
+    @Override
+    public String toString() {
+        return "CargoSwap{id=" + swapId + ", outgoing=" + outgoing + ", incoming=" + incoming + "}";
+    }
+}
@@ -0,0 +1,41 @@
+package model;
+
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Корзина пула с грузами одного типа.
+ * Хранит собственный индекс по весу и счетчик доступных грузов, а совместимость проверяет
+ * по строке матрицы {@link CargoTypeRegistry}, поэтому несовместимую с грузовиком корзину
+ * можно пропустить целиком, не перебирая ее грузы.
+ */
+class CargoTypeBucket implements Serializable {
+    final int id;
+    final int typeId;
+    final LongAdder availableCount = new LongAdder();
+    volatile CargoWeightIndex weightIndex = CargoWeightIndex.EMPTY;
+
+    CargoTypeBucket(int id, int typeId) {
+        this.id = id;
+        this.typeId = typeId;
+    }
+
+    /**
+     * Можно ли грузы корзины добавить к грузам с типами из loadedMask
+     */
+    boolean isCompatibleWith(BitSet loadedMask) {
+        return CargoTypeRegistry.getInstance().isCompatible(typeId, loadedMask);
+    }
+
+    int getAvailableCount() {
+        return (int) availableCount.sum();
+    }
+
+    /**
+     * Собрать объект груза из строки хранилища
+     */
+    Cargo cargoAt(int row, CargoColumns columns) {
+        return new Cargo(columns.id(row), typeId, columns.weight(row));
+    }
+}
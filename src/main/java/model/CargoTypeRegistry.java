@@ -0,0 +1,184 @@
+package model;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Реестр типов грузов: каждому имени типа присваивается номер, а несовместимость типов
+ * хранится симметричной битовой матрицей - одна строка на тип, общая для всех грузов этого типа.
+ * Множество типов представляется маской ({@link BitSet}) по номерам типов, поэтому проверка
+ * "совместим ли груз с грузовиком" сводится к пересечению строки типа груза с маской загруженных
+ * типов. Число типов не ограничено размером одного слова маски.
+ *
+ * Реестр заполняется при разборе конфигурации. Строки матрицы после публикации не изменяются:
+ * новая несовместимость создает новую копию строки, поэтому читатели обходятся без блокировок.
+ */
+public class CargoTypeRegistry {
+    private static CargoTypeRegistry instance;
+
+    private final Map<String, Integer> typeIds = new ConcurrentHashMap<>();
+    private volatile String[] typeNames = new String[0];
+    private volatile BitSet[] incompatibilityRows = new BitSet[0];
+    private volatile List<String>[] incompatibleNames = newNameLists(0);
+    private volatile int matrixVersion;
+
+    private CargoTypeRegistry() {
+    }
+
+    public static synchronized CargoTypeRegistry getInstance() {
+        if (instance == null) {
+            instance = new CargoTypeRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Зарегистрировать тип груза вместе с его несовместимыми типами
+     * @return номер типа
+     */
+    public int register(String type, Collection<String> incompatibleTypes) {
+        int typeId = intern(type);
+        for (String incompatibleType : incompatibleTypes) {
+            if (incompatibleType == null || incompatibleType.isEmpty()) {
+                continue;
+            }
+            int otherId = intern(incompatibleType);
+            if (!areIncompatible(typeId, otherId)) {
+                declareIncompatible(typeId, otherId);
+            }
+        }
+        return typeId;
+    }
+
+    /**
+     * Номер типа; тип регистрируется, если встречается впервые
+     */
+    public int intern(String type) {
+        Integer typeId = typeIds.get(type);
+        if (typeId != null) {
+            return typeId;
+        }
+        synchronized (this) {
+            typeId = typeIds.get(type);
+            if (typeId != null) {
+                return typeId;
+            }
+            int created = typeNames.length;
+            String[] names = Arrays.copyOf(typeNames, created + 1);
+            names[created] = type;
+            BitSet[] rows = Arrays.copyOf(incompatibilityRows, created + 1);
+            rows[created] = new BitSet();
+            List<String>[] nameLists = Arrays.copyOf(incompatibleNames, created + 1);
+            nameLists[created] = Collections.emptyList();
+            // Массивы публикуются до номера типа: кто получил номер, тот видит и строку
+            typeNames = names;
+            incompatibilityRows = rows;
+            incompatibleNames = nameLists;
+            typeIds.put(type, created);
+            return created;
+        }
+    }
+
+    /**
+     * Номер типа или -1, если тип не зарегистрирован
+     */
+    public int idOf(String type) {
+        Integer typeId = typeIds.get(type);
+        return typeId != null ? typeId : -1;
+    }
+
+    public String nameOf(int typeId) {
+        return typeNames[typeId];
+    }
+
+    public int getTypeCount() {
+        return typeNames.length;
+    }
+
+    /**
+     * Объявить типы несовместимыми (в обе стороны)
+     */
+    public synchronized void declareIncompatible(int typeId, int otherId) {
+        BitSet[] rows = incompatibilityRows.clone();
+        List<String>[] nameLists = incompatibleNames.clone();
+        withIncompatibility(rows, nameLists, typeId, otherId);
+        withIncompatibility(rows, nameLists, otherId, typeId);
+        incompatibilityRows = rows;
+        incompatibleNames = nameLists;
+        matrixVersion++;
+    }
+
+    /**
+     * Версия матрицы несовместимости: увеличивается при каждом объявлении несовместимости.
+     * Позволяет заметить, что рассчитанные по матрице данные устарели
+     */
+    public int getMatrixVersion() {
+        return matrixVersion;
+    }
+
+    public boolean areIncompatible(int typeId, int otherId) {
+        return incompatibilityRows[typeId].get(otherId);
+    }
+
+    /**
+     * Строка матрицы: маска типов, несовместимых с данным. Не изменять
+     */
+    BitSet incompatibilityRow(int typeId) {
+        return incompatibilityRows[typeId];
+    }
+
+    /**
+     * Имена типов, несовместимых с данным (общий неизменяемый список)
+     */
+    public List<String> incompatibleTypesOf(int typeId) {
+        return incompatibleNames[typeId];
+    }
+
+    /**
+     * Совместим ли тип со всеми типами из маски
+     */
+    public boolean isCompatible(int typeId, BitSet typeMask) {
+        return !incompatibilityRows[typeId].intersects(typeMask);
+    }
+
+    /**
+     * Совместимы ли все типы одной маски со всеми типами другой
+     */
+    public boolean areCompatible(BitSet typeMask, BitSet otherMask) {
+        for (int typeId = typeMask.nextSetBit(0); typeId >= 0; typeId = typeMask.nextSetBit(typeId + 1)) {
+            if (incompatibilityRows[typeId].intersects(otherMask)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Маска по номерам типов; незарегистрированные типы регистрируются
+     */
+    public BitSet maskOf(Collection<String> types) {
+        BitSet mask = new BitSet();
+        for (String type : types) {
+            if (type != null && !type.isEmpty()) {
+                mask.set(intern(type));
+            }
+        }
+        return mask;
+    }
+
+    private void withIncompatibility(BitSet[] rows, List<String>[] nameLists, int typeId, int otherId) {
+        BitSet row = (BitSet) rows[typeId].clone();
+        row.set(otherId);
+        rows[typeId] = row;
+        List<String> names = new ArrayList<>(row.cardinality());
+        for (int other = row.nextSetBit(0); other >= 0; other = row.nextSetBit(other + 1)) {
+            names.add(typeNames[other]);
+        }
+        nameLists[typeId] = Collections.unmodifiableList(names);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<String>[] newNameLists(int length) {
+        return (List<String>[]) new List[length];
+    }
+}
@@ -0,0 +1,200 @@
+package model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Упорядоченный по весу индекс грузов одной корзины.
+ * Ключ - вес и ID груза, упакованные в long; ключи отсортированы один раз, так как вес груза
+ * не меняется. Доступность хранится отдельной битовой маской по позициям индекса,
+ * поэтому поиск "самый тяжелый не больше X" - это двоичный поиск и пропуск занятых грузов
+ * по 64 позиции за шаг, без копирования пула и без объекта на каждый груз.
+ *
+ * Маска может кратковременно отставать от состояния строк, поэтому найденные строки
+ * всегда перепроверяются по их атомарному состоянию.
+ * Индекс неизменяем по составу: добавление груза создает новый индекс ({@link #with}).
+ */
+final class CargoWeightIndex implements Serializable {
+    static final CargoWeightIndex EMPTY = new CargoWeightIndex(new long[0], new int[0]);
+
+    private final long[] keys;
+    private final int[] rows;
+    private final AtomicLongArray available;
+
+    private CargoWeightIndex(long[] keys, int[] rows) {
+        this.keys = keys;
+        this.rows = rows;
+        this.available = new AtomicLongArray((keys.length + 63) >>> 6);
+    }
+
+    /**
+     * Построить индекс по отсортированным ключам; доступность берется из колонки состояний
+     */
+    static CargoWeightIndex build(long[] sortedKeys, CargoColumns columns) {
+        int[] rows = new int[sortedKeys.length];
+        for (int i = 0; i < sortedKeys.length; i++) {
+            rows[i] = columns.rowOf(idOf(sortedKeys[i]));
+        }
+        CargoWeightIndex index = new CargoWeightIndex(sortedKeys, rows);
+        index.syncAll(columns);
+        return index;
+    }
+
+    /**
+     * Новый индекс с добавленной строкой
+     */
+    CargoWeightIndex with(int row, CargoColumns columns) {
+        long key = key(columns.weight(row), columns.id(row));
+        int insertAt = Arrays.binarySearch(keys, key);
+        if (insertAt >= 0) {
+            return this;
+        }
+        insertAt = -insertAt - 1;
+        long[] grown = new long[keys.length + 1];
+        System.arraycopy(keys, 0, grown, 0, insertAt);
+        grown[insertAt] = key;
+        System.arraycopy(keys, insertAt, grown, insertAt + 1, keys.length - insertAt);
+        return build(grown, columns);
+    }
+
+    /**
+     * Привести бит доступности строки к ее текущему состоянию.
+     * Повторяется, пока состояние не перестанет меняться во время обновления.
+     */
+    void sync(int row, CargoColumns columns) {
+        int position = Arrays.binarySearch(keys, key(columns.weight(row), columns.id(row)));
+        if (position < 0) {
+            // Строка еще не попала в индекс: новый индекс при построении сам прочитает ее состояние
+            return;
+        }
+        int state;
+        do {
+            state = columns.state(row);
+            setAvailable(position, state == CargoPool.AVAILABLE);
+        } while (columns.state(row) != state);
+    }
+
+    /**
+     * Пересчитать все биты доступности (после замены индекса, чтобы учесть переходы,
+     * попавшие в старый экземпляр)
+     */
+    void syncAll(CargoColumns columns) {
+        for (int position = 0; position < rows.length; position++) {
+            int row = rows[position];
+            int state;
+            do {
+                state = columns.state(row);
+                setAvailable(position, state == CargoPool.AVAILABLE);
+            } while (columns.state(row) != state);
+        }
+    }
+
+    int size() {
+        return rows.length;
+    }
+
+    int rowAt(int position) {
+        return rows[position];
+    }
+
+    float weightAt(int position) {
+        return Float.intBitsToFloat((int) (keys[position] >>> 32));
+    }
+
+    /**
+     * Последняя позиция с весом не больше maxWeight или -1
+     */
+    int lastAtMost(float maxWeight) {
+        if (maxWeight < 0) {
+            return -1;
+        }
+        return upperBound(key(maxWeight, 0) | 0xFFFFFFFFL) - 1;
+    }
+
+    /**
+     * Первая позиция с весом больше minWeight (или size(), если таких нет)
+     */
+    int firstAbove(float minWeight) {
+        if (minWeight < 0) {
+            return 0;
+        }
+        return upperBound(key(minWeight, 0) | 0xFFFFFFFFL);
+    }
+
+    /**
+     * Ближайшая позиция не правее from, помеченная как доступная, или -1
+     */
+    int previousAvailable(int from) {
+        if (from < 0) {
+            return -1;
+        }
+        int word = from >>> 6;
+        long bits = available.get(word) & (-1L >>> (63 - (from & 63)));
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+            }
+            if (--word < 0) {
+                return -1;
+            }
+            bits = available.get(word);
+        }
+    }
+
+    /**
+     * Ближайшая позиция не левее from, помеченная как доступная, или -1
+     */
+    int nextAvailable(int from) {
+        if (from >= rows.length) {
+            return -1;
+        }
+        int word = from >>> 6;
+        long bits = available.get(word) & (-1L << (from & 63));
+        int words = available.length();
+        while (true) {
+            if (bits != 0) {
+                int position = (word << 6) + Long.numberOfTrailingZeros(bits);
+                return position < rows.length ? position : -1;
+            }
+            if (++word >= words) {
+                return -1;
+            }
+            bits = available.get(word);
+        }
+    }
+
+    private void setAvailable(int position, boolean isAvailable) {
+        long mask = 1L << (position & 63);
+        if (isAvailable) {
+            available.accumulateAndGet(position >>> 6, mask, (word, bit) -> word | bit);
+        } else {
+            available.accumulateAndGet(position >>> 6, ~mask, (word, bits) -> word & bits);
+        }
+    }
+
+    private int upperBound(long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] <= key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Вес неотрицателен, поэтому битовое представление float упорядочено так же, как сами веса
+     */
+    static long key(float weight, int cargoId) {
+        return ((long) Float.floatToIntBits(Math.max(weight, 0f)) << 32) | (cargoId & 0xFFFFFFFFL);
+    }
+
+    private static int idOf(long key) {
+        return (int) key;
+    }
+}
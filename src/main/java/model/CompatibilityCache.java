@@ -0,0 +1,152 @@
+package model;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Общий для всех агентов кеш ответов "совместим ли тип груза с набором загруженных типов"
+ * и "совместимы ли два набора типов".
+ * Набор типов представлен 64-битной подписью Зобриста - XOR случайных ключей его типов,
+ * поэтому грузовик обновляет подпись за O(1) при появлении или исчезновении типа.
+ *
+ * Кеш ограничен: {@link #DEFAULT_CAPACITY} ячеек прямого отображения, каждая - одно число long,
+ * в котором лежат отпечаток ключа (подпись, тип, версия матрицы) и ответ. Чтение и запись ячейки
+ * атомарны, блокировок нет; новый ключ вытесняет старый из той же ячейки. Версия матрицы входит
+ * в отпечаток, поэтому после объявления новой несовместимости старые ответы просто не находятся.
+ * Отпечаток занимает 62 бита: совпадение отпечатков разных ключей практически исключено.
+ *
+ * Поиск в кеше дороже одного пересечения строки матрицы с маской, поэтому проверки одного типа
+ * ({@link Truck#canAddCargo}, отбор грузов для передачи) идут прямо в {@link CargoTypeRegistry}.
+ * Кеш окупается на проверке набора против набора (предложение обмена): прямая проверка - по
+ * пересечению на каждый тип набора, а одни и те же пары наборов встречаются в переговорах снова.
+ */
+public class CompatibilityCache {
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+    private static final long VALID = 2L;
+    private static final long COMPATIBLE = 1L;
+    private static final long SET_PAIR_TAG = 1L << 62;
+
+    private static CompatibilityCache instance;
+
+    private final CargoTypeRegistry registry = CargoTypeRegistry.getInstance();
+    private final AtomicLongArray entries;
+    private final int slotMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    CompatibilityCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.entries = new AtomicLongArray(size);
+        this.slotMask = size - 1;
+    }
+
+    public static synchronized CompatibilityCache getInstance() {
+        if (instance == null) {
+            instance = new CompatibilityCache(DEFAULT_CAPACITY);
+        }
+        return instance;
+    }
+
+    /**
+     * Ключ Зобриста типа: подпись набора - XOR ключей всех его типов
+     */
+    public static long typeKey(int typeId) {
+        return mix(typeId + 0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * Подпись набора типов, заданного маской
+     */
+    public static long signatureOf(BitSet typeMask) {
+        long signature = 0;
+        for (int typeId = typeMask.nextSetBit(0); typeId >= 0; typeId = typeMask.nextSetBit(typeId + 1)) {
+            signature ^= typeKey(typeId);
+        }
+        return signature;
+    }
+
+    /**
+     * Совместим ли тип со всеми типами набора
+     * @param signature подпись набора {@code typeMask}
+     * @param typeMask сам набор - по нему считается ответ при промахе
+     */
+    public boolean isCompatible(int typeId, long signature, BitSet typeMask) {
+        long fingerprint = mix(signature ^ mix(((long) typeId << 32) | (registry.getMatrixVersion() & 0xFFFFFFFFL)))
+                & ~(VALID | COMPATIBLE);
+        return lookup(fingerprint, () -> registry.isCompatible(typeId, typeMask));
+    }
+
+    private interface Answer {
+        boolean compute();
+    }
+
+    private boolean lookup(long fingerprint, Answer answer) {
+        int slot = (int) (fingerprint >>> 32) & slotMask;
+        long entry = entries.get(slot);
+        if ((entry & ~COMPATIBLE) == (fingerprint | VALID)) {
+            hits.increment();
+            return (entry & COMPATIBLE) != 0;
+        }
+
+        misses.increment();
+        boolean compatible = answer.compute();
+        if ((entry & VALID) != 0) {
+            evictions.increment();
+        }
+        entries.set(slot, fingerprint | VALID | (compatible ? COMPATIBLE : 0));
+        return compatible;
+    }
+
+    /**
+     * Совместим ли тип со всеми типами маски (подпись считается по маске)
+     */
+    public boolean isCompatible(int typeId, BitSet typeMask) {
+        return isCompatible(typeId, signatureOf(typeMask), typeMask);
+    }
+
+    /**
+     * Совместимы ли все типы одного набора со всеми типами другого
+     * @param signature подпись набора {@code typeMask}
+     * @param otherSignature подпись набора {@code otherMask}
+     */
+    public boolean areCompatible(long signature, BitSet typeMask, long otherSignature, BitSet otherMask) {
+        // Ключ не зависит от порядка наборов; метка отделяет его от ключей вида "тип и набор"
+        long pair = mix(signature) + mix(otherSignature);
+        long fingerprint = mix(pair ^ mix(SET_PAIR_TAG | (registry.getMatrixVersion() & 0xFFFFFFFFL)))
+                & ~(VALID | COMPATIBLE);
+        return lookup(fingerprint, () -> registry.areCompatible(typeMask, otherMask));
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int getCapacity() {
+        return entries.length();
+    }
+
+    @Override
+    public String toString() {
+        long hitCount = getHitCount();
+        long total = hitCount + getMissCount();
+        return "CompatibilityCache{capacity=" + getCapacity() + ", hits=" + hitCount + ", misses=" + getMissCount() +
+                ", evictions=" + getEvictionCount() +
+                ", hitRate=" + (total == 0 ? 0 : Math.round(hitCount * 1000.0 / total) / 10.0) + "%}";
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return value ^ (value >>> 33);
+    }
+}
@@ -8,6 +8,13 @@ public class LoadingConfiguration implements Serializable {
     private List<Cargo> cargos;
     private float idealLoadPercentage;
     private boolean useDynamicIdealLoad;
+    private boolean journalEnabled = true;
+    private String journalPath = "cargo_pool.journal";
+    private boolean textReports = false;
+    private String mode = "agents";
+    private boolean postOptimize = false;
+    private long solverTimeLimitMs = 2000;
+    private String portfolioLogPath = "portfolio_runs.csv";
 
     public List<Truck> getTrucks() {
         return trucks;
@@ -38,4 +45,97 @@ public class LoadingConfiguration implements Serializable {
     public void setIdealLoadPercentage(float idealLoadPercentage) {
         this.idealLoadPercentage = idealLoadPercentage;
     }
-}
\ No newline at end of file
+
+    public boolean isJournalEnabled() {
+        return journalEnabled;
+    }
+
+    public void setJournalEnabled(boolean journalEnabled) {
+        this.journalEnabled = journalEnabled;
+    }
+
+    public String getJournalPath() {
+        return journalPath;
+    }
+
+    public void setJournalPath(String journalPath) {
+        this.journalPath = journalPath;
+    }
+
+    /**
+     * Отправлять ли итоговые отчеты грузовиков в текстовом формате (для отладки)
+     */
+    public boolean isTextReports() {
+        return textReports;
+    }
+
+    public void setTextReports(boolean textReports) {
+        this.textReports = textReports;
+    }
+
+    /**
+     * Режим распределения: "agents" - переговоры агентов, иначе имя централизованного решателя
+     */
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Улучшать ли результат переговоров локальным поиском перед итоговым отчетом
+     */
+    public boolean isPostOptimize() {
+        return postOptimize;
+    }
+
+    public void setPostOptimize(boolean postOptimize) {
+        this.postOptimize = postOptimize;
+    }
+
+    /**
+     * Время работы решателей с ограничением по времени (локальный поиск и т.п.)
+     */
+    public long getSolverTimeLimitMs() {
+        return solverTimeLimitMs;
+    }
+
+    public void setSolverTimeLimitMs(long solverTimeLimitMs) {
+        this.solverTimeLimitMs = solverTimeLimitMs;
+    }
+
+    /**
+     * Журнал запусков портфеля решателей (пустая строка - не вести)
+     */
+    public String getPortfolioLogPath() {
+        return portfolioLogPath;
+    }
+
+    public void setPortfolioLogPath(String portfolioLogPath) {
+        this.portfolioLogPath = portfolioLogPath;
+    }
+
+    /**
+     * Если включена динамическая идеальная загрузка - заменить идеальный процент
+     * отношением общего веса грузов к общей вместимости (не больше 100%)
+     * @return действующий идеальный процент
+     */
+    public float applyDynamicIdealLoad() {
+        if (useDynamicIdealLoad) {
+            float totalTruckCapacity = 0f;
+            float totalCargoWeight = 0f;
+            for (Truck truck : trucks) {
+                totalTruckCapacity += truck.getCapacity();
+            }
+            for (Cargo cargo : cargos) {
+                totalCargoWeight += cargo.getWeight();
+            }
+            idealLoadPercentage = Math.min((totalCargoWeight / totalTruckCapacity) * 100, 100);
+            System.out.println("Dynamic ideal load percentage calculated: " + idealLoadPercentage + "%");
+            System.out.println("Total truck capacity: " + totalTruckCapacity + ", Total cargo weight: " + totalCargoWeight);
+        }
+        return idealLoadPercentage;
+    }
+}
@@ -0,0 +1,101 @@
+package model;
+
+import util.IntHashSet;
+
+import java.io.PrintWriter;
+import java.util.*;
+
+/**
+ * Текст loading_report.txt: отчеты грузовиков по порядку имен и итоговая сводка.
+ * Один и тот же формат пишут менеджер (после переговоров или решателя) и решатель
+ * из командной строки, поэтому результаты режимов можно сравнивать напрямую.
+ */
+public final class LoadingReport {
+    private LoadingReport() {
+    }
+
+    /**
+     * @param reports отчеты по имени агента-грузовика ("truck-ID")
+     * @param mode режим распределения для сводки
+     * @param wallClockMillis время от начала распределения до отчета
+     */
+    public static void write(PrintWriter writer, LoadingConfiguration config, Map<String, TruckStatusReport> reports,
+                             String mode, long wallClockMillis) {
+        writer.println("TRUCK LOADING REPORT");
+        writer.println("===================");
+        writer.println();
+        writer.println("Report generated at: " + new Date());
+        writer.println();
+
+        // Calculate statistics
+        float totalCapacity = 0;
+        float totalLoad = 0;
+
+        List<String> truckNames = new ArrayList<>(reports.keySet());
+        Collections.sort(truckNames);
+
+        // Считаем фактически загруженные грузы
+        IntHashSet allLoadedCargoIds = new IntHashSet();
+
+        for (String truckName : truckNames) {
+            TruckStatusReport report = reports.get(truckName);
+            writer.println(report.toString());
+            writer.println("------------------");
+
+            totalCapacity += report.getCapacity();
+            totalLoad += report.getCurrentLoad();
+
+            // Добавляем все грузы из отчета в общий список загруженных грузов
+            for (int i = 0; i < report.getCargoCount(); i++) {
+                allLoadedCargoIds.add(report.getCargoId(i));
+            }
+        }
+
+        // Собираем все идентификаторы грузов из конфигурации
+        IntHashSet allCargoIds = new IntHashSet(config.getCargos().size());
+        // Невозможные грузы - это те, которые не были загружены ни в один грузовик
+        IntHashSet trueImpossibleCargos = new IntHashSet();
+        for (Cargo cargo : config.getCargos()) {
+            if (allCargoIds.add(cargo.getId()) && !allLoadedCargoIds.contains(cargo.getId())) {
+                trueImpossibleCargos.add(cargo.getId());
+            }
+        }
+
+        writer.println("SUMMARY");
+        writer.println("=======");
+        writer.println("Total trucks: " + reports.size());
+        writer.println("Total capacity: " + totalCapacity);
+        writer.println("Total load: " + totalLoad);
+        if (totalCapacity > 0) {
+            writer.println("Overall loading percentage: " + String.format("%.2f", totalLoad / totalCapacity * 100) + "%");
+        } else {
+            writer.println("Overall loading percentage: 0% (no capacity)");
+        }
+        writer.println("Ideal loading percentage: " + config.getIdealLoadPercentage() + "%");
+        double totalDeviation = 0;
+        double maxDeviation = 0;
+        for (TruckStatusReport report : reports.values()) {
+            double deviation = Math.abs(report.getLoadPercentage() - config.getIdealLoadPercentage());
+            totalDeviation += deviation;
+            maxDeviation = Math.max(maxDeviation, deviation);
+        }
+        writer.println("Mean deviation from ideal: " +
+                String.format("%.2f", totalDeviation / reports.size()) + "%, max: " +
+                String.format("%.2f", maxDeviation) + "%");
+        writer.println("Mode: " + mode);
+        writer.println("Wall-clock time: " + wallClockMillis + " ms");
+        writer.println();
+
+        // Обработанные грузы - это все загруженные грузы
+        writer.println("Total processed cargos: " + allLoadedCargoIds.size());
+        writer.println("Impossible cargos count: " + trueImpossibleCargos.size());
+        writer.println("Remaining cargos: " + (allCargoIds.size() - allLoadedCargoIds.size()));
+        CargoPool cargoPool = CargoPool.getInstance();
+        writer.println("Claim attempts: " + cargoPool.getClaimAttemptCount() +
+                ", collisions: " + cargoPool.getClaimCollisionCount() +
+                " (" + String.format("%.2f", cargoPool.getClaimCollisionRate() * 100) + "%)");
+        CompatibilityCache cache = CompatibilityCache.getInstance();
+        writer.println("Compatibility cache: hits: " + cache.getHitCount() +
+                ", misses: " + cache.getMissCount() + ", evictions: " + cache.getEvictionCount());
+    }
+}
@@ -0,0 +1,418 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Компактный двоичный формат содержимого ACL-сообщений: груз, список грузов, состояние грузовика
+ * и обмен грузами между грузовиками ({@link CargoSwap}).
+ * В отличие от сериализации Java не пишет описания классов, а каждое имя типа передается
+ * один раз в таблице типов сообщения вместе с номерами несовместимых типов.
+ *
+ * Формат: заголовок [магическое число 'TL', версия схемы, вид содержимого, флаги], затем тело.
+ * Тело: таблица типов (количество, для каждого - имя и ссылки на несовместимые типы)
+ * и данные: ID грузов и числа - varint, веса - float. Если тело больше
+ * {@link #COMPRESSION_THRESHOLD} байт, оно сжимается Deflater'ом и помечается флагом.
+ *
+ * При разборе типы регистрируются в {@link CargoTypeRegistry} получателя, поэтому сообщение
+ * самодостаточно и не зависит от нумерации типов отправителя.
+ */
+public final class PayloadCodec {
+    public static final int SCHEMA_VERSION = 1;
+    // Сжатие окупается только на больших списках: на малых Deflater дороже экономии на передаче
+    public static final int COMPRESSION_THRESHOLD = 64 * 1024;
+    // Язык ACL-сообщений, содержимое которых записано этим форматом
+    public static final String LANGUAGE = "truck-loading-binary";
+
+    private static final byte MAGIC_0 = 'T';
+    private static final byte MAGIC_1 = 'L';
+    private static final int HEADER_BYTES = 5;
+    private static final byte KIND_CARGO = 1;
+    private static final byte KIND_CARGO_LIST = 2;
+    private static final byte KIND_TRUCK = 3;
+    private static final byte KIND_SWAP = 4;
+    private static final byte FLAG_COMPRESSED = 1;
+
+    private PayloadCodec() {
+    }
+
+    public static byte[] encode(Cargo cargo) {
+        Writer writer = new Writer();
+        writer.registerCargo(cargo);
+        writer.writeTypeTable();
+        writer.writeCargo(cargo);
+        return writer.finish(KIND_CARGO, true);
+    }
+
+    public static byte[] encode(List<Cargo> cargos) {
+        return encode(cargos, true);
+    }
+
+    /**
+     * @param allowCompression сжимать ли тело, если оно больше {@link #COMPRESSION_THRESHOLD}
+     */
+    public static byte[] encode(List<Cargo> cargos, boolean allowCompression) {
+        Writer writer = new Writer();
+        for (Cargo cargo : cargos) {
+            writer.registerCargo(cargo);
+        }
+        writer.writeTypeTable();
+        writer.writeCargoList(cargos);
+        return writer.finish(KIND_CARGO_LIST, allowCompression);
+    }
+
+    public static byte[] encode(Truck truck) {
+        List<Cargo> cargos = truck.getLoadedCargos();
+        Writer writer = new Writer();
+        for (Cargo cargo : cargos) {
+            writer.registerCargo(cargo);
+        }
+        for (String type : truck.getIncompatibleCargoTypes()) {
+            writer.registerName(type);
+        }
+        writer.writeTypeTable();
+        writer.writeVarInt(zigZag(truck.getId()));
+        writer.writeFloat(truck.getCapacity());
+        writer.writeVarInt(truck.getIncompatibleCargoTypes().size());
+        for (String type : truck.getIncompatibleCargoTypes()) {
+            writer.writeVarInt(writer.refOf(type));
+        }
+        writer.writeCargoList(cargos);
+        return writer.finish(KIND_TRUCK, true);
+    }
+
+    public static byte[] encode(CargoSwap swap) {
+        Writer writer = new Writer();
+        for (Cargo cargo : swap.getOutgoing()) {
+            writer.registerCargo(cargo);
+        }
+        for (Cargo cargo : swap.getIncoming()) {
+            writer.registerCargo(cargo);
+        }
+        writer.writeTypeTable();
+        writer.writeString(swap.getSwapId());
+        writer.writeCargoList(swap.getOutgoing());
+        writer.writeCargoList(swap.getIncoming());
+        return writer.finish(KIND_SWAP, true);
+    }
+
+    /**
+     * Записано ли содержимое этим форматом
+     */
+    public static boolean isEncoded(byte[] payload) {
+        return payload != null && payload.length >= HEADER_BYTES &&
+                payload[0] == MAGIC_0 && payload[1] == MAGIC_1;
+    }
+
+    /**
+     * Разобрать содержимое сообщения
+     * @return {@link Cargo}, {@link List} грузов, {@link Truck} или {@link CargoSwap}
+     * @throws IOException если содержимое не в этом формате, другой версии схемы или повреждено
+     */
+    public static Object decode(byte[] payload) throws IOException {
+        if (!isEncoded(payload)) {
+            throw new IOException("Содержимое не в двоичном формате грузов");
+        }
+        int version = payload[2] & 0xFF;
+        if (version != SCHEMA_VERSION) {
+            throw new IOException("Неподдерживаемая версия схемы: " + version);
+        }
+        byte kind = payload[3];
+        byte flags = payload[4];
+        try {
+            ByteBuffer body = ByteBuffer.wrap(payload, HEADER_BYTES, payload.length - HEADER_BYTES);
+            if ((flags & FLAG_COMPRESSED) != 0) {
+                body = inflate(body);
+            }
+            Reader reader = new Reader(body);
+            reader.readTypeTable();
+            switch (kind) {
+                case KIND_CARGO:
+                    return reader.readCargo();
+                case KIND_CARGO_LIST:
+                    return reader.readCargoList();
+                case KIND_TRUCK:
+                    return reader.readTruck();
+                case KIND_SWAP:
+                    return new CargoSwap(reader.readString(), reader.readCargoList(), reader.readCargoList());
+                default:
+                    throw new IOException("Неизвестный вид содержимого: " + kind);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Поврежденное содержимое: " + e, e);
+        }
+    }
+
+    private static ByteBuffer inflate(ByteBuffer body) throws IOException {
+        int length = readVarInt(body);
+        byte[] inflated = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            int total = 0;
+            while (total < length) {
+                int read = inflater.inflate(inflated, total, length - total);
+                if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Сжатое содержимое обрывается");
+                }
+                total += read;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Поврежденное сжатое содержимое", e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(inflated);
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Слишком длинное число varint");
+    }
+
+    /**
+     * Запись тела: сначала собираются все типы сообщения, затем пишется таблица и данные
+     */
+    private static final class Writer {
+        private final CargoTypeRegistry registry = CargoTypeRegistry.getInstance();
+        private byte[] buffer = new byte[256];
+        private int length;
+        // Номер типа в реестре -> номер в таблице сообщения + 1 (0 - тип еще не в таблице)
+        private int[] refs = new int[registry.getTypeCount()];
+        private int[] tableTypeIds = new int[8];
+        private boolean[] withRow = new boolean[8];
+        private int tableSize;
+
+        void registerCargo(Cargo cargo) {
+            int typeId = cargo.getTypeId();
+            if (typeId < refs.length && refs[typeId] != 0 && withRow[refs[typeId] - 1]) {
+                return;
+            }
+            int ref = add(typeId);
+            withRow[ref - 1] = true;
+            BitSet row = registry.incompatibilityRow(typeId);
+            for (int other = row.nextSetBit(0); other >= 0; other = row.nextSetBit(other + 1)) {
+                add(other);
+            }
+        }
+
+        /**
+         * Тип, на который только ссылаются: несовместимости известны из строк других типов
+         */
+        void registerName(String type) {
+            add(registry.intern(type));
+        }
+
+        /**
+         * @return номер типа в таблице + 1
+         */
+        private int add(int typeId) {
+            if (typeId >= refs.length) {
+                refs = Arrays.copyOf(refs, Math.max(typeId + 1, registry.getTypeCount()));
+            }
+            if (refs[typeId] == 0) {
+                if (tableSize == tableTypeIds.length) {
+                    tableTypeIds = Arrays.copyOf(tableTypeIds, tableSize * 2);
+                    withRow = Arrays.copyOf(withRow, tableSize * 2);
+                }
+                tableTypeIds[tableSize] = typeId;
+                refs[typeId] = ++tableSize;
+            }
+            return refs[typeId];
+        }
+
+        int refOf(String type) {
+            return refs[registry.idOf(type)] - 1;
+        }
+
+        void writeTypeTable() {
+            writeVarInt(tableSize);
+            for (int i = 0; i < tableSize; i++) {
+                writeString(registry.nameOf(tableTypeIds[i]));
+                if (!withRow[i]) {
+                    writeVarInt(0);
+                    continue;
+                }
+                BitSet row = registry.incompatibilityRow(tableTypeIds[i]);
+                writeVarInt(row.cardinality());
+                for (int other = row.nextSetBit(0); other >= 0; other = row.nextSetBit(other + 1)) {
+                    writeVarInt(refs[other] - 1);
+                }
+            }
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+
+        void writeCargoList(List<Cargo> cargos) {
+            writeVarInt(cargos.size());
+            for (Cargo cargo : cargos) {
+                writeCargo(cargo);
+            }
+        }
+
+        void writeCargo(Cargo cargo) {
+            writeVarInt(zigZag(cargo.getId()));
+            writeVarInt(refs[cargo.getTypeId()] - 1);
+            writeFloat(cargo.getWeight());
+        }
+
+        void writeFloat(float value) {
+            ensure(4);
+            int bits = Float.floatToIntBits(value);
+            buffer[length++] = (byte) (bits >>> 24);
+            buffer[length++] = (byte) (bits >>> 16);
+            buffer[length++] = (byte) (bits >>> 8);
+            buffer[length++] = (byte) bits;
+        }
+
+        void writeVarInt(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        private void ensure(int bytes) {
+            if (length + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(length + bytes, buffer.length * 2));
+            }
+        }
+
+        byte[] finish(byte kind, boolean allowCompression) {
+            boolean compress = allowCompression && length > COMPRESSION_THRESHOLD;
+            ByteArrayOutputStream result = new ByteArrayOutputStream(
+                    HEADER_BYTES + (compress ? length / 2 : length));
+            result.write(MAGIC_0);
+            result.write(MAGIC_1);
+            result.write(SCHEMA_VERSION);
+            result.write(kind);
+            result.write(compress ? FLAG_COMPRESSED : 0);
+            if (!compress) {
+                result.write(buffer, 0, length);
+                return result.toByteArray();
+            }
+            int bodyLength = length;
+            while ((bodyLength & ~0x7F) != 0) {
+                result.write((bodyLength & 0x7F) | 0x80);
+                bodyLength >>>= 7;
+            }
+            result.write(bodyLength);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(buffer, 0, length);
+                deflater.finish();
+                byte[] chunk = new byte[4096];
+                while (!deflater.finished()) {
+                    int written = deflater.deflate(chunk);
+                    result.write(chunk, 0, written);
+                }
+            } finally {
+                deflater.end();
+            }
+            return result.toByteArray();
+        }
+    }
+
+    private static final class Reader {
+        private final ByteBuffer in;
+        private int[] typeIds;
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        void readTypeTable() throws IOException {
+            int count = readLength();
+            String[] names = new String[count];
+            int[][] incompatibleRefs = new int[count][];
+            for (int i = 0; i < count; i++) {
+                names[i] = readString();
+                incompatibleRefs[i] = new int[readLength()];
+                for (int j = 0; j < incompatibleRefs[i].length; j++) {
+                    incompatibleRefs[i][j] = readLength();
+                }
+            }
+            CargoTypeRegistry registry = CargoTypeRegistry.getInstance();
+            typeIds = new int[count];
+            for (int i = 0; i < count; i++) {
+                List<String> incompatible = new ArrayList<>(incompatibleRefs[i].length);
+                for (int ref : incompatibleRefs[i]) {
+                    incompatible.add(names[ref]);
+                }
+                typeIds[i] = registry.register(names[i], incompatible);
+            }
+        }
+
+        Cargo readCargo() throws IOException {
+            int id = unZigZag(readVarInt(in));
+            int typeId = typeIds[readLength()];
+            return new Cargo(id, typeId, in.getFloat());
+        }
+
+        List<Cargo> readCargoList() throws IOException {
+            int count = readLength();
+            List<Cargo> cargos = new ArrayList<>(Math.min(count, in.remaining()));
+            for (int i = 0; i < count; i++) {
+                cargos.add(readCargo());
+            }
+            return cargos;
+        }
+
+        Truck readTruck() throws IOException {
+            Truck truck = new Truck(unZigZag(readVarInt(in)), in.getFloat());
+            int incompatibleCount = readLength();
+            CargoTypeRegistry registry = CargoTypeRegistry.getInstance();
+            for (int i = 0; i < incompatibleCount; i++) {
+                truck.addIncompatibleCargoType(registry.nameOf(typeIds[readLength()]));
+            }
+            for (Cargo cargo : readCargoList()) {
+                truck.restoreCargo(cargo);
+            }
+            return truck;
+        }
+
+        String readString() throws IOException {
+            byte[] bytes = new byte[readLength()];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int readLength() throws IOException {
+            int value = readVarInt(in);
+            if (value < 0) {
+                throw new IOException("Отрицательная длина: " + value);
+            }
+            return value;
+        }
+    }
+}
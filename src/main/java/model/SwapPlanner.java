@@ -0,0 +1,183 @@
+package model;
+
+import java.util.*;
+
+/**
+ * Подбор обмена между перегруженным грузовиком-инициатором и вторым грузовиком.
+ * Инициатор отдает набор грузов, второй грузовик может вернуть один груз: так исправляются
+ * перекосы, которые не исправить передачей в одну сторону (отдать 400 кг и получить 150 кг,
+ * отдать два груза за один).
+ *
+ * Для каждого варианта встречного груза (включая "без встречного") набор инициатора подбирает
+ * {@link TransferSelector} под вес, нужный для выравнивания обоих грузовиков; из вариантов
+ * выбирается тот, что сильнее всего уменьшает выход загрузки обоих грузовиков за допустимое окно.
+ */
+public final class SwapPlanner {
+    // Сколько грузов второго грузовика рассматривается как встречные
+    public static final int MAX_RETURN_CANDIDATES = 32;
+    // Допустимое отклонение от идеальной загрузки, как в TruckAgent
+    private static final float WINDOW_PERCENT = 10;
+
+    private SwapPlanner() {
+    }
+
+    /**
+     * @param outgoingCandidates грузы инициатора, которые он готов отдать (безопасные для снятия)
+     * @param peer снимок состояния второго грузовика
+     * @return обмен или null, если ни один вариант не улучшает загрузку
+     */
+    public static CargoSwap plan(String swapId, Truck initiator, List<Cargo> outgoingCandidates, Truck peer,
+                                 float idealLoadPercentage, long budgetNanos) {
+        if (outgoingCandidates.isEmpty()) {
+            return null;
+        }
+        float initiatorIdeal = initiator.getCapacity() * idealLoadPercentage / 100;
+        float peerIdeal = peer.getCapacity() * idealLoadPercentage / 100;
+        // Два ориентира чистого потока: довести второй грузовик до идеальной загрузки
+        // или до верхней границы окна, если инициатору нужно отдать больше
+        float initiatorExcess = initiator.getCurrentLoad() - initiatorIdeal;
+        if (initiatorExcess <= 0) {
+            return null;
+        }
+        float peerShortage = peerIdeal - peer.getCurrentLoad();
+        float peerRoom = peerIdeal + peer.getCapacity() * WINDOW_PERCENT / 100 - peer.getCurrentLoad();
+        float[] netTargets = {
+                peerShortage > 0 ? Math.min(initiatorExcess, peerShortage) : initiatorExcess,
+                Math.min(initiatorExcess, Math.max(peerRoom, 0))
+        };
+
+        List<Cargo> returnOptions = returnCandidates(initiator, peer);
+        long optionBudget = budgetNanos / (2L * (returnOptions.size() + 1));
+        RemainingTypes peerTypes = new RemainingTypes(peer);
+
+        double bestScore = deviation(initiator, initiator.getCurrentLoad(), idealLoadPercentage) +
+                deviation(peer, peer.getCurrentLoad(), idealLoadPercentage);
+        List<Cargo> bestOutgoing = null;
+        Cargo bestIncoming = null;
+        for (int option = -1; option < returnOptions.size(); option++) {
+            Cargo incoming = option < 0 ? null : returnOptions.get(option);
+            float incomingWeight = incoming != null ? incoming.getWeight() : 0;
+
+            // Отдаваемые грузы должны быть совместимы с тем, что останется у второго грузовика
+            BitSet peerRemaining = peerTypes.withoutOne(incoming);
+            List<Cargo> candidates = new ArrayList<>(outgoingCandidates.size());
+            for (Cargo cargo : outgoingCandidates) {
+                if (cargo.isCompatibleWith(peerRemaining)) {
+                    candidates.add(cargo);
+                }
+            }
+            for (float netTarget : netTargets) {
+                if (netTarget <= 0) {
+                    continue;
+                }
+                List<Cargo> outgoing = TransferSelector.select(initiator, candidates, netTarget + incomingWeight,
+                        optionBudget);
+                if (outgoing.isEmpty()) {
+                    continue;
+                }
+
+                float net = TransferSelector.totalWeight(outgoing) - incomingWeight;
+                float initiatorLoad = initiator.getCurrentLoad() - net;
+                float peerLoad = peer.getCurrentLoad() + net;
+                if (initiatorLoad > initiator.getCapacity() || peerLoad > peer.getCapacity()) {
+                    continue;
+                }
+                double score = deviation(initiator, initiatorLoad, idealLoadPercentage) +
+                        deviation(peer, peerLoad, idealLoadPercentage);
+                int moves = outgoing.size() + (incoming != null ? 1 : 0);
+                int bestMoves = bestOutgoing == null ? Integer.MAX_VALUE : bestOutgoing.size() + (bestIncoming != null ? 1 : 0);
+                // При равном результате предпочитаем меньше перемещаемых грузов
+                if (score < bestScore - 1e-6 || (bestOutgoing != null && score <= bestScore + 1e-6 && moves < bestMoves)) {
+                    bestScore = score;
+                    bestOutgoing = outgoing;
+                    bestIncoming = incoming;
+                }
+            }
+        }
+
+        if (bestOutgoing == null) {
+            return null;
+        }
+        List<Cargo> incoming = bestIncoming != null
+                ? Collections.singletonList(bestIncoming) : Collections.<Cargo>emptyList();
+        return new CargoSwap(swapId, bestOutgoing, incoming);
+    }
+
+    /**
+     * Применим ли обмен к грузовику: отдаваемые грузы загружены, а после их снятия и приема
+     * встречных не превышена вместимость и не осталось несовместимых пар
+     */
+    public static boolean canApply(Truck truck, List<Cargo> outgoing, List<Cargo> incoming) {
+        Truck result = new Truck(truck.getId(), truck.getCapacity());
+        for (Cargo cargo : truck.getLoadedCargos()) {
+            result.restoreCargo(cargo);
+        }
+        for (Cargo cargo : outgoing) {
+            if (!result.containsCargo(cargo.getId())) {
+                return false;
+            }
+            result.removeCargo(cargo);
+        }
+        for (Cargo cargo : incoming) {
+            if (result.containsCargo(cargo.getId()) || !result.canAddCargo(cargo)) {
+                return false;
+            }
+            result.restoreCargo(cargo);
+        }
+        return result.getConflictingPairCount() == 0;
+    }
+
+    /**
+     * Встречные грузы: безопасные для снятия у второго грузовика и совместимые с инициатором.
+     * Если их много, берутся равномерно по весу, чтобы перебор вариантов оставался ограниченным
+     */
+    private static List<Cargo> returnCandidates(Truck initiator, Truck peer) {
+        BitSet initiatorTypes = initiator.getLoadedTypeMask();
+        List<Cargo> candidates = new ArrayList<>();
+        for (Cargo cargo : peer.getLoadedCargos()) {
+            if (cargo.isCompatibleWith(initiatorTypes) && peer.canRemoveCargoSafely(cargo)) {
+                candidates.add(cargo);
+            }
+        }
+        if (candidates.size() <= MAX_RETURN_CANDIDATES) {
+            return candidates;
+        }
+        candidates.sort(Comparator.comparingDouble(Cargo::getWeight));
+        List<Cargo> sampled = new ArrayList<>(MAX_RETURN_CANDIDATES);
+        for (int i = 0; i < MAX_RETURN_CANDIDATES; i++) {
+            sampled.add(candidates.get((int) ((long) i * (candidates.size() - 1) / (MAX_RETURN_CANDIDATES - 1))));
+        }
+        return sampled;
+    }
+
+    /**
+     * Оценка загрузки: главное - выход за окно ±{@link #WINDOW_PERCENT}% от идеальной,
+     * в котором грузовик завершает работу; внутри окна - небольшой вес самого отклонения
+     */
+    private static double deviation(Truck truck, float load, float idealLoadPercentage) {
+        double deviation = Math.abs(load / truck.getCapacity() * 100 - idealLoadPercentage);
+        return Math.max(0, deviation - WINDOW_PERCENT) + 0.01 * deviation;
+    }
+
+    /**
+     * Маска типов второго грузовика после снятия одного груза
+     */
+    private static final class RemainingTypes {
+        private final Truck truck;
+        private final BitSet loaded;
+
+        RemainingTypes(Truck truck) {
+            this.truck = truck;
+            this.loaded = truck.getLoadedTypeMask();
+        }
+
+        BitSet withoutOne(Cargo cargo) {
+            if (cargo == null || truck.getLoadedTypeCount(cargo.getType()) > 1) {
+                return loaded;
+            }
+            BitSet mask = (BitSet) loaded.clone();
+            mask.clear(cargo.getTypeId());
+            return mask;
+        }
+    }
+}
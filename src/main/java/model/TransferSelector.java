@@ -0,0 +1,216 @@
+package model;
+
+import java.util.*;
+
+/**
+ * Выбор набора грузов для передачи другому грузовику: из кандидатов выбирается подмножество,
+ * суммарный вес которого ближе всего к нужному весу обмена.
+ *
+ * До {@link #MEET_IN_THE_MIDDLE_LIMIT} кандидатов задача решается точно перебором половин
+ * ("встреча посередине"), для большего числа - динамикой по весам, округленным до сетки
+ * не более {@link #MAX_DP_CELLS} ячеек. Динамика проверяет бюджет времени после каждого груза
+ * и при его исчерпании возвращает лучший набор из уже рассмотренных грузов.
+ *
+ * Кандидаты должны быть уже отфильтрованы: каждый из них можно безопасно снять с грузовика
+ * и принять получателем. Если в грузовике нет несовместимых пар, снятие любого подмножества
+ * тоже безопасно: оставшиеся грузы - подмножество совместимого набора. Но грузовик может
+ * содержать конфликты (например, восстановленный из сообщения без проверок), поэтому
+ * {@link #select(Truck, List, float, long)} в этом случае проверяет выбранный набор целиком.
+ */
+public final class TransferSelector {
+    public static final int MEET_IN_THE_MIDDLE_LIMIT = 24;
+    public static final int MAX_DP_CELLS = 1 << 16;
+
+    private TransferSelector() {
+    }
+
+    /**
+     * @param budgetNanos время на поиск; по его истечении возвращается лучший найденный набор
+     * @return непустой набор грузов или пустой список, если кандидатов нет
+     */
+    public static List<Cargo> select(List<Cargo> candidates, float targetWeight, long budgetNanos) {
+        if (candidates.isEmpty() || targetWeight <= 0) {
+            return Collections.emptyList();
+        }
+        long deadline = System.nanoTime() + budgetNanos;
+        int[] chosen = candidates.size() <= MEET_IN_THE_MIDDLE_LIMIT
+                ? meetInTheMiddle(candidates, targetWeight)
+                : boundedDp(candidates, targetWeight, deadline);
+        List<Cargo> result = new ArrayList<>(chosen.length);
+        for (int index : chosen) {
+            result.add(candidates.get(index));
+        }
+        return result;
+    }
+
+    /**
+     * Выбор набора для снятия с грузовика: если в грузовике есть несовместимые пары, набор
+     * проверяется так же, как обмен ({@link SwapPlanner#canApply}), - после его снятия пар
+     * остаться не должно
+     * @return набор или пустой список, если кандидатов нет или снятие набора небезопасно
+     */
+    public static List<Cargo> select(Truck truck, List<Cargo> candidates, float targetWeight, long budgetNanos) {
+        List<Cargo> selected = select(candidates, targetWeight, budgetNanos);
+        if (!selected.isEmpty() && truck.getConflictingPairCount() != 0
+                && !SwapPlanner.canApply(truck, selected, Collections.<Cargo>emptyList())) {
+            return Collections.emptyList();
+        }
+        return selected;
+    }
+
+    public static float totalWeight(List<Cargo> cargos) {
+        double total = 0;
+        for (Cargo cargo : cargos) {
+            total += cargo.getWeight();
+        }
+        return (float) total;
+    }
+
+    /**
+     * Точный поиск: все суммы каждой половины, правая половина сортируется,
+     * для каждой суммы левой половины двоичным поиском находится лучшая пара
+     */
+    private static int[] meetInTheMiddle(List<Cargo> candidates, float targetWeight) {
+        int n = candidates.size();
+        int leftSize = n / 2;
+        int rightSize = n - leftSize;
+        double[] leftSums = subsetSums(candidates, 0, leftSize);
+        double[] rightSums = subsetSums(candidates, leftSize, rightSize);
+
+        Integer[] order = new Integer[rightSums.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(mask -> rightSums[mask]));
+        double[] sortedRight = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedRight[i] = rightSums[order[i]];
+        }
+
+        int bestLeft = 0;
+        int bestRight = 0;
+        double bestDiff = Double.MAX_VALUE;
+        int bestCount = Integer.MAX_VALUE;
+        for (int leftMask = 0; leftMask < leftSums.length; leftMask++) {
+            double need = targetWeight - leftSums[leftMask];
+            int position = Arrays.binarySearch(sortedRight, need);
+            if (position < 0) {
+                position = -position - 1;
+            }
+            // Ближайшие суммы правой половины - соседи точки вставки
+            for (int probe = position - 1; probe <= position; probe++) {
+                if (probe < 0 || probe >= sortedRight.length) {
+                    continue;
+                }
+                int rightMask = order[probe];
+                if (leftMask == 0 && rightMask == 0) {
+                    continue;
+                }
+                double diff = Math.abs(need - sortedRight[probe]);
+                int count = Integer.bitCount(leftMask) + Integer.bitCount(rightMask);
+                // При равной точности предпочитаем меньше грузов: меньше сообщений при передаче
+                if (diff < bestDiff - 1e-6 || (Math.abs(diff - bestDiff) <= 1e-6 && count < bestCount)) {
+                    bestDiff = diff;
+                    bestCount = count;
+                    bestLeft = leftMask;
+                    bestRight = rightMask;
+                }
+            }
+        }
+
+        int[] chosen = new int[Integer.bitCount(bestLeft) + Integer.bitCount(bestRight)];
+        int next = 0;
+        for (int i = 0; i < leftSize; i++) {
+            if ((bestLeft & (1 << i)) != 0) {
+                chosen[next++] = i;
+            }
+        }
+        for (int i = 0; i < rightSize; i++) {
+            if ((bestRight & (1 << i)) != 0) {
+                chosen[next++] = leftSize + i;
+            }
+        }
+        return chosen;
+    }
+
+    private static double[] subsetSums(List<Cargo> candidates, int from, int size) {
+        double[] sums = new double[1 << size];
+        for (int mask = 1; mask < sums.length; mask++) {
+            int lowest = Integer.numberOfTrailingZeros(mask);
+            sums[mask] = sums[mask & (mask - 1)] + candidates.get(from + lowest).getWeight();
+        }
+        return sums;
+    }
+
+    /**
+     * Динамика "0/1 рюкзак" по округленным весам. firstItem[s] - груз, которым сумма s была
+     * достигнута впервые; остаток s - w этого груза достижим только более ранними грузами,
+     * поэтому восстановление по цепочке не использует груз дважды.
+     * Суммы больше двойного целевого веса не рассматриваются - они дальше от цели, чем пустой набор.
+     */
+    private static int[] boundedDp(List<Cargo> candidates, float targetWeight, long deadline) {
+        int n = candidates.size();
+        double limit = 2.0 * targetWeight;
+        double scale = Math.min(1.0, (MAX_DP_CELLS - 1) / limit);
+        int cells = (int) Math.ceil(limit * scale) + 1;
+        int[] weights = new int[n];
+        for (int i = 0; i < n; i++) {
+            // Грузы легче шага сетки занимают одну ячейку, чтобы не теряться в сумме
+            weights[i] = Math.max(1, (int) Math.round(candidates.get(i).getWeight() * scale));
+        }
+
+        int[] firstItem = new int[cells];
+        Arrays.fill(firstItem, -1);
+        boolean[] reachable = new boolean[cells];
+        reachable[0] = true;
+        int target = (int) Math.round(targetWeight * scale);
+        for (int i = 0; i < n; i++) {
+            int weight = weights[i];
+            if (weight >= cells) {
+                continue;
+            }
+            for (int sum = cells - 1; sum >= weight; sum--) {
+                if (!reachable[sum] && reachable[sum - weight]) {
+                    reachable[sum] = true;
+                    firstItem[sum] = i;
+                }
+            }
+            if (reachable[target] || System.nanoTime() - deadline > 0) {
+                break;
+            }
+        }
+
+        int best = -1;
+        for (int distance = 0; distance < cells && best < 0; distance++) {
+            if (target - distance > 0 && reachable[target - distance]) {
+                best = target - distance;
+            } else if (target + distance < cells && reachable[target + distance]) {
+                best = target + distance;
+            }
+        }
+        if (best <= 0) {
+            return closestSingle(candidates, targetWeight);
+        }
+
+        int[] chosen = new int[n];
+        int count = 0;
+        for (int sum = best; sum > 0; sum -= weights[firstItem[sum]]) {
+            chosen[count++] = firstItem[sum];
+        }
+        return Arrays.copyOf(chosen, count);
+    }
+
+    /**
+     * Запасной вариант, если динамика не нашла ни одной ненулевой суммы: один груз с весом ближе всего к цели
+     */
+    private static int[] closestSingle(List<Cargo> candidates, float targetWeight) {
+        int best = 0;
+        for (int i = 1; i < candidates.size(); i++) {
+            if (Math.abs(candidates.get(i).getWeight() - targetWeight) <
+                    Math.abs(candidates.get(best).getWeight() - targetWeight)) {
+                best = i;
+            }
+        }
+        return new int[]{best};
+    }
+}
@@ -1,16 +1,41 @@
 package model;
 
+import util.IntIntHashMap;
+
 import java.io.Serializable;
 import java.util.*;
 
+/**
+ * Грузовик с загруженными грузами.
+ * Текущая загрузка, количество грузов каждого типа и позиция каждого груза в списке
+ * поддерживаются при добавлении и удалении, поэтому проверки загрузки и удаление груза
+ * выполняются за O(1) без пересчета по всем грузам.
+ * Загруженные типы дополнительно хранятся маской по номерам {@link CargoTypeRegistry}:
+ * совместимость нового груза проверяется пересечением этой маски со строкой его типа.
+ *
+ * Журнал конфликтов хранит число пар несовместимых загруженных грузов и для каждого типа -
+ * сколько загруженных грузов несовместимо с грузом этого типа. Снять груз безопасно, если после
+ * снятия не остается конфликтующих пар; ответ дается за O(1), а журнал обновляется при добавлении
+ * и удалении груза за число несовместимых с ним типов. Конфликты возможны только у грузовика,
+ * восстановленного из сообщения без проверок, или если несовместимость объявлена после загрузки -
+ * в последнем случае журнал пересчитывается по новой версии матрицы.
+ */
 public class Truck implements Serializable {
     private int id;
     private float capacity;
     private double currentLoad;
     private List<Cargo> loadedCargos;
     private Set<String> loadedCargoTypes;
+    private Map<String, Integer> loadedTypeCounts = new HashMap<>();
+    private IntIntHashMap cargoIndexById = new IntIntHashMap(-1);
+    private BitSet loadedTypeMask = new BitSet();
+    private long loadedTypeSignature; // подпись маски для CompatibilityCache
+    private long stateVersion; // растет при каждом изменении набора грузов
+    // Журнал конфликтов строится по номерам типов этого процесса и не сериализуется
+    private transient int[] conflictDegree;
+    private transient long conflictingPairs;
+    private transient int ledgerVersion; // версия матрицы + 1; 0 - журнал не построен
     private Set<String> incompatibleCargoTypes = new HashSet<>(); // Типы грузов, которые нельзя перевозить
-    private Map<String, Set<String>> typeIncompatibilityMap = new HashMap<>();
 
 
     public Truck(int id, float capacity) {
@@ -26,6 +51,9 @@ public class Truck implements Serializable {
     public void addIncompatibleCargoType(String type) {
         incompatibleCargoTypes.add(type);
     }
+    public Set<String> getIncompatibleCargoTypes() {
+        return Collections.unmodifiableSet(incompatibleCargoTypes);
+    }
     public float getCapacity() {
         return capacity;
     }
@@ -33,6 +61,68 @@ public class Truck implements Serializable {
     public List<Cargo> getLoadedCargos() {
         return new ArrayList<>(loadedCargos);
     }
+
+    public Set<String> getLoadedCargoTypes() {
+        return Collections.unmodifiableSet(loadedCargoTypes);
+    }
+
+    /**
+     * Подпись Зобриста загруженных типов, см. {@link CompatibilityCache}
+     */
+    public long getLoadedTypeSignature() {
+        return loadedTypeSignature;
+    }
+
+    /**
+     * Маска загруженных типов по номерам {@link CargoTypeRegistry} (копия)
+     */
+    public BitSet getLoadedTypeMask() {
+        return (BitSet) loadedTypeMask.clone();
+    }
+
+    /**
+     * Версия состояния: монотонно растет при каждом добавлении и удалении груза.
+     * По ней другие грузовики узнают, устарели ли запомненные ими типы грузов
+     */
+    public long getStateVersion() {
+        return stateVersion;
+    }
+
+    public int getLoadedCargoCount() {
+        return loadedCargos.size();
+    }
+
+    /**
+     * Загружен ли в грузовик груз с указанным ID
+     */
+    public boolean containsCargo(int cargoId) {
+        return cargoIndexById.containsKey(cargoId);
+    }
+
+    /**
+     * Количество загруженных грузов указанного типа
+     */
+    public int getLoadedTypeCount(String type) {
+        Integer count = loadedTypeCounts.get(type);
+        return count != null ? count : 0;
+    }
+    /**
+     * Можно ли снять груз, не оставив в грузовике пар несовместимых грузов
+     */
+    public boolean canRemoveCargoSafely(Cargo cargo) {
+        if (!containsCargo(cargo.getId())) {
+            return conflictingPairs() == 0;
+        }
+        return conflictingPairs() - conflictsOf(cargo.getTypeId()) == 0;
+    }
+
+    /**
+     * Число пар загруженных грузов с несовместимыми типами
+     */
+    public long getConflictingPairCount() {
+        return conflictingPairs();
+    }
+
     public boolean canCarryCargo(Cargo cargo) {
         return !incompatibleCargoTypes.contains(cargo.getType());
     }
@@ -43,49 +133,63 @@ public class Truck implements Serializable {
             return false;
         }
 
-        // Check compatibility
-        for (String loadedType : loadedCargoTypes) {
-            if (cargo.getIncompatibleTypes().contains(loadedType)) {
-                return false;
-            }
-        }
+        // Матрица несовместимости симметрична, поэтому одна проверка покрывает оба направления
+        // Пересечение маски дешевле поиска в CompatibilityCache, поэтому здесь кеш не используется
+        return cargo.isCompatibleWith(loadedTypeMask);
+    }
 
-        // Check if current cargo types are incompatible with new cargo
-        for (String incompatibleType : cargo.getIncompatibleTypes()) {
-            if (loadedCargoTypes.contains(incompatibleType)) {
-                return false;
-            }
+    public void addCargo(Cargo cargo) {
+        if (loadCargo(cargo)) {
+            System.out.println("[DEBUG] Груз " + cargo.getId() + " добавлен в грузовик " + getId());
+        } else {
+            System.out.println("[DEBUG] Груз " + cargo.getId() + " не добавлен в грузовик " + getId());
         }
+    }
 
+    /**
+     * Добавить груз с теми же проверками, что и {@link #addCargo}, но без вывода в лог
+     * (для массовой загрузки по готовому плану)
+     * @return добавлен ли груз
+     */
+    public boolean loadCargo(Cargo cargo) {
+        if (!canAddCargo(cargo) || containsCargo(cargo.getId())) {
+            return false;
+        }
+        place(cargo);
         return true;
     }
 
-    public void addCargo(Cargo cargo) {
-        if (canAddCargo(cargo)) {
-            loadedCargos.add(cargo);
-            loadedCargoTypes.add(cargo.getType());
-
-            // Регистрируем несовместимые типы
-            for (String incompatibleType : cargo.getIncompatibleTypes()) {
-                registerTypeIncompatibility(cargo.getType(), incompatibleType);
-            }
+    /**
+     * Вернуть груз в восстанавливаемое состояние грузовика (при разборе сообщения) без проверок
+     */
+    void restoreCargo(Cargo cargo) {
+        if (!containsCargo(cargo.getId())) {
+            place(cargo);
+        }
+    }
 
-            System.out.println("[DEBUG] Груз " + cargo.getId() + " добавлен в грузовик " + getId());
-        } else {
-            System.out.println("[DEBUG] Груз " + cargo.getId() + " не добавлен в грузовик " + getId());
+    private void place(Cargo cargo) {
+        if (ledgerIsCurrent()) {
+            // Новый груз конфликтует со всеми уже загруженными грузами несовместимых типов
+            conflictingPairs += degreeOf(cargo.getTypeId());
+            adjustDegrees(cargo.getTypeId(), 1);
+        }
+        cargoIndexById.put(cargo.getId(), loadedCargos.size());
+        loadedCargos.add(cargo);
+        stateVersion++;
+        currentLoad += cargo.getWeight();
+        if (loadedTypeCounts.merge(cargo.getType(), 1, Integer::sum) == 1) {
+            loadedCargoTypes.add(cargo.getType());
+            loadedTypeMask.set(cargo.getTypeId());
+            loadedTypeSignature ^= CompatibilityCache.typeKey(cargo.getTypeId());
         }
     }
 
     public void registerTypeIncompatibility(String type, String incompatibleType) {
-        typeIncompatibilityMap.computeIfAbsent(type, k -> new HashSet<>()).add(incompatibleType);
-        typeIncompatibilityMap.computeIfAbsent(incompatibleType, k -> new HashSet<>()).add(type);
+        CargoTypeRegistry.getInstance().register(type, Collections.singletonList(incompatibleType));
     }
     public float getCurrentLoad() {
-        float total = 0;
-        for (Cargo cargo : loadedCargos) {
-            total += cargo.getWeight();
-        }
-        return total;
+        return (float) currentLoad;
     }
     /**
      * Проверяет совместимость переданных типов грузов с текущими грузами в грузовике
@@ -120,16 +224,88 @@ public class Truck implements Serializable {
     public float getLoadPercentage() {
         return (getCurrentLoad() / capacity) * 100;
     }
+    /**
+     * Удалить груз: на его место в списке переносится последний груз, поэтому удаление за O(1)
+     */
     public void removeCargo(Cargo cargo) {
-        loadedCargos.remove(cargo);
-        updateLoadedTypes();
+        int index = cargoIndexById.remove(cargo.getId());
+        if (index < 0) {
+            return;
+        }
+        Cargo removed = loadedCargos.get(index);
+        stateVersion++;
+        if (ledgerIsCurrent()) {
+            adjustDegrees(removed.getTypeId(), -1);
+            conflictingPairs -= degreeOf(removed.getTypeId());
+        }
+        Cargo last = loadedCargos.remove(loadedCargos.size() - 1);
+        if (index < loadedCargos.size()) {
+            loadedCargos.set(index, last);
+            cargoIndexById.put(last.getId(), index);
+        }
+
+        // Накопленная сумма float-весов может уйти от нуля на погрешность округления
+        currentLoad = loadedCargos.isEmpty() ? 0 : currentLoad - removed.getWeight();
+        if (loadedTypeCounts.merge(removed.getType(), -1, Integer::sum) == 0) {
+            loadedTypeCounts.remove(removed.getType());
+            loadedCargoTypes.remove(removed.getType());
+            loadedTypeMask.clear(removed.getTypeId());
+            loadedTypeSignature ^= CompatibilityCache.typeKey(removed.getTypeId());
+        }
+    }
+
+    private long conflictingPairs() {
+        if (!ledgerIsCurrent()) {
+            rebuildLedger();
+        }
+        return conflictingPairs;
+    }
+
+    /**
+     * Со сколькими загруженными грузами конфликтует загруженный груз этого типа
+     */
+    private int conflictsOf(int typeId) {
+        boolean selfIncompatible = CargoTypeRegistry.getInstance().areIncompatible(typeId, typeId);
+        return degreeOf(typeId) - (selfIncompatible ? 1 : 0);
+    }
+
+    private int degreeOf(int typeId) {
+        return typeId < conflictDegree.length ? conflictDegree[typeId] : 0;
+    }
 
+    private void adjustDegrees(int typeId, int delta) {
+        BitSet row = CargoTypeRegistry.getInstance().incompatibilityRow(typeId);
+        for (int other = row.nextSetBit(0); other >= 0; other = row.nextSetBit(other + 1)) {
+            if (other >= conflictDegree.length) {
+                conflictDegree = Arrays.copyOf(conflictDegree, Math.max(other + 1, conflictDegree.length * 2));
+            }
+            conflictDegree[other] += delta;
+        }
     }
-    private void updateLoadedTypes() {
-        loadedCargoTypes.clear();
-        for (Cargo c : loadedCargos) {
-            loadedCargoTypes.add(c.getType());
+
+    private boolean ledgerIsCurrent() {
+        return ledgerVersion == CargoTypeRegistry.getInstance().getMatrixVersion() + 1;
+    }
+
+    /**
+     * Пересчет журнала по количеству грузов каждого типа: O(типов * несовместимых типов)
+     */
+    private void rebuildLedger() {
+        CargoTypeRegistry registry = CargoTypeRegistry.getInstance();
+        int version = registry.getMatrixVersion();
+        conflictDegree = new int[registry.getTypeCount()];
+        conflictingPairs = 0;
+        ledgerVersion = version + 1;
+        for (int typeId = loadedTypeMask.nextSetBit(0); typeId >= 0; typeId = loadedTypeMask.nextSetBit(typeId + 1)) {
+            int count = getLoadedTypeCount(registry.nameOf(typeId));
+            adjustDegrees(typeId, count);
+        }
+        long doubled = 0;
+        for (int typeId = loadedTypeMask.nextSetBit(0); typeId >= 0; typeId = loadedTypeMask.nextSetBit(typeId + 1)) {
+            int count = getLoadedTypeCount(registry.nameOf(typeId));
+            doubled += (long) count * conflictsOf(typeId);
         }
+        conflictingPairs = doubled / 2;
     }
 
     @Override
@@ -0,0 +1,247 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Итоговый отчет грузовика менеджеру в двоичном виде.
+ * Все поля выровнены по 4 байта: заголовок из чисел, таблица имен типов, затем упакованные
+ * массивы - ID грузов, номера типов в таблице, веса, ID обработанных и невозможных грузов.
+ * {@link #wrap(byte[])} не копирует массивы: ID и веса читаются прямо из полученных байтов
+ * через {@link IntBuffer} и {@link FloatBuffer}, разбирается только короткая таблица типов.
+ */
+public final class TruckStatusReport {
+    private static final int MAGIC = 0x54535231; // "TSR1"
+    public static final int SCHEMA_VERSION = 1;
+    // MAGIC, версия, ID, вместимость, загрузка, процент, типов, грузов, обработанных, невозможных
+    private static final int HEADER_INTS = 10;
+
+    private final int truckId;
+    private final float capacity;
+    private final float currentLoad;
+    private final float loadPercentage;
+    private final String[] types;
+    private final IntBuffer cargoIds;
+    private final IntBuffer cargoTypeRefs;
+    private final FloatBuffer cargoWeights;
+    private final IntBuffer processedCargoIds;
+    private final IntBuffer impossibleCargoIds;
+
+    private TruckStatusReport(int truckId, float capacity, float currentLoad, float loadPercentage, String[] types,
+                              IntBuffer cargoIds, IntBuffer cargoTypeRefs, FloatBuffer cargoWeights,
+                              IntBuffer processedCargoIds, IntBuffer impossibleCargoIds) {
+        this.truckId = truckId;
+        this.capacity = capacity;
+        this.currentLoad = currentLoad;
+        this.loadPercentage = loadPercentage;
+        this.types = types;
+        this.cargoIds = cargoIds;
+        this.cargoTypeRefs = cargoTypeRefs;
+        this.cargoWeights = cargoWeights;
+        this.processedCargoIds = processedCargoIds;
+        this.impossibleCargoIds = impossibleCargoIds;
+    }
+
+    /**
+     * Закодировать состояние грузовика
+     */
+    public static byte[] encode(Truck truck, int[] processedCargoIds, int[] impossibleCargoIds) {
+        List<Cargo> cargos = truck.getLoadedCargos();
+        int[] ids = new int[cargos.size()];
+        String[] cargoTypes = new String[cargos.size()];
+        float[] weights = new float[cargos.size()];
+        for (int i = 0; i < ids.length; i++) {
+            Cargo cargo = cargos.get(i);
+            ids[i] = cargo.getId();
+            cargoTypes[i] = cargo.getType();
+            weights[i] = cargo.getWeight();
+        }
+        return encode(truck.getId(), truck.getCapacity(), truck.getCurrentLoad(), truck.getLoadPercentage(),
+                ids, cargoTypes, weights, processedCargoIds, impossibleCargoIds);
+    }
+
+    /**
+     * Закодировать отчет из отдельных полей (например, разобранных из текстового отчета)
+     */
+    public static byte[] encode(int truckId, float capacity, float currentLoad, float loadPercentage,
+                                int[] cargoIds, String[] cargoTypes, float[] cargoWeights,
+                                int[] processedCargoIds, int[] impossibleCargoIds) {
+        Map<String, Integer> refs = new LinkedHashMap<>();
+        int[] typeRefs = new int[cargoIds.length];
+        for (int i = 0; i < cargoIds.length; i++) {
+            Integer ref = refs.get(cargoTypes[i]);
+            if (ref == null) {
+                ref = refs.size();
+                refs.put(cargoTypes[i], ref);
+            }
+            typeRefs[i] = ref;
+        }
+        List<byte[]> names = new ArrayList<>(refs.size());
+        int namesBytes = 0;
+        for (String type : refs.keySet()) {
+            byte[] name = type.getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            namesBytes += 4 + padded(name.length);
+        }
+
+        int size = HEADER_INTS * 4 + namesBytes +
+                (3 * cargoIds.length + processedCargoIds.length + impossibleCargoIds.length) * 4;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(SCHEMA_VERSION).putInt(truckId)
+                .putFloat(capacity).putFloat(currentLoad).putFloat(loadPercentage)
+                .putInt(names.size()).putInt(cargoIds.length)
+                .putInt(processedCargoIds.length).putInt(impossibleCargoIds.length);
+        for (byte[] name : names) {
+            buffer.putInt(name.length).put(name);
+            buffer.position(buffer.position() + padded(name.length) - name.length);
+        }
+        buffer.asIntBuffer().put(cargoIds);
+        buffer.position(buffer.position() + cargoIds.length * 4);
+        buffer.asIntBuffer().put(typeRefs);
+        buffer.position(buffer.position() + typeRefs.length * 4);
+        buffer.asFloatBuffer().put(cargoWeights, 0, cargoIds.length);
+        buffer.position(buffer.position() + cargoIds.length * 4);
+        buffer.asIntBuffer().put(processedCargoIds);
+        buffer.position(buffer.position() + processedCargoIds.length * 4);
+        buffer.asIntBuffer().put(impossibleCargoIds);
+        return buffer.array();
+    }
+
+    /**
+     * Является ли содержимое сообщения двоичным отчетом
+     */
+    public static boolean isReport(byte[] payload) {
+        return payload != null && payload.length >= HEADER_INTS * 4 && ByteBuffer.wrap(payload).getInt() == MAGIC;
+    }
+
+    /**
+     * Представление отчета поверх полученных байтов без копирования массивов
+     * @throws IOException если содержимое не является отчетом этой версии или обрезано
+     */
+    public static TruckStatusReport wrap(byte[] payload) throws IOException {
+        if (!isReport(payload)) {
+            throw new IOException("Содержимое не является отчетом грузовика");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(payload).asReadOnlyBuffer();
+        buffer.getInt();
+        int version = buffer.getInt();
+        if (version != SCHEMA_VERSION) {
+            throw new IOException("Неподдерживаемая версия отчета: " + version);
+        }
+        int truckId = buffer.getInt();
+        float capacity = buffer.getFloat();
+        float currentLoad = buffer.getFloat();
+        float loadPercentage = buffer.getFloat();
+        int typeCount = buffer.getInt();
+        int cargoCount = buffer.getInt();
+        int processedCount = buffer.getInt();
+        int impossibleCount = buffer.getInt();
+        if (typeCount < 0 || cargoCount < 0 || processedCount < 0 || impossibleCount < 0) {
+            throw new IOException("Отрицательный размер в заголовке отчета");
+        }
+        try {
+            String[] types = new String[typeCount];
+            for (int i = 0; i < typeCount; i++) {
+                int length = buffer.getInt();
+                types[i] = new String(payload, buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + padded(length));
+            }
+            IntBuffer ids = slice(buffer, cargoCount).asIntBuffer();
+            IntBuffer typeRefs = slice(buffer, cargoCount).asIntBuffer();
+            FloatBuffer weights = slice(buffer, cargoCount).asFloatBuffer();
+            IntBuffer processed = slice(buffer, processedCount).asIntBuffer();
+            IntBuffer impossible = slice(buffer, impossibleCount).asIntBuffer();
+            for (int i = 0; i < cargoCount; i++) {
+                if (typeRefs.get(i) < 0 || typeRefs.get(i) >= typeCount) {
+                    throw new IOException("Неверная ссылка на тип у груза " + ids.get(i));
+                }
+            }
+            return new TruckStatusReport(truckId, capacity, currentLoad, loadPercentage, types,
+                    ids, typeRefs, weights, processed, impossible);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException | java.nio.BufferUnderflowException e) {
+            throw new IOException("Отчет грузовика обрезан или поврежден", e);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int ints) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(Math.multiplyExact(ints, 4));
+        buffer.position(buffer.position() + ints * 4);
+        return slice;
+    }
+
+    private static int padded(int length) {
+        return (length + 3) & ~3;
+    }
+
+    public int getTruckId() {
+        return truckId;
+    }
+
+    public float getCapacity() {
+        return capacity;
+    }
+
+    public float getCurrentLoad() {
+        return currentLoad;
+    }
+
+    public float getLoadPercentage() {
+        return loadPercentage;
+    }
+
+    public int getCargoCount() {
+        return cargoIds.limit();
+    }
+
+    public int getCargoId(int index) {
+        return cargoIds.get(index);
+    }
+
+    public String getCargoType(int index) {
+        return types[cargoTypeRefs.get(index)];
+    }
+
+    public float getCargoWeight(int index) {
+        return cargoWeights.get(index);
+    }
+
+    /**
+     * Типы загруженных грузов (по одному разу)
+     */
+    public List<String> getCargoTypes() {
+        return Collections.unmodifiableList(Arrays.asList(types));
+    }
+
+    /**
+     * ID обработанных грузов: представление только для чтения поверх байтов сообщения
+     */
+    public IntBuffer getProcessedCargoIds() {
+        return processedCargoIds.duplicate();
+    }
+
+    public IntBuffer getImpossibleCargoIds() {
+        return impossibleCargoIds.duplicate();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Truck ID: ").append(truckId).append("\n");
+        sb.append("Capacity: ").append(capacity).append("\n");
+        sb.append("Current Load: ").append(currentLoad).append(" (").append(loadPercentage).append("%)\n");
+        sb.append("Loaded Cargo Types: ").append(new HashSet<>(Arrays.asList(types))).append("\n");
+        sb.append("Cargos: \n");
+
+        for (int i = 0; i < getCargoCount(); i++) {
+            sb.append("  - Cargo ").append(getCargoId(i)).append(" (Type: ").append(getCargoType(i))
+                    .append(", Weight: ").append(getCargoWeight(i)).append(")\n");
+        }
+
+        return sb.toString();
+    }
+}
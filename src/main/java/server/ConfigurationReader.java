@@ -0,0 +1,136 @@
+package server;
+
+import model.Cargo;
+import model.CargoTypeRegistry;
+import model.LoadingConfiguration;
+import model.Truck;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Чтение config.txt. Вынесено из {@link ServerMain}, чтобы конфигурацию можно было прочитать
+ * без запуска JADE (например, решателем из командной строки)
+ */
+public final class ConfigurationReader {
+    private ConfigurationReader() {
+    }
+
+    /**
+     * @return конфигурация или null, если файл не найден или не читается
+     */
+    public static LoadingConfiguration read(String filePath) {
+        LoadingConfiguration config = new LoadingConfiguration();
+        List<Truck> trucks = new ArrayList<>();
+        List<Cargo> cargos = new ArrayList<>();
+
+        Path path = Paths.get(filePath);
+
+        try {
+            if (Files.exists(path)) {
+                System.out.println("Чтение конфигурации из файла: " + path.toAbsolutePath());
+                try (BufferedReader reader = Files.newBufferedReader(path)) {
+                    parseConfigFile(reader, trucks, cargos, config);
+                }
+            } else {
+                // Если файл не найден в файловой системе, пробуем ресурсы класса (для обратной совместимости)
+                System.out.println("Файл не найден в файловой системе. Попытка загрузки из ресурсов: " + filePath);
+                try (InputStream inputStream = ConfigurationReader.class.getClassLoader().getResourceAsStream(filePath)) {
+                    if (inputStream == null) {
+                        System.err.println("Ошибка: Файл конфигурации не найден ни в файловой системе, ни в ресурсах: " + filePath);
+                        return null;
+                    }
+                    try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+                        parseConfigFile(reader, trucks, cargos, config);
+                    }
+                }
+            }
+
+            config.setTrucks(trucks);
+            config.setCargos(cargos);
+
+        } catch (IOException e) {
+            System.err.println("Ошибка при чтении файла конфигурации: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+
+        return config;
+    }
+    private static void parseConfigFile(BufferedReader reader, List<Truck> trucks, List<Cargo> cargos, LoadingConfiguration config) throws IOException {
+        String line;
+        String section = "";
+        float idealLoadPercentage = 50.0f;
+        boolean useDynamicIdealLoad = false;
+
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            if (line.startsWith("[") && line.endsWith("]")) {
+                section = line.substring(1, line.length() - 1);
+                continue;
+            }
+
+            if (section.equals("TRUCKS")) {
+                String[] parts = line.split(",");
+                if (parts.length >= 2) {
+                    int id = Integer.parseInt(parts[0].trim());
+                    float capacity = Float.parseFloat(parts[1].trim());
+                    trucks.add(new Truck(id, capacity));
+                }
+            } else if (section.equals("CARGOS")) {
+                String[] parts = line.split(",");
+                if (parts.length >= 3) {
+                    int id = Integer.parseInt(parts[0].trim());
+                    String type = parts[1].trim();
+                    float weight = Float.parseFloat(parts[2].trim());
+
+                    List<String> incompatibleTypes = new ArrayList<>();
+                    if (parts.length > 3) {
+                        String[] incompatible = parts[3].trim().split(";");
+                        incompatibleTypes.addAll(Arrays.asList(incompatible));
+                    }
+
+                    // Тип и его несовместимости заносятся в общий реестр один раз на тип
+                    int typeId = CargoTypeRegistry.getInstance().register(type, incompatibleTypes);
+                    cargos.add(new Cargo(id, typeId, weight));
+                }
+            } else if (section.equals("SETTINGS")) {
+                String[] parts = line.split("=");
+                if (parts.length == 2) {
+                    String key = parts[0].trim();
+                    String value = parts[1].trim();
+
+                    if (key.equals("idealLoadPercentage")) {
+                        idealLoadPercentage = Float.parseFloat(value);
+                        config.setIdealLoadPercentage(idealLoadPercentage);
+                    } else if (key.equals("useDynamicIdealLoad")) {
+                        useDynamicIdealLoad = Boolean.parseBoolean(value);
+                        config.setUseDynamicIdealLoad(useDynamicIdealLoad);
+                    } else if (key.equals("journal")) {
+                        config.setJournalEnabled(Boolean.parseBoolean(value));
+                    } else if (key.equals("journalPath")) {
+                        config.setJournalPath(value);
+                    } else if (key.equals("textReports")) {
+                        config.setTextReports(Boolean.parseBoolean(value));
+                    } else if (key.equals("mode")) {
+                        config.setMode(value);
+                    } else if (key.equals("postOptimize")) {
+                        config.setPostOptimize(Boolean.parseBoolean(value));
+                    } else if (key.equals("solverTimeLimitMs")) {
+                        config.setSolverTimeLimitMs(Long.parseLong(value));
+                    } else if (key.equals("portfolioLog")) {
+                        config.setPortfolioLogPath(value);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -8,11 +8,11 @@ import jade.wrapper.AgentController;
 import jade.wrapper.StaleProxyException;
 import model.Cargo;
 import model.CargoPool;
+import model.CargoPoolJournal;
 import model.LoadingConfiguration;
 import model.Truck;
 
 import java.io.*;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
@@ -32,7 +32,7 @@ public class ServerMain {
             System.out.println("Использую файл конфигурации: " + configPath);
 
             // Чтение конфигурации из файла
-            LoadingConfiguration config = readConfiguration(configPath);
+            LoadingConfiguration config = ConfigurationReader.read(configPath);
             if (config == null || config.getTrucks() == null || config.getCargos() == null) {
                 System.out.println("Ошибка: Конфигурация не загружена!");
                 return;
@@ -47,6 +47,16 @@ public class ServerMain {
                 System.out.println("Ошибка: Нет грузов в конфигурации!");
                 return;
             }
+
+            // Пул и журнал готовятся до запуска менеджера: грузовики должны стартовать
+            // уже с грузами, взятыми до сбоя
+            CargoPool cargoPool = CargoPool.getInstance();
+            cargoPool.initializePool(config.getCargos());
+            System.out.println("Пул грузов инициализирован с " + config.getCargos().size() + " грузами");
+            if (config.isJournalEnabled()) {
+                recoverFromJournal(config, cargoPool);
+            }
+
             // Запуск JADE Runtime
             Runtime rt = Runtime.instance();
 
@@ -65,9 +75,6 @@ public class ServerMain {
                     "agents.LoadingManagerAgent",
                     new Object[]{config});
             managerAgent.start();
-            CargoPool cargoPool = CargoPool.getInstance();
-            cargoPool.initializePool(config.getCargos());
-            System.out.println("Пул грузов инициализирован с " + config.getCargos().size() + " грузами");
 
             System.out.println("Сервер МАС запущен успешно на порту 1099.");
             System.out.println("Запустите клиентов для добавления агентов-грузовиков.");
@@ -77,6 +84,40 @@ public class ServerMain {
         }
     }
 
+    /**
+     * Подключить журнал пула и, если остались файлы прерванного запуска, восстановить по ним
+     * взятые грузы: каждый груз возвращается в грузовик, который его забрал.
+     * Грузы, владельца которых нет в конфигурации, возвращаются в пул.
+     */
+    private static void recoverFromJournal(LoadingConfiguration config, CargoPool cargoPool) throws IOException {
+        Path journalPath = Paths.get(config.getJournalPath());
+        CargoPoolJournal.Recovery recovery = CargoPoolJournal.recover(journalPath);
+        cargoPool.attachJournal(CargoPoolJournal.open(journalPath));
+        cargoPool.restore(recovery);
+        if (recovery.isEmpty()) {
+            return;
+        }
+
+        Map<String, Truck> trucksByAgent = new HashMap<>();
+        for (Truck truck : config.getTrucks()) {
+            trucksByAgent.put("truck-" + truck.getId(), truck);
+        }
+        int reloaded = 0;
+        for (Cargo cargo : config.getCargos()) {
+            if (recovery.getState(cargo.getId()) != CargoPool.TAKEN) {
+                continue;
+            }
+            Truck truck = trucksByAgent.get(recovery.getOwner(cargo.getId()));
+            if (truck != null && truck.canAddCargo(cargo)) {
+                truck.addCargo(cargo);
+                reloaded++;
+            } else {
+                cargoPool.returnCargo(cargo);
+            }
+        }
+        System.out.println("Восстановлено из журнала: " + reloaded + " грузов возвращено в грузовики");
+    }
+
     // Сохранение конфигурации для клиентов
     private static void saveClientConfiguration(LoadingConfiguration config, int startIndex) throws IOException {
         List<Truck> clientTrucks = new ArrayList<>();
@@ -94,102 +135,4 @@ public class ServerMain {
             oos.writeObject(clientConfig);
         }
     }
-
-    private static LoadingConfiguration readConfiguration(String filePath) {
-        LoadingConfiguration config = new LoadingConfiguration();
-        List<Truck> trucks = new ArrayList<>();
-        List<Cargo> cargos = new ArrayList<>();
-        float idealLoadPercentage = 50.0f;
-        boolean useDynamicIdealLoad = false;
-
-        Path path = Paths.get(filePath);
-
-        try {
-            if (Files.exists(path)) {
-                System.out.println("Чтение конфигурации из файла: " + path.toAbsolutePath());
-                try (BufferedReader reader = Files.newBufferedReader(path)) {
-                    parseConfigFile(reader, trucks, cargos, config);
-                }
-            } else {
-                // Если файл не найден в файловой системе, пробуем ресурсы класса (для обратной совместимости)
-                System.out.println("Файл не найден в файловой системе. Попытка загрузки из ресурсов: " + filePath);
-                try (InputStream inputStream = ServerMain.class.getClassLoader().getResourceAsStream(filePath)) {
-                    if (inputStream == null) {
-                        System.err.println("Ошибка: Файл конфигурации не найден ни в файловой системе, ни в ресурсах: " + filePath);
-                        return null;
-                    }
-                    try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-                        parseConfigFile(reader, trucks, cargos, config);
-                    }
-                }
-            }
-
-            config.setTrucks(trucks);
-            config.setCargos(cargos);
-
-        } catch (IOException e) {
-            System.err.println("Ошибка при чтении файла конфигурации: " + e.getMessage());
-            e.printStackTrace();
-            return null;
-        }
-
-        return config;
-    }
-    private static void parseConfigFile(BufferedReader reader, List<Truck> trucks, List<Cargo> cargos, LoadingConfiguration config) throws IOException {
-        String line;
-        String section = "";
-        float idealLoadPercentage = 50.0f;
-        boolean useDynamicIdealLoad = false;
-
-        while ((line = reader.readLine()) != null) {
-            line = line.trim();
-
-            if (line.isEmpty() || line.startsWith("#")) {
-                continue;
-            }
-
-            if (line.startsWith("[") && line.endsWith("]")) {
-                section = line.substring(1, line.length() - 1);
-                continue;
-            }
-
-            if (section.equals("TRUCKS")) {
-                String[] parts = line.split(",");
-                if (parts.length >= 2) {
-                    int id = Integer.parseInt(parts[0].trim());
-                    float capacity = Float.parseFloat(parts[1].trim());
-                    trucks.add(new Truck(id, capacity));
-                }
-            } else if (section.equals("CARGOS")) {
-                String[] parts = line.split(",");
-                if (parts.length >= 3) {
-                    int id = Integer.parseInt(parts[0].trim());
-                    String type = parts[1].trim();
-                    float weight = Float.parseFloat(parts[2].trim());
-
-                    List<String> incompatibleTypes = new ArrayList<>();
-                    if (parts.length > 3) {
-                        String[] incompatible = parts[3].trim().split(";");
-                        incompatibleTypes.addAll(Arrays.asList(incompatible));
-                    }
-
-                    cargos.add(new Cargo(id, type, weight, incompatibleTypes));
-                }
-            } else if (section.equals("SETTINGS")) {
-                String[] parts = line.split("=");
-                if (parts.length == 2) {
-                    String key = parts[0].trim();
-                    String value = parts[1].trim();
-
-                    if (key.equals("idealLoadPercentage")) {
-                        idealLoadPercentage = Float.parseFloat(value);
-                        config.setIdealLoadPercentage(idealLoadPercentage);
-                    } else if (key.equals("useDynamicIdealLoad")) {
-                        useDynamicIdealLoad = Boolean.parseBoolean(value);
-                        config.setUseDynamicIdealLoad(useDynamicIdealLoad);
-                    }
-                }
-            }
-        }
-    }
-}
\ No newline at end of file
+}
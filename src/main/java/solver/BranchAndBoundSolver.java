@@ -0,0 +1,318 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.DoubleAccumulator;
+
+/**
+ * Точный поиск с ветвями и границами по лексикографической целевой функции
+ * ({@link LoadingPlan#isBetter}): наименьший вес нераспределенных грузов, среди таких планов -
+ * минимальная сумма отклонений загрузки от идеальной.
+ * Грузы перебираются от тяжелых к легким; ветви узла - каждый грузовик, куда груз помещается
+ * и совместим по типам, и "груз не распределен" (иногда тяжелый груз выгоднее оставить,
+ * чтобы поместились несколько легких).
+ *
+ * Отсечения:
+ * <ul>
+ *     <li>нижняя граница нераспределенного веса: уже оставленные грузы плюс остаток веса,
+ *     не помещающийся в свободную вместимость всего парка;</li>
+ *     <li>нижняя граница отклонения: загрузка грузовика только растет, поэтому превышение идеальной
+ *     остается; недогруз можно уменьшить не больше, чем весом оставшихся грузов, - оставшийся
+ *     вес раскладывается в первую очередь в грузовики меньшей вместимости (там килограмм дает
+ *     больше процентов), пока не кончится или не закроет весь недогруз;</li>
+ *     <li>вместимость и совместимость типов - ветвь не создается;</li>
+ *     <li>симметрия: из пустых грузовиков одной вместимости пробуется только первый,
+ *     одинаковые грузы (тип и вес) получают неубывающие номера грузовиков.</li>
+ * </ul>
+ * Узел отсекается, если пара границ не лучше лучшего плана. Начальный лучший план - лучший
+ * из FFD и BFD; каждый узел также предлагает план "остальные грузы не распределены".
+ *
+ * Верхние уровни дерева выполняются как задачи {@link SolverPool} с перехватом работы,
+ * глубже - обычный поиск в глубину с откатом ходов. При истечении времени возвращается
+ * лучший план и доказанный разрыв: наименьшая нижняя граница отклонения брошенных поддеревьев.
+ * Если брошенное поддерево могло дать меньший нераспределенный вес, отклонение не доказано
+ * (граница 0).
+ * Так же поиск завершается, если общий лучший план остановлен (в портфеле).
+ */
+public final class BranchAndBoundSolver implements CooperativeSolver {
+    public static final String NAME = "exact";
+    private static final double EPSILON = 1e-9;
+    // Через сколько узлов проверяется срок
+    private static final int CHECK_INTERVAL = 256;
+    // Порог очереди пула, ниже которого узел отдает ветви на перехват
+    private static final int SPLIT_QUEUE_THRESHOLD = 2;
+    // Поддеревья меньшей глубины не отдаются на перехват: копия состояния дороже их обхода
+    private static final int MIN_SPLIT_DEPTH = 8;
+
+    private final long timeLimitMillis;
+
+    public BranchAndBoundSolver(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public LoadingPlan solve(LoadingProblem problem) {
+        LoadingPlan ffd = new GreedyDecreasingSolver(false).solve(problem);
+        LoadingPlan bfd = new GreedyDecreasingSolver(true).solve(problem);
+        return solve(problem, new Incumbent(bfd.isBetterThan(ffd) ? bfd : ffd));
+    }
+
+    /**
+     * Поиск с общим лучшим планом (его могут одновременно улучшать другие решатели)
+     * @return лучший план с нижней границей, доказанной этим поиском
+     */
+    @Override
+    public LoadingPlan solve(LoadingProblem problem, Incumbent incumbent) {
+        Search search = new Search(problem, incumbent, System.nanoTime() + timeLimitMillis * 1_000_000L);
+        SolverPool.get().invoke(new Node(search, new PlanState(problem), 0));
+        LoadingPlan best = incumbent.get();
+        double lowerBound = search.abandonedUnassigned.get() < best.getUnassignedWeight() - EPSILON
+                ? 0 : Math.min(search.abandonedBound.get(), best.getDeviation());
+        return best.withSolver(best.getSolverName(), lowerBound);
+    }
+
+    /**
+     * Общие для всех задач поиска данные
+     */
+    private static final class Search {
+        final LoadingProblem problem;
+        final Incumbent incumbent;
+        final long deadline;
+        final int[] order;
+        // Вес грузов order[depth..] - сколько еще можно добавить в грузовики
+        final double[] remainingWeight;
+        // Груз order[depth] совпадает с предыдущим по типу и весу
+        final boolean[] sameAsPrevious;
+        // Первый грузовик той же вместимости для каждого грузовика
+        final int[] capacityClass;
+        // Грузовики по возрастанию вместимости - порядок заполнения недогруза в нижней границе
+        final int[] byCapacity;
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        // Наименьшие нижние границы отклонения и нераспределенного веса поддеревьев, брошенных по истечении времени
+        final DoubleAccumulator abandonedBound = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+        final DoubleAccumulator abandonedUnassigned = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+
+        Search(LoadingProblem problem, Incumbent incumbent, long deadline) {
+            this.problem = problem;
+            this.incumbent = incumbent;
+            this.deadline = deadline;
+            int n = problem.getCargoCount();
+            Integer[] boxed = new Integer[n];
+            for (int c = 0; c < n; c++) {
+                boxed[c] = c;
+            }
+            // Одинаковые грузы должны стоять рядом: при равном весе - по типу
+            Arrays.sort(boxed, (a, b) -> problem.weights[a] != problem.weights[b]
+                    ? Float.compare(problem.weights[b], problem.weights[a])
+                    : Integer.compare(problem.typeIds[a], problem.typeIds[b]));
+            this.order = new int[n];
+            this.sameAsPrevious = new boolean[n];
+            for (int depth = 0; depth < n; depth++) {
+                order[depth] = boxed[depth];
+                sameAsPrevious[depth] = depth > 0
+                        && problem.weights[order[depth]] == problem.weights[order[depth - 1]]
+                        && problem.typeIds[order[depth]] == problem.typeIds[order[depth - 1]];
+            }
+            this.remainingWeight = new double[n + 1];
+            for (int depth = n - 1; depth >= 0; depth--) {
+                remainingWeight[depth] = remainingWeight[depth + 1] + problem.weights[order[depth]];
+            }
+
+            int m = problem.getTruckCount();
+            this.capacityClass = new int[m];
+            for (int t = 0; t < m; t++) {
+                capacityClass[t] = t;
+                for (int other = 0; other < t; other++) {
+                    if (problem.capacities[other] == problem.capacities[t]) {
+                        capacityClass[t] = other;
+                        break;
+                    }
+                }
+            }
+            Integer[] trucks = new Integer[m];
+            for (int t = 0; t < m; t++) {
+                trucks[t] = t;
+            }
+            Arrays.sort(trucks, (a, b) -> Float.compare(problem.capacities[a], problem.capacities[b]));
+            this.byCapacity = new int[m];
+            for (int t = 0; t < m; t++) {
+                byCapacity[t] = trucks[t];
+            }
+        }
+
+        /**
+         * Нижняя граница нераспределенного веса для всех продолжений состояния:
+         * уже оставленные грузы и остаток, которому не хватит свободной вместимости
+         */
+        double unassignedBound(PlanState state, int depth) {
+            double free = 0;
+            for (int t = 0; t < problem.getTruckCount(); t++) {
+                free += problem.capacities[t] - state.load(t);
+            }
+            double skipped = state.unassignedWeight() - remainingWeight[depth];
+            return skipped + Math.max(0, remainingWeight[depth] - free);
+        }
+
+        /**
+         * Нижняя граница суммы отклонений для всех продолжений состояния
+         */
+        double lowerBound(PlanState state, int depth) {
+            double bound = 0;
+            double remaining = remainingWeight[depth];
+            float ideal = problem.getIdealLoadPercentage();
+            for (int t : byCapacity) {
+                double percentage = state.load(t) / problem.capacities[t] * 100;
+                if (percentage >= ideal) {
+                    bound += percentage - ideal;
+                } else {
+                    double missing = (ideal - percentage) * problem.capacities[t] / 100;
+                    double filled = Math.min(missing, remaining);
+                    remaining -= filled;
+                    bound += (missing - filled) / problem.capacities[t] * 100;
+                }
+            }
+            return bound;
+        }
+    }
+
+    private static final class Node extends RecursiveAction {
+        private final Search search;
+        private final PlanState state;
+        private final int depth;
+        private final List<Node> forked = new ArrayList<>();
+        private int nodes;
+
+        Node(Search search, PlanState state, int depth) {
+            this.search = search;
+            this.state = state;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            explore(depth);
+            for (Node node : forked) {
+                node.join();
+            }
+        }
+
+        private boolean timeIsUp() {
+            if (search.timedOut.get()) {
+                return true;
+            }
+            if (++nodes % CHECK_INTERVAL == 0
+                    && (System.nanoTime() - search.deadline >= 0 || search.incumbent.isStopped())) {
+                search.timedOut.set(true);
+                return true;
+            }
+            return false;
+        }
+
+        private void explore(int level) {
+            double unassignedBound = search.unassignedBound(state, level);
+            double bound = search.lowerBound(state, level);
+            LoadingPlan best = search.incumbent.get();
+            if (!LoadingPlan.isBetter(unassignedBound, bound, best.getUnassignedWeight(), best.getDeviation())) {
+                return;
+            }
+            if (timeIsUp()) {
+                abandon(unassignedBound, bound);
+                return;
+            }
+            search.incumbent.offer(state, NAME);
+            if (level == search.order.length) {
+                return;
+            }
+
+            int cargo = search.order[level];
+            int[] choices = choices(cargo, level);
+            for (int i = 0; i < choices.length; i++) {
+                int truck = choices[i];
+                if (search.timedOut.get()) {
+                    // Оставшиеся ветви не просмотрены: их границы не ниже границ узла
+                    abandon(unassignedBound, bound);
+                    return;
+                }
+                if (i < choices.length - 1 && search.order.length - level > MIN_SPLIT_DEPTH
+                        && getSurplusQueuedTaskCount() < SPLIT_QUEUE_THRESHOLD) {
+                    PlanState child = state.copy();
+                    if (truck != PlanState.UNASSIGNED) {
+                        child.place(cargo, truck);
+                    }
+                    Node node = new Node(search, child, level + 1);
+                    node.fork();
+                    forked.add(node);
+                } else if (truck != PlanState.UNASSIGNED) {
+                    state.place(cargo, truck);
+                    explore(level + 1);
+                    state.remove(cargo);
+                } else {
+                    explore(level + 1);
+                }
+            }
+        }
+
+        private void abandon(double unassignedBound, double bound) {
+            search.abandonedUnassigned.accumulate(unassignedBound);
+            search.abandonedBound.accumulate(bound);
+        }
+
+        /**
+         * Ветви узла: подходящие грузовики по возрастанию прироста отклонения, затем "не распределен"
+         */
+        private int[] choices(int cargo, int level) {
+            LoadingProblem problem = search.problem;
+            int m = problem.getTruckCount();
+            // Одинаковые грузы - в неубывающем порядке грузовиков ("не распределен" - последний)
+            int minTruck = 0;
+            if (search.sameAsPrevious[level]) {
+                int previous = state.truckOf(search.order[level - 1]);
+                minTruck = previous == PlanState.UNASSIGNED ? m : previous;
+            }
+
+            int count = 0;
+            int[] trucks = new int[m + 1];
+            double[] deltas = new double[m];
+            for (int t = minTruck; t < m; t++) {
+                if (state.isEmpty(t) && hasEmptyEarlierTwin(t)) {
+                    continue;
+                }
+                if (state.canPlace(cargo, t)) {
+                    deltas[t] = state.deviationDelta(t, problem.weights[cargo]);
+                    trucks[count++] = t;
+                }
+            }
+            Integer[] sorted = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                sorted[i] = trucks[i];
+            }
+            Arrays.sort(sorted, (a, b) -> Double.compare(deltas[a], deltas[b]));
+            for (int i = 0; i < count; i++) {
+                trucks[i] = sorted[i];
+            }
+            trucks[count++] = PlanState.UNASSIGNED;
+            return Arrays.copyOf(trucks, count);
+        }
+
+        /**
+         * Есть ли пустой грузовик той же вместимости с меньшим номером
+         */
+        private boolean hasEmptyEarlierTwin(int truck) {
+            LoadingProblem problem = search.problem;
+            for (int other = search.capacityClass[truck]; other < truck; other++) {
+                if (problem.capacities[other] == problem.capacities[truck] && state.isEmpty(other)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
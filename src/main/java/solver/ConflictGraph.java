@@ -0,0 +1,138 @@
+package solver;
+
+import java.util.*;
+
+/**
+ * Граф конфликтов типов задачи: вершины - типы, встречающиеся среди грузов, ребро - пара
+ * несовместимых типов по {@link model.CargoTypeRegistry}. Строится один раз по задаче.
+ *
+ * Компоненты связности независимы: типы разных компонент никогда не конфликтуют.
+ * Раскраска - жадная, вершины в порядке убывания степени; типы одного цвета попарно
+ * совместимы, поэтому грузы одного класса цвета можно класть в один грузовик вместе
+ * (кроме типа, несовместимого сам с собой, - его ограничение проверяют решатели).
+ * Компоненты не влияют на раскраску друг друга и красятся одними и теми же цветами,
+ * так что число классов - наибольшее число цветов среди компонент, а не их сумма.
+ * {@link DecompositionSolver} раскладывает грузы по частям слоями компонент и классов цвета.
+ */
+public final class ConflictGraph {
+    private final int[] types;
+    // Номер вершины по номеру типа реестра, -1 - типа нет среди грузов задачи
+    private final int[] vertexByType;
+    private final BitSet[] adjacency;
+    private final int[] componentOf;
+    private final int componentCount;
+    private final int[] colourOf;
+    private final int colourCount;
+
+    private ConflictGraph(LoadingProblem problem) {
+        BitSet present = new BitSet(problem.typeCount);
+        for (int typeId : problem.typeIds) {
+            present.set(typeId);
+        }
+        this.types = present.stream().toArray();
+        this.vertexByType = new int[problem.typeCount];
+        Arrays.fill(vertexByType, -1);
+        for (int v = 0; v < types.length; v++) {
+            vertexByType[types[v]] = v;
+        }
+
+        this.adjacency = new BitSet[types.length];
+        for (int v = 0; v < types.length; v++) {
+            adjacency[v] = new BitSet(types.length);
+            for (int u = 0; u < types.length; u++) {
+                if (u != v && problem.registry.areIncompatible(types[v], types[u])) {
+                    adjacency[v].set(u);
+                }
+            }
+        }
+
+        this.componentOf = new int[types.length];
+        Arrays.fill(componentOf, -1);
+        int components = 0;
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int start = 0; start < types.length; start++) {
+            if (componentOf[start] >= 0) {
+                continue;
+            }
+            componentOf[start] = components;
+            queue.add(start);
+            while (!queue.isEmpty()) {
+                int v = queue.poll();
+                for (int u = adjacency[v].nextSetBit(0); u >= 0; u = adjacency[v].nextSetBit(u + 1)) {
+                    if (componentOf[u] < 0) {
+                        componentOf[u] = components;
+                        queue.add(u);
+                    }
+                }
+            }
+            components++;
+        }
+        this.componentCount = components;
+
+        // Жадная раскраска по убыванию степени; цвета компонент совпадают
+        Integer[] byDegree = new Integer[types.length];
+        for (int v = 0; v < types.length; v++) {
+            byDegree[v] = v;
+        }
+        Arrays.sort(byDegree, (a, b) -> Integer.compare(adjacency[b].cardinality(), adjacency[a].cardinality()));
+        this.colourOf = new int[types.length];
+        Arrays.fill(colourOf, -1);
+        int colours = 0;
+        BitSet used = new BitSet();
+        for (int v : byDegree) {
+            used.clear();
+            for (int u = adjacency[v].nextSetBit(0); u >= 0; u = adjacency[v].nextSetBit(u + 1)) {
+                if (colourOf[u] >= 0) {
+                    used.set(colourOf[u]);
+                }
+            }
+            colourOf[v] = used.nextClearBit(0);
+            colours = Math.max(colours, colourOf[v] + 1);
+        }
+        this.colourCount = colours;
+    }
+
+    public static ConflictGraph of(LoadingProblem problem) {
+        return new ConflictGraph(problem);
+    }
+
+    public int getTypeCount() {
+        return types.length;
+    }
+
+    public int getEdgeCount() {
+        int degrees = 0;
+        for (BitSet row : adjacency) {
+            degrees += row.cardinality();
+        }
+        return degrees / 2;
+    }
+
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    public int getColourCount() {
+        return colourCount;
+    }
+
+    /**
+     * Компонента связности типа (номер типа по реестру)
+     */
+    public int componentOf(int typeId) {
+        return componentOf[vertexByType[typeId]];
+    }
+
+    /**
+     * Класс цвета типа (номер типа по реестру)
+     */
+    public int colourOf(int typeId) {
+        return colourOf[vertexByType[typeId]];
+    }
+
+    @Override
+    public String toString() {
+        return "ConflictGraph{types=" + getTypeCount() + ", edges=" + getEdgeCount() +
+                ", components=" + componentCount + ", colours=" + colourCount + "}";
+    }
+}
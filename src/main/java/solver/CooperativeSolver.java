@@ -0,0 +1,12 @@
+package solver;
+
+/**
+ * Решатель, который может работать в портфеле: предлагает найденные планы в общий
+ * {@link Incumbent} и завершается досрочно, когда тот остановлен
+ */
+interface CooperativeSolver extends LoadingSolver {
+    /**
+     * @return лучший план, найденный этим решателем (его нижняя граница доказана этим решателем)
+     */
+    LoadingPlan solve(LoadingProblem problem, Incumbent shared);
+}
@@ -0,0 +1,220 @@
+package solver;
+
+import model.Cargo;
+import model.Truck;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Решение большой задачи по частям на основе {@link ConflictGraph}.
+ * Парк и грузы делятся на независимые подзадачи: у каждой части свои грузовики и свои грузы,
+ * поэтому части решаются параллельно, а их планы объединяются без пересчета всей задачи.
+ * Сумма отклонений складывается по грузовикам, так что отклонение объединенного плана - сумма
+ * отклонений частей.
+ *
+ * Чтобы оптимум частей был близок к оптимуму всей задачи, каждая часть - уменьшенная копия
+ * исходной: грузовики (от больших к меньшим) отдаются части с наименьшей вместимостью,
+ * грузы - послойно по компонентам связности графа конфликтов, внутри компоненты по классам
+ * цвета и типам, внутри типа от тяжелых к легким - части с наименьшим отношением веса
+ * к вместимости. Так в каждой части оказываются примерно одинаковая доля веса каждой
+ * компоненты и каждого класса цвета, то есть та же структура конфликтов и та же загрузка парка.
+ * Число частей - не меньше числа ядер и так, чтобы в части было не больше
+ * {@link #MAX_SHARD_CARGO} грузов, но не меньше {@link #MIN_SHARD_TRUCKS} грузовиков;
+ * маленькая задача решается одной частью.
+ *
+ * Части решаются в {@link SolverPool} локальным поиском (цепочки делятся между частями);
+ * время делится пропорционально числу грузов части, чтобы все части уложились в срок.
+ * Грузы, не поместившиеся в грузовики своей части, докладываются жадно по всему парку
+ * с полной проверкой совместимости.
+ */
+public final class DecompositionSolver implements LoadingSolver {
+    public static final String NAME = "decompose";
+    public static final int MAX_SHARD_CARGO = 2000;
+    public static final int MIN_SHARD_TRUCKS = 16;
+
+    private final long timeLimitMillis;
+
+    public DecompositionSolver(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public LoadingPlan solve(LoadingProblem problem) {
+        int parallelism = SolverPool.parallelism();
+        List<Subproblem> subproblems = partition(problem, ConflictGraph.of(problem), parallelism);
+
+        // Время части пропорционально ее размеру: суммарно - срок на каждое ядро пула
+        long workerMillis = timeLimitMillis * parallelism;
+        int chains = Math.max(1, parallelism / subproblems.size());
+        List<RecursiveTask<LoadingPlan>> tasks = new ArrayList<>(subproblems.size());
+        for (int i = 0; i < subproblems.size(); i++) {
+            Subproblem subproblem = subproblems.get(i);
+            long budget = Math.max(1, Math.min(timeLimitMillis,
+                    workerMillis * subproblem.problem.getCargoCount() / Math.max(1, problem.getCargoCount())));
+            LocalSearchSolver solver = new LocalSearchSolver(budget, chains, System.nanoTime() + i);
+            tasks.add(new RecursiveTask<LoadingPlan>() {
+                @Override
+                protected LoadingPlan compute() {
+                    return solver.solve(subproblem.problem);
+                }
+            });
+        }
+        SolverPool.get().invoke(new RecursiveTask<Void>() {
+            @Override
+            protected Void compute() {
+                ForkJoinTask.invokeAll(tasks);
+                return null;
+            }
+        });
+
+        PlanState state = new PlanState(problem);
+        for (int i = 0; i < subproblems.size(); i++) {
+            Subproblem subproblem = subproblems.get(i);
+            LoadingPlan plan = tasks.get(i).join();
+            for (int c = 0; c < subproblem.cargoIndex.length; c++) {
+                int truck = plan.getTruckOf(c);
+                if (truck != PlanState.UNASSIGNED) {
+                    state.place(subproblem.cargoIndex[c], subproblem.truckIndex[truck]);
+                }
+            }
+        }
+        repair(state);
+        return state.toPlan(NAME);
+    }
+
+    /**
+     * Разложить нераспределенные грузы жадно (Best-Fit-Decreasing) по всему парку
+     */
+    private static void repair(PlanState state) {
+        LoadingProblem problem = state.problem;
+        int[] order = problem.cargosByWeightDescending();
+        int count = 0;
+        for (int cargo : order) {
+            if (state.truckOf(cargo) == PlanState.UNASSIGNED) {
+                order[count++] = cargo;
+            }
+        }
+        new GreedyDecreasingSolver(true).packInto(state, Arrays.copyOf(order, count));
+    }
+
+    /**
+     * Разбиение на независимые части: грузовики и грузы каждой части не пересекаются с другими
+     * @param shardTarget желаемое число частей (обычно число ядер)
+     */
+    static List<Subproblem> partition(LoadingProblem problem, ConflictGraph graph, int shardTarget) {
+        int shards = (int) Math.max(Math.ceil((double) problem.getCargoCount() / MAX_SHARD_CARGO), shardTarget);
+        shards = Math.max(1, Math.min(shards, problem.getTruckCount() / MIN_SHARD_TRUCKS));
+
+        // Слои: компонента, класс цвета, тип; внутри типа - от тяжелых к легким
+        Integer[] boxed = new Integer[problem.getCargoCount()];
+        for (int c = 0; c < boxed.length; c++) {
+            boxed[c] = c;
+        }
+        Arrays.sort(boxed, (a, b) -> {
+            int typeA = problem.typeIds[a];
+            int typeB = problem.typeIds[b];
+            if (typeA != typeB) {
+                int byComponent = Integer.compare(graph.componentOf(typeA), graph.componentOf(typeB));
+                if (byComponent != 0) {
+                    return byComponent;
+                }
+                int byColour = Integer.compare(graph.colourOf(typeA), graph.colourOf(typeB));
+                return byColour != 0 ? byColour : Integer.compare(typeA, typeB);
+            }
+            return Float.compare(problem.weights[b], problem.weights[a]);
+        });
+        List<Integer> cargos = Arrays.asList(boxed);
+
+        List<Integer> trucks = new ArrayList<>(problem.getTruckCount());
+        for (int truck : byCapacityDescending(problem)) {
+            trucks.add(truck);
+        }
+        return shard(problem, trucks, cargos, shards);
+    }
+
+    /**
+     * Разрезать задачу на части близкой вместимости; грузы по порядку - в часть
+     * с наименьшим отношением веса к вместимости
+     */
+    private static List<Subproblem> shard(LoadingProblem problem, List<Integer> trucks, List<Integer> cargos,
+                                          int shards) {
+        List<List<Integer>> shardTrucks = new ArrayList<>(shards);
+        List<List<Integer>> shardCargos = new ArrayList<>(shards);
+        double[] capacity = new double[shards];
+        double[] weight = new double[shards];
+        for (int s = 0; s < shards; s++) {
+            shardTrucks.add(new ArrayList<>());
+            shardCargos.add(new ArrayList<>());
+        }
+        // Грузовики уже идут по убыванию вместимости
+        for (int truck : trucks) {
+            int smallest = 0;
+            for (int s = 1; s < shards; s++) {
+                if (capacity[s] < capacity[smallest]) {
+                    smallest = s;
+                }
+            }
+            shardTrucks.get(smallest).add(truck);
+            capacity[smallest] += problem.capacities[truck];
+        }
+        for (int cargo : cargos) {
+            int lightest = 0;
+            for (int s = 1; s < shards; s++) {
+                if (weight[s] / capacity[s] < weight[lightest] / capacity[lightest]) {
+                    lightest = s;
+                }
+            }
+            shardCargos.get(lightest).add(cargo);
+            weight[lightest] += problem.weights[cargo];
+        }
+
+        List<Subproblem> result = new ArrayList<>(shards);
+        for (int s = 0; s < shards; s++) {
+            result.add(new Subproblem(problem, shardTrucks.get(s), shardCargos.get(s)));
+        }
+        return result;
+    }
+
+    private static int[] byCapacityDescending(LoadingProblem problem) {
+        Integer[] order = new Integer[problem.getTruckCount()];
+        for (int t = 0; t < order.length; t++) {
+            order[t] = t;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(problem.capacities[b], problem.capacities[a]));
+        int[] result = new int[order.length];
+        for (int t = 0; t < result.length; t++) {
+            result[t] = order[t];
+        }
+        return result;
+    }
+
+    /**
+     * Подзадача и соответствие ее грузовиков и грузов номерам исходной задачи
+     */
+    static final class Subproblem {
+        final LoadingProblem problem;
+        final int[] truckIndex;
+        final int[] cargoIndex;
+
+        Subproblem(LoadingProblem parent, List<Integer> trucks, List<Integer> cargos) {
+            this.truckIndex = trucks.stream().mapToInt(Integer::intValue).toArray();
+            this.cargoIndex = cargos.stream().mapToInt(Integer::intValue).toArray();
+            List<Truck> subTrucks = new ArrayList<>(truckIndex.length);
+            for (int truck : truckIndex) {
+                subTrucks.add(parent.getTrucks().get(truck));
+            }
+            List<Cargo> subCargos = new ArrayList<>(cargoIndex.length);
+            for (int cargo : cargoIndex) {
+                subCargos.add(parent.getCargos().get(cargo));
+            }
+            this.problem = new LoadingProblem(subTrucks, subCargos, parent.getIdealLoadPercentage());
+        }
+    }
+}
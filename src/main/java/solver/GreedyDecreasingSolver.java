@@ -0,0 +1,103 @@
+package solver;
+
+/**
+ * Жадная упаковка по убыванию веса с учетом несовместимости типов.
+ * Грузы перебираются от тяжелых к легким; каждый кладется в грузовик, где он помещается,
+ * совместим с уже загруженными типами и не выводит загрузку выше идеальной:
+ * <ul>
+ *     <li>First-Fit-Decreasing - в первый такой грузовик по порядку конфигурации;</li>
+ *     <li>Best-Fit-Decreasing - в грузовик, где после загрузки до идеальной остается меньше всего места.</li>
+ * </ul>
+ * Если ни один грузовик не принимает груз без превышения идеальной загрузки, груз кладется туда,
+ * где отклонение от идеальной растет меньше всего. Нераспределенным груз остается, только если
+ * его не принимает ни один грузовик (вместимость или совместимость), как и в режиме агентов.
+ * Сложность - O(грузов x грузовиков) проверок маски.
+ */
+public final class GreedyDecreasingSolver implements CooperativeSolver {
+    public static final String FIRST_FIT = "ffd";
+    public static final String BEST_FIT = "bfd";
+
+    private final boolean bestFit;
+
+    public GreedyDecreasingSolver(boolean bestFit) {
+        this.bestFit = bestFit;
+    }
+
+    @Override
+    public String getName() {
+        return bestFit ? BEST_FIT : FIRST_FIT;
+    }
+
+    @Override
+    public LoadingPlan solve(LoadingProblem problem) {
+        return pack(problem, problem.cargosByWeightDescending()).toPlan(getName());
+    }
+
+    @Override
+    public LoadingPlan solve(LoadingProblem problem, Incumbent shared) {
+        LoadingPlan plan = solve(problem);
+        shared.offer(plan);
+        return plan;
+    }
+
+    /**
+     * Разложить грузы в заданном порядке
+     */
+    PlanState pack(LoadingProblem problem, int[] order) {
+        PlanState state = new PlanState(problem);
+        packInto(state, order);
+        return state;
+    }
+
+    /**
+     * Доложить грузы в заданном порядке в уже частично заполненное состояние
+     */
+    void packInto(PlanState state, int[] order) {
+        for (int cargo : order) {
+            int truck = underTarget(state, cargo);
+            if (truck < 0) {
+                truck = leastDeviating(state, cargo);
+            }
+            if (truck >= 0) {
+                state.place(cargo, truck);
+            }
+        }
+    }
+
+    private int underTarget(PlanState state, int cargo) {
+        LoadingProblem problem = state.problem;
+        float weight = problem.weights[cargo];
+        int best = -1;
+        double bestSlack = Double.MAX_VALUE;
+        for (int truck = 0; truck < problem.getTruckCount(); truck++) {
+            double slack = problem.targets[truck] - state.load(truck) - weight;
+            if (slack < 0 || slack >= bestSlack || !state.canPlace(cargo, truck)) {
+                continue;
+            }
+            if (!bestFit) {
+                return truck;
+            }
+            best = truck;
+            bestSlack = slack;
+        }
+        return best;
+    }
+
+    /**
+     * Грузовик, принимающий груз, где сумма отклонений растет меньше всего, или -1
+     */
+    private int leastDeviating(PlanState state, int cargo) {
+        LoadingProblem problem = state.problem;
+        float weight = problem.weights[cargo];
+        int best = -1;
+        double bestDelta = Double.MAX_VALUE;
+        for (int truck = 0; truck < problem.getTruckCount(); truck++) {
+            double delta = state.deviationDelta(truck, weight);
+            if (delta < bestDelta - 1e-9 && state.canPlace(cargo, truck)) {
+                best = truck;
+                bestDelta = delta;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,52 @@
+package solver;
+
+/**
+ * Лучший известный план, общий для параллельных потоков поиска и для решателей портфеля.
+ * План читается без блокировки (для отсечения) - вес нераспределенных грузов и отклонение
+ * берутся из одного неизменяемого плана, замена плана - под блокировкой.
+ * Флаг остановки просит всех участников завершиться: истек срок или оптимум доказан.
+ */
+final class Incumbent {
+    private volatile LoadingPlan plan;
+    private volatile boolean stopped;
+
+    Incumbent(LoadingPlan initial) {
+        this.plan = initial;
+    }
+
+    /**
+     * Предложить текущее состояние поиска; план копируется, только если он лучше
+     */
+    boolean offer(PlanState state, String solverName) {
+        if (!state.isBetterThan(plan)) {
+            return false;
+        }
+        synchronized (this) {
+            if (!state.isBetterThan(plan)) {
+                return false;
+            }
+            plan = state.toPlan(solverName);
+            return true;
+        }
+    }
+
+    synchronized boolean offer(LoadingPlan candidate) {
+        if (!candidate.isBetterThan(plan)) {
+            return false;
+        }
+        plan = candidate;
+        return true;
+    }
+
+    LoadingPlan get() {
+        return plan;
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+}
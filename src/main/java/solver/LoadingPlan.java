@@ -0,0 +1,215 @@
+package solver;
+
+import model.Cargo;
+import model.Truck;
+import model.TruckStatusReport;
+import util.IntIntHashMap;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Готовое распределение: для каждого груза задачи - номер грузовика или -1, если груз не размещен.
+ * Планы сравниваются лексикографически ({@link #isBetter}): сначала вес нераспределенных грузов
+ * ({@link #getUnassignedWeight()}), затем сумма отклонений загрузки грузовиков от идеальной
+ * в процентах ({@link #getDeviation()}); чем они меньше, тем лучше план. Поэтому решатель
+ * не может улучшить отклонение, сняв груз, который помещается. Нижняя граница
+ * ({@link #getLowerBound()}) - доказанный решателем минимум суммы отклонений среди планов
+ * с наименьшим возможным нераспределенным весом; у эвристик она равна 0.
+ */
+public final class LoadingPlan {
+    private static final double EPSILON = 1e-6;
+
+    private final LoadingProblem problem;
+    private final int[] truckOf;
+    private final double unassignedWeight;
+    private final double deviation;
+    private final String solverName;
+    private final double lowerBound;
+
+    LoadingPlan(LoadingProblem problem, int[] truckOf, double unassignedWeight, double deviation, String solverName) {
+        this(problem, truckOf, unassignedWeight, deviation, solverName, 0);
+    }
+
+    LoadingPlan(LoadingProblem problem, int[] truckOf, double unassignedWeight, double deviation, String solverName,
+                double lowerBound) {
+        this.problem = problem;
+        this.truckOf = truckOf;
+        this.unassignedWeight = unassignedWeight;
+        this.deviation = deviation;
+        this.solverName = solverName;
+        this.lowerBound = Math.min(lowerBound, deviation);
+    }
+
+    /**
+     * Тот же план с другим именем решателя и доказанной нижней границей
+     */
+    LoadingPlan withSolver(String name, double provenLowerBound) {
+        return new LoadingPlan(problem, truckOf, unassignedWeight, deviation, name,
+                Math.max(lowerBound, provenLowerBound));
+    }
+
+    public LoadingProblem getProblem() {
+        return problem;
+    }
+
+    /**
+     * Имя решателя, построившего план
+     */
+    public String getSolverName() {
+        return solverName;
+    }
+
+    /**
+     * Суммарный вес грузов, не попавших ни в один грузовик
+     */
+    public double getUnassignedWeight() {
+        return unassignedWeight;
+    }
+
+    /**
+     * Сумма |загрузка% - идеальная%| по всем грузовикам
+     */
+    public double getDeviation() {
+        return deviation;
+    }
+
+    /**
+     * Доказанная нижняя граница суммы отклонений для этой задачи
+     */
+    public double getLowerBound() {
+        return lowerBound;
+    }
+
+    /**
+     * Насколько план может быть хуже оптимального (в процентах суммарного отклонения)
+     */
+    public double getGap() {
+        return deviation - lowerBound;
+    }
+
+    /**
+     * Доказана ли оптимальность. При нераспределенных грузах нулевой разрыв без положительной
+     * нижней границы ничего не доказывает: меньший нераспределенный вес мог быть достижим
+     */
+    public boolean isProvenOptimal() {
+        return getGap() <= EPSILON && (unassignedWeight <= EPSILON || lowerBound > 0);
+    }
+
+    public double getMeanDeviation() {
+        return problem.getTruckCount() == 0 ? 0 : deviation / problem.getTruckCount();
+    }
+
+    /**
+     * Номер грузовика (в списке задачи), в который попал груз, или -1
+     */
+    public int getTruckOf(int cargoIndex) {
+        return truckOf[cargoIndex];
+    }
+
+    /**
+     * План по отчетам грузовиков после переговоров, например для последующего улучшения.
+     * Грузы, которые в таком виде нельзя разместить (груз или грузовик отсутствует в задаче,
+     * нарушена вместимость или совместимость), считаются нераспределенными.
+     */
+    public static LoadingPlan fromReports(LoadingProblem problem, Collection<TruckStatusReport> reports,
+                                          String solverName) {
+        IntIntHashMap truckIndexById = new IntIntHashMap(problem.getTruckCount(), PlanState.UNASSIGNED);
+        for (int t = 0; t < problem.getTruckCount(); t++) {
+            truckIndexById.put(problem.getTrucks().get(t).getId(), t);
+        }
+        IntIntHashMap cargoIndexById = new IntIntHashMap(problem.getCargoCount(), PlanState.UNASSIGNED);
+        for (int c = 0; c < problem.getCargoCount(); c++) {
+            cargoIndexById.put(problem.getCargos().get(c).getId(), c);
+        }
+
+        PlanState state = new PlanState(problem);
+        for (TruckStatusReport report : reports) {
+            int truck = truckIndexById.get(report.getTruckId());
+            for (int i = 0; i < report.getCargoCount(); i++) {
+                int cargo = cargoIndexById.get(report.getCargoId(i));
+                if (truck != PlanState.UNASSIGNED && cargo != PlanState.UNASSIGNED
+                        && state.truckOf(cargo) == PlanState.UNASSIGNED && state.canPlace(cargo, truck)) {
+                    state.place(cargo, truck);
+                }
+            }
+        }
+        return state.toPlan(solverName);
+    }
+
+    int[] assignment() {
+        return truckOf.clone();
+    }
+
+    public int getAssignedCount() {
+        int count = 0;
+        for (int truck : truckOf) {
+            if (truck != PlanState.UNASSIGNED) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public boolean isBetterThan(LoadingPlan other) {
+        return other == null || isBetter(unassignedWeight, deviation, other.unassignedWeight, other.deviation);
+    }
+
+    /**
+     * Лексикографическое сравнение целевой функции: меньший вес нераспределенных грузов лучше
+     * при любом отклонении, при равном весе лучше меньшая сумма отклонений
+     */
+    static boolean isBetter(double unassignedWeight, double deviation,
+                            double otherUnassignedWeight, double otherDeviation) {
+        if (Math.abs(unassignedWeight - otherUnassignedWeight) > EPSILON) {
+            return unassignedWeight < otherUnassignedWeight;
+        }
+        return deviation < otherDeviation - EPSILON;
+    }
+
+    /**
+     * Новые грузовики с вместимостью из задачи, загруженные по плану
+     */
+    public List<Truck> toTrucks() {
+        List<Truck> trucks = new ArrayList<>(problem.getTruckCount());
+        for (Truck template : problem.getTrucks()) {
+            trucks.add(new Truck(template.getId(), template.getCapacity()));
+        }
+        List<Cargo> cargos = problem.getCargos();
+        for (int c = 0; c < truckOf.length; c++) {
+            if (truckOf[c] != PlanState.UNASSIGNED && !trucks.get(truckOf[c]).loadCargo(cargos.get(c))) {
+                throw new IllegalStateException("План нарушает ограничения грузовика " +
+                        trucks.get(truckOf[c]).getId() + " для груза " + cargos.get(c).getId());
+            }
+        }
+        return trucks;
+    }
+
+    /**
+     * Отчеты грузовиков в том же виде, в каком их присылают агенты, - ключ "truck-ID"
+     */
+    public Map<String, TruckStatusReport> toReports() {
+        Map<String, TruckStatusReport> reports = new HashMap<>();
+        for (Truck truck : toTrucks()) {
+            List<Cargo> loaded = truck.getLoadedCargos();
+            int[] processed = new int[loaded.size()];
+            for (int i = 0; i < processed.length; i++) {
+                processed[i] = loaded.get(i).getId();
+            }
+            try {
+                reports.put("truck-" + truck.getId(),
+                        TruckStatusReport.wrap(TruckStatusReport.encode(truck, processed, new int[0])));
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось построить отчет грузовика " + truck.getId(), e);
+            }
+        }
+        return reports;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadingPlan{solver=" + solverName + ", assigned=" + getAssignedCount() + "/" + truckOf.length +
+                ", meanDeviation=" + String.format("%.2f", getMeanDeviation()) + "%" +
+                (lowerBound > 0 || isProvenOptimal() ? ", gap=" + String.format("%.4f", getGap()) + "%" : "") + "}";
+    }
+}
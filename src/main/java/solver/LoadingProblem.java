@@ -0,0 +1,88 @@
+package solver;
+
+import model.Cargo;
+import model.CargoTypeRegistry;
+import model.LoadingConfiguration;
+import model.Truck;
+
+import java.util.*;
+
+/**
+ * Задача распределения для централизованных решателей: грузовики конфигурации (пустые,
+ * учитывается только вместимость), грузы и идеальная загрузка. Веса, типы и вместимости
+ * разложены по массивам, чтобы решатели не обращались к объектам во внутренних циклах.
+ * Задача неизменяема и может одновременно решаться несколькими потоками.
+ */
+public final class LoadingProblem {
+    private final List<Truck> trucks;
+    private final List<Cargo> cargos;
+    private final float idealLoadPercentage;
+    final CargoTypeRegistry registry = CargoTypeRegistry.getInstance();
+    final float[] capacities;
+    // Вес, соответствующий идеальной загрузке грузовика
+    final float[] targets;
+    final float[] weights;
+    final int[] typeIds;
+    final int typeCount;
+
+    public LoadingProblem(List<Truck> trucks, List<Cargo> cargos, float idealLoadPercentage) {
+        this.trucks = Collections.unmodifiableList(new ArrayList<>(trucks));
+        this.cargos = Collections.unmodifiableList(new ArrayList<>(cargos));
+        this.idealLoadPercentage = idealLoadPercentage;
+        this.capacities = new float[trucks.size()];
+        this.targets = new float[trucks.size()];
+        for (int t = 0; t < capacities.length; t++) {
+            capacities[t] = trucks.get(t).getCapacity();
+            targets[t] = capacities[t] * idealLoadPercentage / 100;
+        }
+        this.weights = new float[cargos.size()];
+        this.typeIds = new int[cargos.size()];
+        int maxType = -1;
+        for (int c = 0; c < weights.length; c++) {
+            weights[c] = cargos.get(c).getWeight();
+            typeIds[c] = cargos.get(c).getTypeId();
+            maxType = Math.max(maxType, typeIds[c]);
+        }
+        this.typeCount = maxType + 1;
+    }
+
+    public static LoadingProblem of(LoadingConfiguration config) {
+        return new LoadingProblem(config.getTrucks(), config.getCargos(), config.getIdealLoadPercentage());
+    }
+
+    public List<Truck> getTrucks() {
+        return trucks;
+    }
+
+    public List<Cargo> getCargos() {
+        return cargos;
+    }
+
+    public int getTruckCount() {
+        return capacities.length;
+    }
+
+    public int getCargoCount() {
+        return weights.length;
+    }
+
+    public float getIdealLoadPercentage() {
+        return idealLoadPercentage;
+    }
+
+    /**
+     * Номера грузов по убыванию веса (при равном весе - по порядку в конфигурации)
+     */
+    int[] cargosByWeightDescending() {
+        Integer[] order = new Integer[weights.length];
+        for (int c = 0; c < order.length; c++) {
+            order[c] = c;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(weights[b], weights[a]));
+        int[] result = new int[order.length];
+        for (int c = 0; c < result.length; c++) {
+            result[c] = order[c];
+        }
+        return result;
+    }
+}
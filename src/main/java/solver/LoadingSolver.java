@@ -0,0 +1,13 @@
+package solver;
+
+/**
+ * Централизованный решатель: строит распределение всех грузов по грузовикам без переговоров агентов
+ */
+public interface LoadingSolver {
+    /**
+     * Имя решателя - значение параметра mode в секции [SETTINGS]
+     */
+    String getName();
+
+    LoadingPlan solve(LoadingProblem problem);
+}
@@ -0,0 +1,283 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Локальный поиск (имитация отжига), уменьшающий сумму отклонений загрузки грузовиков
+ * от идеальной. Соседние решения:
+ * <ul>
+ *     <li>перенос - груз перекладывается в другой грузовик или загружается из нераспределенных;</li>
+ *     <li>обмен - два груза из разных грузовиков меняются местами; нераспределенный груз
+ *     меняется местами с загруженным, только если он не легче.</li>
+ * </ul>
+ * Каждый ход проверяется так же, как {@link model.Truck#canAddCargo}: вместимость и совместимость типов.
+ * Целевая функция лексикографическая ({@link LoadingPlan#isBetter}): ход, уменьшающий вес
+ * нераспределенных грузов, принимается всегда, увеличивающий - никогда, поэтому отжиг
+ * не выгружает помещающиеся грузы ради отклонения; температура действует только на отклонение.
+ *
+ * Несколько независимых цепочек с разными зернами и начальной температурой выполняются
+ * в {@link SolverPool} параллельно до общего срока; результат - лучший план из всех цепочек.
+ * Цепочка запоминает лучшее состояние лениво: массив назначений копируется только перед
+ * принятием ухудшающего хода из лучшего состояния. Улучшения цепочки периодически
+ * предлагаются в общий {@link Incumbent}; его остановка завершает цепочки досрочно.
+ * Единственная цепочка выполняется в вызывающем потоке, без пула.
+ */
+public final class LocalSearchSolver implements CooperativeSolver {
+    public static final String NAME = "anneal";
+    // Начальная и конечная температура в процентах отклонения
+    private static final double INITIAL_TEMPERATURE = 2.0;
+    private static final double FINAL_TEMPERATURE = 0.001;
+    // Через сколько ходов проверяются время и температура
+    private static final int CHECK_INTERVAL = 1024;
+    // Через сколько ходов сумма отклонений пересчитывается заново
+    private static final int RESYNC_INTERVAL = 1 << 16;
+
+    private final long timeLimitMillis;
+    private final int chains;
+    private final long seed;
+
+    public LocalSearchSolver(long timeLimitMillis) {
+        this(timeLimitMillis, SolverPool.parallelism(), System.nanoTime());
+    }
+
+    public LocalSearchSolver(long timeLimitMillis, int chains, long seed) {
+        this.timeLimitMillis = timeLimitMillis;
+        this.chains = Math.max(1, chains);
+        this.seed = seed;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Начальный план строит {@link GreedyDecreasingSolver} (Best-Fit-Decreasing)
+     */
+    @Override
+    public LoadingPlan solve(LoadingProblem problem) {
+        return improve(new GreedyDecreasingSolver(true).solve(problem));
+    }
+
+    @Override
+    public LoadingPlan solve(LoadingProblem problem, Incumbent shared) {
+        return improve(new GreedyDecreasingSolver(true).solve(problem), shared);
+    }
+
+    /**
+     * Улучшить готовый план (например, полученный переговорами агентов)
+     * @return лучший найденный план; не хуже исходного, вес загруженных грузов не меньше
+     */
+    public LoadingPlan improve(LoadingPlan start) {
+        return improve(start, new Incumbent(start));
+    }
+
+    LoadingPlan improve(LoadingPlan start, Incumbent shared) {
+        long deadline = System.nanoTime() + timeLimitMillis * 1_000_000L;
+        List<Chain> tasks = new ArrayList<>(chains);
+        for (int i = 0; i < chains; i++) {
+            // Первая цепочка почти жадная, последние - с более высокой температурой
+            double temperature = INITIAL_TEMPERATURE * (i + 1) / chains;
+            tasks.add(new Chain(start, shared, temperature, deadline,
+                    new SplittableRandom(seed + 0x9E3779B97F4A7C15L * i)));
+        }
+        if (chains == 1) {
+            tasks.get(0).invoke();
+        } else {
+            SolverPool.get().invoke(new RecursiveTask<Void>() {
+                @Override
+                protected Void compute() {
+                    ForkJoinTask.invokeAll(tasks);
+                    return null;
+                }
+            });
+        }
+
+        LoadingPlan best = start;
+        for (Chain chain : tasks) {
+            LoadingPlan plan = chain.join();
+            if (plan.isBetterThan(best)) {
+                best = plan;
+            }
+        }
+        return best == start ? start : best.withSolver(NAME, start.getLowerBound());
+    }
+
+    private static final class Chain extends RecursiveTask<LoadingPlan> {
+        private final LoadingPlan start;
+        private final Incumbent shared;
+        private final double initialTemperature;
+        private final long deadline;
+        private final SplittableRandom random;
+        private PlanState state;
+        private double temperature;
+        private double bestUnassigned;
+        private double best;
+        private int[] bestAssignment;
+        private boolean atBest; // текущее состояние не хуже лучшего, снимок не нужен
+
+        Chain(LoadingPlan start, Incumbent shared, double initialTemperature, long deadline, SplittableRandom random) {
+            this.start = start;
+            this.shared = shared;
+            this.initialTemperature = initialTemperature;
+            this.deadline = deadline;
+            this.random = random;
+        }
+
+        @Override
+        protected LoadingPlan compute() {
+            LoadingProblem problem = start.getProblem();
+            if (problem.getCargoCount() == 0 || problem.getTruckCount() == 0) {
+                return start;
+            }
+            state = new PlanState(problem, start.assignment());
+            bestUnassigned = state.unassignedWeight();
+            best = state.totalDeviation();
+            atBest = true;
+            long begin = System.nanoTime();
+            double cooling = Math.log(FINAL_TEMPERATURE / initialTemperature);
+            temperature = initialTemperature;
+
+            for (long iteration = 1; ; iteration++) {
+                if (iteration % CHECK_INTERVAL == 0) {
+                    long now = System.nanoTime();
+                    if (now - deadline >= 0 || shared.isStopped()) {
+                        break;
+                    }
+                    if (atBest) {
+                        shared.offer(state, NAME);
+                    }
+                    // Геометрическое охлаждение по доле истекшего времени
+                    double progress = (double) (now - begin) / Math.max(1, deadline - begin);
+                    temperature = initialTemperature * Math.exp(cooling * progress);
+                    if (iteration % RESYNC_INTERVAL == 0) {
+                        state.resync();
+                    }
+                }
+                if (random.nextInt(3) == 0) {
+                    trySwap();
+                } else {
+                    tryMove();
+                }
+            }
+
+            if (atBest) {
+                bestAssignment = state.assignment();
+            }
+            LoadingPlan plan = new PlanState(problem, bestAssignment).toPlan(NAME);
+            shared.offer(plan);
+            return plan;
+        }
+
+        /**
+         * Лексикографический критерий: вес нераспределенных грузов решает сам,
+         * при неизменном весе - отжиг по изменению отклонения
+         */
+        private boolean accept(double unassignedDelta, double delta) {
+            if (unassignedDelta != 0) {
+                return unassignedDelta < 0;
+            }
+            return delta <= 0 || random.nextDouble() < Math.exp(-delta / temperature);
+        }
+
+        /**
+         * Перед принятым ходом: уходя из лучшего состояния, сохранить его.
+         * Принятый ход с изменением нераспределенного веса только улучшает состояние
+         */
+        private void beforeApply(double unassignedDelta, double delta) {
+            if (unassignedDelta == 0 && delta > 0 && atBest) {
+                bestAssignment = state.assignment();
+                atBest = false;
+            }
+        }
+
+        private void afterApply() {
+            if (state.unassignedWeight() < bestUnassigned - 1e-9
+                    || (state.unassignedWeight() <= bestUnassigned + 1e-9 && state.totalDeviation() < best - 1e-9)) {
+                bestUnassigned = state.unassignedWeight();
+                best = state.totalDeviation();
+                atBest = true;
+            }
+        }
+
+        /**
+         * Перенос груза в другой грузовик или загрузка нераспределенного груза
+         */
+        private void tryMove() {
+            LoadingProblem problem = state.problem;
+            int cargo = random.nextInt(problem.getCargoCount());
+            int from = state.truckOf(cargo);
+            int to = random.nextInt(problem.getTruckCount());
+            if (to == from) {
+                return;
+            }
+            float weight = problem.weights[cargo];
+            double unassignedDelta = from == PlanState.UNASSIGNED ? -weight : 0;
+            double delta = (from != PlanState.UNASSIGNED ? state.deviationDelta(from, -weight) : 0)
+                    + state.deviationDelta(to, weight);
+            if (!accept(unassignedDelta, delta) || !state.canPlace(cargo, to)) {
+                return;
+            }
+            beforeApply(unassignedDelta, delta);
+            if (from != PlanState.UNASSIGNED) {
+                state.remove(cargo);
+            }
+            state.place(cargo, to);
+            afterApply();
+        }
+
+        /**
+         * Обмен двух грузов; если один из них не распределен, второй становится нераспределенным
+         */
+        private void trySwap() {
+            LoadingProblem problem = state.problem;
+            int first = random.nextInt(problem.getCargoCount());
+            int second = random.nextInt(problem.getCargoCount());
+            int firstTruck = state.truckOf(first);
+            int secondTruck = state.truckOf(second);
+            if (firstTruck == secondTruck) {
+                return;
+            }
+            float diff = problem.weights[second] - problem.weights[first];
+            double unassignedDelta = 0;
+            double delta = 0;
+            if (firstTruck == PlanState.UNASSIGNED) {
+                unassignedDelta = diff;
+            } else if ((float) state.load(firstTruck) + diff > problem.capacities[firstTruck]) {
+                return;
+            } else {
+                delta += state.deviationDelta(firstTruck, diff);
+            }
+            if (secondTruck == PlanState.UNASSIGNED) {
+                unassignedDelta = -diff;
+            } else if ((float) state.load(secondTruck) - diff > problem.capacities[secondTruck]) {
+                return;
+            } else {
+                delta += state.deviationDelta(secondTruck, -diff);
+            }
+            if (!accept(unassignedDelta, delta)
+                    || (firstTruck != PlanState.UNASSIGNED && !state.isCompatibleWithout(second, firstTruck, first))
+                    || (secondTruck != PlanState.UNASSIGNED && !state.isCompatibleWithout(first, secondTruck, second))) {
+                return;
+            }
+            beforeApply(unassignedDelta, delta);
+            if (firstTruck != PlanState.UNASSIGNED) {
+                state.remove(first);
+            }
+            if (secondTruck != PlanState.UNASSIGNED) {
+                state.remove(second);
+            }
+            if (firstTruck != PlanState.UNASSIGNED) {
+                state.place(second, firstTruck);
+            }
+            if (secondTruck != PlanState.UNASSIGNED) {
+                state.place(first, secondTruck);
+            }
+            afterApply();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package solver;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Изменяемое состояние распределения, с которым работают решатели: грузовик каждого груза,
+ * загрузка каждого грузовика, число грузов каждого типа и маска загруженных типов.
+ * Проверка размещения повторяет {@link model.Truck#canAddCargo}: вместимость и пересечение
+ * маски загруженных типов со строкой несовместимости типа груза.
+ * Целевая функция лексикографическая: сначала вес нераспределенных грузов, затем сумма отклонений
+ * (см. {@link LoadingPlan#isBetter}).
+ * Размещение, снятие и оценка отклонения выполняются за O(1) (кроме совместимости - O(слов маски)).
+ */
+final class PlanState {
+    static final int UNASSIGNED = -1;
+
+    final LoadingProblem problem;
+    private final int[] truckOf;
+    private final double[] loads;
+    private final int[] cargoCounts;
+    private final int[][] typeCounts;
+    private final BitSet[] masks;
+    private double totalDeviation;
+    private double unassignedWeight;
+
+    PlanState(LoadingProblem problem) {
+        this.problem = problem;
+        this.truckOf = new int[problem.getCargoCount()];
+        Arrays.fill(truckOf, UNASSIGNED);
+        this.loads = new double[problem.getTruckCount()];
+        this.cargoCounts = new int[problem.getTruckCount()];
+        this.typeCounts = new int[problem.getTruckCount()][problem.typeCount];
+        this.masks = new BitSet[problem.getTruckCount()];
+        for (int t = 0; t < masks.length; t++) {
+            masks[t] = new BitSet(problem.typeCount);
+            totalDeviation += deviationAt(t, 0);
+        }
+        for (float weight : problem.weights) {
+            unassignedWeight += weight;
+        }
+    }
+
+    /**
+     * Состояние по готовому распределению (грузы уже проверены при его построении)
+     */
+    PlanState(LoadingProblem problem, int[] assignment) {
+        this(problem);
+        for (int cargo = 0; cargo < assignment.length; cargo++) {
+            if (assignment[cargo] != UNASSIGNED) {
+                place(cargo, assignment[cargo]);
+            }
+        }
+    }
+
+    private PlanState(PlanState other) {
+        this.problem = other.problem;
+        this.truckOf = other.truckOf.clone();
+        this.loads = other.loads.clone();
+        this.cargoCounts = other.cargoCounts.clone();
+        this.typeCounts = new int[other.typeCounts.length][];
+        this.masks = new BitSet[other.masks.length];
+        for (int t = 0; t < masks.length; t++) {
+            typeCounts[t] = other.typeCounts[t].clone();
+            masks[t] = (BitSet) other.masks[t].clone();
+        }
+        this.totalDeviation = other.totalDeviation;
+        this.unassignedWeight = other.unassignedWeight;
+    }
+
+    PlanState copy() {
+        return new PlanState(this);
+    }
+
+    int truckOf(int cargo) {
+        return truckOf[cargo];
+    }
+
+    int[] assignment() {
+        return truckOf.clone();
+    }
+
+    double load(int truck) {
+        return loads[truck];
+    }
+
+    boolean isEmpty(int truck) {
+        return cargoCounts[truck] == 0;
+    }
+
+    /**
+     * Можно ли положить груз в грузовик (груз сейчас не в этом грузовике)
+     */
+    boolean canPlace(int cargo, int truck) {
+        // Сравнение во float, как в Truck#canAddCargo, чтобы план без потерь переносился в грузовики
+        return (float) loads[truck] + problem.weights[cargo] <= problem.capacities[truck]
+                && problem.registry.isCompatible(problem.typeIds[cargo], masks[truck]);
+    }
+
+    /**
+     * Совместим ли груз с грузовиком после снятия из него груза {@code removed}
+     * (для проверки обмена без изменения состояния)
+     */
+    boolean isCompatibleWithout(int cargo, int truck, int removed) {
+        int removedType = problem.typeIds[removed];
+        if (typeCounts[truck][removedType] > 1) {
+            return problem.registry.isCompatible(problem.typeIds[cargo], masks[truck]);
+        }
+        masks[truck].clear(removedType);
+        boolean compatible = problem.registry.isCompatible(problem.typeIds[cargo], masks[truck]);
+        masks[truck].set(removedType);
+        return compatible;
+    }
+
+    void place(int cargo, int truck) {
+        int type = problem.typeIds[cargo];
+        totalDeviation -= deviationAt(truck, loads[truck]);
+        loads[truck] += problem.weights[cargo];
+        totalDeviation += deviationAt(truck, loads[truck]);
+        cargoCounts[truck]++;
+        if (typeCounts[truck][type]++ == 0) {
+            masks[truck].set(type);
+        }
+        truckOf[cargo] = truck;
+        unassignedWeight -= problem.weights[cargo];
+    }
+
+    void remove(int cargo) {
+        int truck = truckOf[cargo];
+        int type = problem.typeIds[cargo];
+        totalDeviation -= deviationAt(truck, loads[truck]);
+        // Пустой грузовик - ровно 0, без накопленной погрешности
+        loads[truck] = --cargoCounts[truck] == 0 ? 0 : loads[truck] - problem.weights[cargo];
+        totalDeviation += deviationAt(truck, loads[truck]);
+        if (--typeCounts[truck][type] == 0) {
+            masks[truck].clear(type);
+        }
+        truckOf[cargo] = UNASSIGNED;
+        unassignedWeight += problem.weights[cargo];
+    }
+
+    /**
+     * Отклонение загрузки грузовика от идеальной в процентах при заданном весе
+     */
+    double deviationAt(int truck, double load) {
+        return Math.abs(load / problem.capacities[truck] * 100 - problem.getIdealLoadPercentage());
+    }
+
+    /**
+     * Изменение суммарного отклонения, если вес грузовика изменится на {@code delta}
+     */
+    double deviationDelta(int truck, double delta) {
+        return deviationAt(truck, loads[truck] + delta) - deviationAt(truck, loads[truck]);
+    }
+
+    /**
+     * Сумма отклонений всех грузовиков - вторая часть целевой функции решателей
+     */
+    double totalDeviation() {
+        return totalDeviation;
+    }
+
+    /**
+     * Вес нераспределенных грузов - первая часть целевой функции решателей
+     */
+    double unassignedWeight() {
+        return unassignedWeight;
+    }
+
+    /**
+     * Лучше ли состояние плана (лексикографически, см. {@link LoadingPlan#isBetter})
+     */
+    boolean isBetterThan(LoadingPlan plan) {
+        return LoadingPlan.isBetter(unassignedWeight, totalDeviation, plan.getUnassignedWeight(), plan.getDeviation());
+    }
+
+    /**
+     * Пересчитать сумму отклонений и нераспределенный вес заново, чтобы не копилась ошибка
+     * округления после множества ходов
+     */
+    void resync() {
+        double total = 0;
+        for (int t = 0; t < loads.length; t++) {
+            total += deviationAt(t, loads[t]);
+        }
+        totalDeviation = total;
+        double unassigned = 0;
+        for (int cargo = 0; cargo < truckOf.length; cargo++) {
+            if (truckOf[cargo] == UNASSIGNED) {
+                unassigned += problem.weights[cargo];
+            }
+        }
+        unassignedWeight = unassigned;
+    }
+
+    LoadingPlan toPlan(String solverName) {
+        resync();
+        return new LoadingPlan(problem, truckOf.clone(), unassignedWeight, totalDeviation, solverName);
+    }
+}
@@ -0,0 +1,158 @@
+package solver;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Портфель решателей: FFD, BFD, случайные перезапуски, локальный поиск и точный поиск
+ * запускаются одновременно на одной задаче и делят общий лучший план ({@link Incumbent}).
+ * Точный поиск отсекает ветви по плану, найденному эвристиками, а эвристики завершаются,
+ * как только оптимум доказан или истек срок.
+ *
+ * Каждый решатель работает в своем потоке; точный поиск дополнительно использует весь
+ * {@link SolverPool}, локальный поиск - одну цепочку в своем потоке, чтобы не занимать пул.
+ * Результат запуска (победитель, отклонение, граница, итог каждого решателя) дописывается
+ * строкой в журнал портфеля - по нему подбирается состав портфеля под реальные задачи.
+ */
+public final class PortfolioSolver implements LoadingSolver {
+    public static final String NAME = "portfolio";
+    private static final String LOG_HEADER =
+            "time;trucks;cargos;ideal;winner;deviation;lowerBound;provenOptimal;elapsedMs;strategies";
+    // Сколько ждать решатели после остановки, прежде чем бросить их результат
+    private static final long STOP_GRACE_MILLIS = 1000;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final long timeLimitMillis;
+    private final Path runLog;
+
+    /**
+     * @param runLog журнал запусков или null, если записывать не нужно
+     */
+    public PortfolioSolver(long timeLimitMillis, Path runLog) {
+        this.timeLimitMillis = timeLimitMillis;
+        this.runLog = runLog;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * @return лучший план; его имя решателя - победитель портфеля
+     */
+    @Override
+    public LoadingPlan solve(LoadingProblem problem) {
+        List<CooperativeSolver> strategies = Arrays.asList(
+                new GreedyDecreasingSolver(false),
+                new GreedyDecreasingSolver(true),
+                new RandomizedRestartSolver(timeLimitMillis),
+                new LocalSearchSolver(timeLimitMillis, 1, System.nanoTime()),
+                new BranchAndBoundSolver(timeLimitMillis));
+        Incumbent shared = new Incumbent(new PlanState(problem).toPlan(NAME));
+        long start = System.nanoTime();
+
+        ExecutorService executor = Executors.newFixedThreadPool(strategies.size(), task -> {
+            Thread thread = new Thread(task, "portfolio-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<String, Future<LoadingPlan>> futures = new LinkedHashMap<>();
+        for (CooperativeSolver strategy : strategies) {
+            futures.put(strategy.getName(), executor.submit(() -> {
+                LoadingPlan plan = strategy.solve(problem, shared);
+                if (plan.isProvenOptimal()) {
+                    shared.stop(); // дальнейший поиск бессмысленен
+                }
+                return plan;
+            }));
+        }
+        executor.shutdown();
+
+        long deadline = start + timeLimitMillis * 1_000_000L;
+        Map<String, String> outcomes = new LinkedHashMap<>();
+        double lowerBound = 0;
+        for (Map.Entry<String, Future<LoadingPlan>> entry : futures.entrySet()) {
+            LoadingPlan plan = await(entry.getValue(), deadline, shared);
+            if (plan == null) {
+                outcomes.put(entry.getKey(), "failed");
+                continue;
+            }
+            lowerBound = Math.max(lowerBound, plan.getLowerBound());
+            outcomes.put(entry.getKey(), String.format(Locale.ROOT, "%.4f", plan.getDeviation()));
+        }
+        executor.shutdownNow();
+
+        LoadingPlan best = shared.get();
+        LoadingPlan result = best.withSolver(best.getSolverName(), lowerBound);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("Портфель: победитель " + result.getSolverName() + " за " + elapsedMillis +
+                " мс, итоги решателей " + outcomes);
+        recordRun(problem, result, elapsedMillis, outcomes);
+        return result;
+    }
+
+    /**
+     * Дождаться решателя до срока; по истечении срока остановить всех и дать время завершиться
+     * @return план или null, если решатель упал или не завершился
+     */
+    private static LoadingPlan await(Future<LoadingPlan> future, long deadline, Incumbent shared) {
+        try {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            try {
+                return future.get(remaining, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                shared.stop();
+                return future.get(STOP_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (ExecutionException e) {
+            System.err.println("Решатель портфеля завершился с ошибкой: " + e.getCause());
+            return null;
+        } catch (TimeoutException e) {
+            System.err.println("Решатель портфеля не остановился вовремя");
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            shared.stop();
+            return null;
+        }
+    }
+
+    private void recordRun(LoadingProblem problem, LoadingPlan result, long elapsedMillis,
+                           Map<String, String> outcomes) {
+        if (runLog == null) {
+            return;
+        }
+        StringBuilder strategies = new StringBuilder();
+        for (Map.Entry<String, String> outcome : outcomes.entrySet()) {
+            if (strategies.length() > 0) {
+                strategies.append(',');
+            }
+            strategies.append(outcome.getKey()).append('=').append(outcome.getValue());
+        }
+        String line = String.join(";",
+                new Date().toString(),
+                String.valueOf(problem.getTruckCount()),
+                String.valueOf(problem.getCargoCount()),
+                String.valueOf(problem.getIdealLoadPercentage()),
+                result.getSolverName(),
+                String.format(Locale.ROOT, "%.4f", result.getDeviation()),
+                String.format(Locale.ROOT, "%.4f", result.getLowerBound()),
+                String.valueOf(result.isProvenOptimal()),
+                String.valueOf(elapsedMillis),
+                strategies.toString());
+        try {
+            List<String> lines = Files.exists(runLog)
+                    ? Collections.singletonList(line) : Arrays.asList(LOG_HEADER, line);
+            Files.write(runLog, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Не удалось записать журнал портфеля " + runLog + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package solver;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Жадная упаковка со случайными перезапусками: до истечения срока грузы раскладываются
+ * {@link GreedyDecreasingSolver} в порядке убывания веса, искаженного случайным множителем
+ * (±{@link #WEIGHT_NOISE}), попеременно First-Fit и Best-Fit. Каждая раскладка - за миллисекунды,
+ * поэтому за срок перебираются сотни порядков; лучший план остается.
+ */
+public final class RandomizedRestartSolver implements CooperativeSolver {
+    public static final String NAME = "restarts";
+    private static final double WEIGHT_NOISE = 0.3;
+
+    private final long timeLimitMillis;
+    private final long seed;
+
+    public RandomizedRestartSolver(long timeLimitMillis) {
+        this(timeLimitMillis, System.nanoTime());
+    }
+
+    public RandomizedRestartSolver(long timeLimitMillis, long seed) {
+        this.timeLimitMillis = timeLimitMillis;
+        this.seed = seed;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public LoadingPlan solve(LoadingProblem problem) {
+        return solve(problem, new Incumbent(new PlanState(problem).toPlan(NAME)));
+    }
+
+    @Override
+    public LoadingPlan solve(LoadingProblem problem, Incumbent shared) {
+        long deadline = System.nanoTime() + timeLimitMillis * 1_000_000L;
+        SplittableRandom random = new SplittableRandom(seed);
+        GreedyDecreasingSolver[] packers = {new GreedyDecreasingSolver(false), new GreedyDecreasingSolver(true)};
+        int n = problem.getCargoCount();
+        double[] keys = new double[n];
+        Integer[] boxed = new Integer[n];
+
+        LoadingPlan best = null;
+        for (int restart = 0; System.nanoTime() - deadline < 0 && !shared.isStopped(); restart++) {
+            for (int c = 0; c < n; c++) {
+                keys[c] = problem.weights[c] * (1 + WEIGHT_NOISE * (2 * random.nextDouble() - 1));
+                boxed[c] = c;
+            }
+            Arrays.sort(boxed, (a, b) -> Double.compare(keys[b], keys[a]));
+            int[] order = new int[n];
+            for (int c = 0; c < n; c++) {
+                order[c] = boxed[c];
+            }
+
+            PlanState state = packers[restart & 1].pack(problem, order);
+            if (best == null || state.isBetterThan(best)) {
+                best = state.toPlan(NAME);
+                shared.offer(best);
+            }
+        }
+        return best != null ? best : shared.get();
+    }
+}
@@ -0,0 +1,86 @@
+package solver;
+
+import model.LoadingConfiguration;
+import model.LoadingReport;
+import server.ConfigurationReader;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Запуск решателя из командной строки без JADE:
+ * <pre>
+ * java -cp truck-loading-server.jar solver.SolverMain [--config config.txt] [--mode anneal]
+ *      [--time 2000] [--report loading_report.txt]
+ * </pre>
+ * Режим и время по умолчанию берутся из секции [SETTINGS]; отчет пишется в том же формате,
+ * что и у менеджера.
+ */
+public final class SolverMain {
+    private static final String DEFAULT_CONFIG_PATH = "config.txt";
+    private static final String DEFAULT_REPORT_PATH = "loading_report.txt";
+
+    private SolverMain() {
+    }
+
+    public static void main(String[] args) {
+        String configPath = DEFAULT_CONFIG_PATH;
+        String reportPath = DEFAULT_REPORT_PATH;
+        String mode = null;
+        Long timeLimit = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--config":
+                    configPath = args[i + 1];
+                    break;
+                case "--mode":
+                    mode = args[i + 1];
+                    break;
+                case "--time":
+                    timeLimit = Long.parseLong(args[i + 1]);
+                    break;
+                case "--report":
+                    reportPath = args[i + 1];
+                    break;
+                default:
+                    System.err.println("Неизвестный параметр: " + args[i]);
+                    return;
+            }
+        }
+
+        LoadingConfiguration config = ConfigurationReader.read(configPath);
+        if (config == null || config.getTrucks().isEmpty()) {
+            System.err.println("Ошибка: конфигурация не загружена или в ней нет грузовиков");
+            return;
+        }
+        config.applyDynamicIdealLoad();
+        if (mode == null) {
+            mode = Solvers.isAgentMode(config.getMode()) ? LocalSearchSolver.NAME : config.getMode();
+        }
+        config.setMode(mode);
+        if (timeLimit != null) {
+            config.setSolverTimeLimitMs(timeLimit);
+        }
+
+        LoadingSolver solver;
+        try {
+            solver = Solvers.create(config);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+
+        long start = System.nanoTime();
+        LoadingPlan plan = solver.solve(LoadingProblem.of(config));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("План построен за " + elapsedMillis + " мс: " + plan);
+
+        try (PrintWriter writer = new PrintWriter(new FileWriter(reportPath))) {
+            LoadingReport.write(writer, config, plan.toReports(), Solvers.describe(solver, plan), elapsedMillis);
+            System.out.println("Report successfully generated: " + reportPath);
+        } catch (IOException e) {
+            System.err.println("Error writing report: " + e.getMessage());
+        }
+    }
+}
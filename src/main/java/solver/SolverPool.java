@@ -0,0 +1,26 @@
+package solver;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Общий пул потоков решателей: по одному рабочему потоку на ядро. Отдельный от
+ * {@link ForkJoinPool#commonPool()}, чтобы параллельные решатели получали все ядра
+ * и не делили общий пул с остальным кодом процесса.
+ */
+final class SolverPool {
+    private static ForkJoinPool pool;
+
+    private SolverPool() {
+    }
+
+    static synchronized ForkJoinPool get() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return pool;
+    }
+
+    static int parallelism() {
+        return get().getParallelism();
+    }
+}
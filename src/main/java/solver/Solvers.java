@@ -0,0 +1,60 @@
+package solver;
+
+import model.LoadingConfiguration;
+
+import java.nio.file.Paths;
+
+/**
+ * Выбор режима распределения по параметру mode из секции [SETTINGS]
+ */
+public final class Solvers {
+    /**
+     * Режим по умолчанию - переговоры агентов-грузовиков, решатель не используется
+     */
+    public static final String AGENTS = "agents";
+
+    private Solvers() {
+    }
+
+    /**
+     * Режим для отчета: имя решателя и, если план нашел другой решатель (портфель, точный
+     * поиск с начальным жадным планом), - имя победителя
+     */
+    public static String describe(LoadingSolver solver, LoadingPlan plan) {
+        return solver.getName().equals(plan.getSolverName())
+                ? solver.getName() : solver.getName() + " (winner: " + plan.getSolverName() + ")";
+    }
+
+    public static boolean isAgentMode(String mode) {
+        return mode == null || mode.isEmpty() || AGENTS.equalsIgnoreCase(mode);
+    }
+
+    /**
+     * Решатель для режима из конфигурации; время и журнал портфеля берутся оттуда же
+     * @throws IllegalArgumentException если решателя с таким именем нет
+     */
+    public static LoadingSolver create(LoadingConfiguration config) {
+        String mode = config.getMode();
+        long timeLimitMillis = config.getSolverTimeLimitMs();
+        switch (mode.toLowerCase()) {
+            case GreedyDecreasingSolver.FIRST_FIT:
+                return new GreedyDecreasingSolver(false);
+            case GreedyDecreasingSolver.BEST_FIT:
+                return new GreedyDecreasingSolver(true);
+            case LocalSearchSolver.NAME:
+                return new LocalSearchSolver(timeLimitMillis);
+            case BranchAndBoundSolver.NAME:
+                return new BranchAndBoundSolver(timeLimitMillis);
+            case RandomizedRestartSolver.NAME:
+                return new RandomizedRestartSolver(timeLimitMillis);
+            case DecompositionSolver.NAME:
+                return new DecompositionSolver(timeLimitMillis);
+            case PortfolioSolver.NAME:
+                String runLog = config.getPortfolioLogPath();
+                return new PortfolioSolver(timeLimitMillis,
+                        runLog == null || runLog.isEmpty() ? null : Paths.get(runLog));
+            default:
+                throw new IllegalArgumentException("Неизвестный режим распределения: " + mode);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Множество значений int без упаковки в Integer: открытая адресация с линейным пробированием
+ * в одном массиве int. Добавление уже помещавшегося значения и {@link #clear()} не выделяют память,
+ * поэтому множество, которое очищается и заполняется заново на каждом проходе, не нагружает GC.
+ * Не потокобезопасно.
+ */
+public class IntHashSet implements Serializable {
+    // Пустая ячейка; само значение 0 хранится отдельным флагом
+    private static final int FREE = 0;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private int mask;
+    private int size;
+    private boolean containsFree;
+    private int resizeThreshold;
+
+    public IntHashSet() {
+        this(16);
+    }
+
+    public IntHashSet(int expectedSize) {
+        allocate(IntHashing.capacityFor(expectedSize, LOAD_FACTOR));
+    }
+
+    /**
+     * @return true, если значения еще не было в множестве
+     */
+    public boolean add(int value) {
+        if (value == FREE) {
+            if (containsFree) {
+                return false;
+            }
+            containsFree = true;
+            size++;
+            return true;
+        }
+        int slot = IntHashing.mix(value) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = value;
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    public boolean contains(int value) {
+        if (value == FREE) {
+            return containsFree;
+        }
+        int slot = IntHashing.mix(value) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return true, если значение было в множестве
+     */
+    public boolean remove(int value) {
+        if (value == FREE) {
+            if (!containsFree) {
+                return false;
+            }
+            containsFree = false;
+            size--;
+            return true;
+        }
+        int slot = IntHashing.mix(value) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == value) {
+                shiftBack(slot);
+                size--;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Очистить множество, сохранив выделенный массив
+     */
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, FREE);
+            containsFree = false;
+            size = 0;
+        }
+    }
+
+    public void forEach(IntConsumer action) {
+        if (containsFree) {
+            action.accept(FREE);
+        }
+        for (int key : keys) {
+            if (key != FREE) {
+                action.accept(key);
+            }
+        }
+    }
+
+    public int[] toArray() {
+        int[] result = new int[size];
+        int index = 0;
+        if (containsFree) {
+            result[index++] = FREE;
+        }
+        for (int key : keys) {
+            if (key != FREE) {
+                result[index++] = key;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Значения через разделитель, например для передачи в текстовом отчете
+     */
+    public String join(String separator) {
+        StringBuilder sb = new StringBuilder();
+        forEach(value -> {
+            if (sb.length() > 0) {
+                sb.append(separator);
+            }
+            sb.append(value);
+        });
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "[" + join(", ") + "]";
+    }
+
+    /**
+     * Удаление без надгробий: сдвигаем назад значения, которые пробировались через освобожденную ячейку
+     */
+    private void shiftBack(int slot) {
+        int free = slot;
+        int next = (slot + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = IntHashing.mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = FREE;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        allocate(capacity);
+        for (int key : oldKeys) {
+            if (key != FREE) {
+                int slot = IntHashing.mix(key) & mask;
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+}
@@ -0,0 +1,31 @@
+package util;
+
+/**
+ * Общие функции для хеш-таблиц с ключами int
+ */
+final class IntHashing {
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private IntHashing() {
+    }
+
+    /**
+     * Перемешивание битов ключа: ID грузов идут подряд, без перемешивания
+     * они образовывали бы длинные цепочки при линейном пробировании
+     */
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Размер массива (степень двойки), при котором expectedSize элементов не превышают loadFactor
+     */
+    static int capacityFor(int expectedSize, float loadFactor) {
+        long required = (long) Math.ceil(Math.max(expectedSize, 1) / (double) loadFactor) + 1;
+        if (required > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Слишком большой размер таблицы: " + expectedSize);
+        }
+        return Math.max(4, Integer.highestOneBit((int) required - 1) << 1);
+    }
+}
@@ -0,0 +1,206 @@
+package util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Отображение int -> int без упаковки ключей и значений: открытая адресация с линейным
+ * пробированием, ключи и значения чередуются в одном массиве. Отсутствующий ключ
+ * обозначается значением missingValue, которое задается при создании.
+ * Не потокобезопасно.
+ */
+public class IntIntHashMap implements Serializable {
+    // Пустая ячейка; значение для ключа 0 хранится отдельно
+    private static final int FREE = 0;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    /**
+     * Действие над парой ключ-значение
+     */
+    public interface EntryConsumer {
+        void accept(int key, int value);
+    }
+
+    private final int missingValue;
+    // entries[2i] - ключ, entries[2i + 1] - значение
+    private int[] entries;
+    private int mask;
+    private int size;
+    private boolean containsFreeKey;
+    private int freeKeyValue;
+    private int resizeThreshold;
+
+    public IntIntHashMap(int missingValue) {
+        this(16, missingValue);
+    }
+
+    public IntIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        allocate(IntHashing.capacityFor(expectedSize, LOAD_FACTOR));
+    }
+
+    public int getMissingValue() {
+        return missingValue;
+    }
+
+    /**
+     * Значение по ключу или missingValue, если ключа нет
+     */
+    public int get(int key) {
+        if (key == FREE) {
+            return containsFreeKey ? freeKeyValue : missingValue;
+        }
+        int slot = IntHashing.mix(key) & mask;
+        while (entries[slot << 1] != FREE) {
+            if (entries[slot << 1] == key) {
+                return entries[(slot << 1) + 1];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    public boolean containsKey(int key) {
+        if (key == FREE) {
+            return containsFreeKey;
+        }
+        int slot = IntHashing.mix(key) & mask;
+        while (entries[slot << 1] != FREE) {
+            if (entries[slot << 1] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return прежнее значение или missingValue
+     */
+    public int put(int key, int value) {
+        if (key == FREE) {
+            int previous = containsFreeKey ? freeKeyValue : missingValue;
+            if (!containsFreeKey) {
+                containsFreeKey = true;
+                size++;
+            }
+            freeKeyValue = value;
+            return previous;
+        }
+        int slot = IntHashing.mix(key) & mask;
+        while (entries[slot << 1] != FREE) {
+            if (entries[slot << 1] == key) {
+                int previous = entries[(slot << 1) + 1];
+                entries[(slot << 1) + 1] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        entries[slot << 1] = key;
+        entries[(slot << 1) + 1] = value;
+        if (++size > resizeThreshold) {
+            rehash(capacity() << 1);
+        }
+        return missingValue;
+    }
+
+    /**
+     * @return удаленное значение или missingValue, если ключа не было
+     */
+    public int remove(int key) {
+        if (key == FREE) {
+            if (!containsFreeKey) {
+                return missingValue;
+            }
+            containsFreeKey = false;
+            size--;
+            return freeKeyValue;
+        }
+        int slot = IntHashing.mix(key) & mask;
+        while (entries[slot << 1] != FREE) {
+            if (entries[slot << 1] == key) {
+                int previous = entries[(slot << 1) + 1];
+                shiftBack(slot);
+                size--;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Очистить отображение, сохранив выделенный массив
+     */
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(entries, FREE);
+            containsFreeKey = false;
+            size = 0;
+        }
+    }
+
+    public void forEach(EntryConsumer action) {
+        if (containsFreeKey) {
+            action.accept(FREE, freeKeyValue);
+        }
+        for (int i = 0; i < entries.length; i += 2) {
+            if (entries[i] != FREE) {
+                action.accept(entries[i], entries[i + 1]);
+            }
+        }
+    }
+
+    private int capacity() {
+        return entries.length >> 1;
+    }
+
+    /**
+     * Удаление без надгробий: сдвигаем назад пары, которые пробировались через освобожденную ячейку
+     */
+    private void shiftBack(int slot) {
+        int free = slot;
+        int next = (slot + 1) & mask;
+        while (entries[next << 1] != FREE) {
+            int home = IntHashing.mix(entries[next << 1]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                entries[free << 1] = entries[next << 1];
+                entries[(free << 1) + 1] = entries[(next << 1) + 1];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        entries[free << 1] = FREE;
+        entries[(free << 1) + 1] = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldEntries = entries;
+        allocate(capacity);
+        for (int i = 0; i < oldEntries.length; i += 2) {
+            int key = oldEntries[i];
+            if (key != FREE) {
+                int slot = IntHashing.mix(key) & mask;
+                while (entries[slot << 1] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                entries[slot << 1] = key;
+                entries[(slot << 1) + 1] = oldEntries[i + 1];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        entries = new int[capacity << 1];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+}